@@ -0,0 +1,37 @@
+package io.github.applecommander.applesingle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A simple AFP (AppleShare) File Info wrapper class, which carries the AFP file attributes.
+ */
+public class AfpFileInfo {
+	/** Number of bytes an AFP File Info takes per AppleSingle spec. */
+	public static final int BYTES = 4;
+
+	private final int attributes;
+
+	public static AfpFileInfo fromEntry(Entry entry) {
+		return new AfpFileInfo(entry.getBuffer(BYTES).getInt());
+	}
+
+	public AfpFileInfo(int attributes) {
+		this.attributes = attributes;
+	}
+
+	public Entry toEntry() {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES).order(ByteOrder.BIG_ENDIAN);
+		buf.putInt(attributes);
+		return Entry.create(EntryType.AFP_FILE_INFO, buf.array());
+	}
+
+	public int getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("attributes=%08X", attributes);
+	}
+}
@@ -1,35 +1,52 @@
 package io.github.applecommander.applesingle;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Support reading of data from and AppleSingle source.
  * Does not implement all components at this time, extend as required and/or understood.
  * All construction has been deferred to the <code>read(...)</code> or {@link #builder()} methods.
  * <p>
- * Currently supports entries:<br/>
+ * All entry types defined in {@link EntryType} can be read; each is decoded lazily on first access.
+ * Entries that are not changed are written back untouched.  Changes are currently supported for entries:<br/>
  * 1. Data Fork<br/>
  * 2. Resource Fork<br/>
  * 3. Real Name<br/>
  * 8. File Dates Info<br/>
  * 11. ProDOS File Info<br/>
  * 
+ * <p>
+ * An AppleSingle is immutable once built or read, and may be shared between threads.  Use
+ * {@link #builder(AppleSingle)} to derive a changed copy.  Entry data is shared with its source rather than
+ * copied, so a {@code byte[]} given to {@link #read(byte[])} belongs to the AppleSingle from then on.
+ * 
  * @see <a href="https://github.com/AppleCommander/AppleCommander/issues/20">AppleCommander issue #20</a>
  */
 public class AppleSingle {
@@ -37,114 +54,379 @@ public class AppleSingle {
 	public static final int VERSION_NUMBER1 = 0x00010000;
 	public static final int VERSION_NUMBER2 = 0x00020000;
 	
+	private static final byte[] HOME_FILE_SYSTEM_PRODOS = "ProDOS          ".getBytes();
+	
 	public static final String VERSION;
 	static {
 		VERSION = AppleSingle.class.getPackage().getImplementationVersion();
 	}	
 	
-	private Map<Integer,Consumer<Entry>> entryConsumers = new HashMap<>();
-	{
-		entryConsumers.put(1,  entry -> this.dataFork = entry.getData());
-		entryConsumers.put(2,  entry -> this.resourceFork = entry.getData());
-		entryConsumers.put(3,  entry -> this.realName = Utilities.entryToAsciiString(entry));
-		entryConsumers.put(8,  entry -> this.fileDatesInfo = FileDatesInfo.fromEntry(entry));
-		entryConsumers.put(11, entry -> this.prodosFileInfo = ProdosFileInfo.fromEntry(entry));
-	}
-
-	private byte[] dataFork;
-	private byte[] resourceFork;
-	private String realName;
-	private ProdosFileInfo prodosFileInfo = ProdosFileInfo.standardBIN();
-	private FileDatesInfo fileDatesInfo = new FileDatesInfo();
+	/** Marks an entry that has been decoded but was not present. */
+	private static final Object ABSENT = new Object();
+	
+	/** The original entry table, in source order.  Unmodified entries are written back as-is. */
+	private final List<Entry> original;
+	/** The current entry for each known entry type; shared with (not copied from) the source. */
+	private final Entry[] entries;
+	private final boolean[] modified;
+	private final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(EntryType.MAX_ENTRY_ID + 1);
 
-	private AppleSingle() {
-		// Allow Builder construction
+	private AppleSingle(List<Entry> original, Entry[] entries, boolean[] modified) {
+		this.original = original;
+		this.entries = entries;
+		this.modified = modified;
 	}
-	private AppleSingle(List<Entry> entries) throws IOException {
+	private AppleSingle(List<Entry> entries) {
+		this(Collections.unmodifiableList(new ArrayList<>(entries)), new Entry[EntryType.MAX_ENTRY_ID + 1], 
+				new boolean[EntryType.MAX_ENTRY_ID + 1]);
 		entries.forEach(entry -> {
 			Optional.ofNullable(entry)
-					.map(Entry::getEntryId)
-					.map(entryConsumers::get)
-					.ifPresent(c -> c.accept(entry));
+					.filter(e -> EntryType.lookup(e.getEntryId()) != null)
+					.ifPresent(e -> this.entries[e.getEntryId()] = e);
 		});
 	}
 	
+	/** 
+	 * Decode the given entry type on first access.  Entries not present answer the fallback value.
+	 * Decoded values are retained, except for byte arrays which are always a fresh copy.  The 
+	 * cache is safe to use from multiple threads; at worst two threads decode the same entry.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T decode(EntryType type, Supplier<T> fallback) {
+		int id = type.entryId;
+		Object value = values.get(id);
+		if (value == null) {
+			Entry entry = entries[id];
+			value = entry != null ? type.decode(entry) : fallback.get();
+			if (value instanceof byte[]) {
+				return (T)value;
+			}
+			values.compareAndSet(id, null, value == null ? ABSENT : value);
+			value = values.get(id);
+		}
+		return value == ABSENT ? null : (T)value;
+	}
+	private <T> T decode(EntryType type) {
+		return decode(type, () -> null);
+	}
+	
+	/** Answer a copy of the data fork.  See {@link #getDataForkBuffer()} to avoid the copy. */
 	public byte[] getDataFork() {
-		return dataFork;
+		return decode(EntryType.DATA_FORK);
+	}
+	/** 
+	 * Answer a read-only view of the data fork, shared with the source; null if not present.
+	 * @throws IllegalStateException if the fork is larger than 2GB; see {@link #getDataForkLength()}
+	 */
+	public ByteBuffer getDataForkBuffer() {
+		return Optional.ofNullable(entries[EntryType.DATA_FORK.entryId]).map(Entry::getBuffer).orElse(null);
 	}
+	/** Answer a copy of the resource fork.  See {@link #getResourceForkBuffer()} to avoid the copy. */
 	public byte[] getResourceFork() {
-		return resourceFork;
+		return decode(EntryType.RESOURCE_FORK);
+	}
+	/** The length of the data fork, which may be larger than 2GB; -1 if not present. */
+	public long getDataForkLength() {
+		return Optional.ofNullable(entries[EntryType.DATA_FORK.entryId]).map(Entry::getLength).orElse(-1L);
+	}
+	/** 
+	 * Answer a read-only view of the resource fork, shared with the source; null if not present.
+	 * @throws IllegalStateException if the fork is larger than 2GB; see {@link #getResourceForkLength()}
+	 */
+	public ByteBuffer getResourceForkBuffer() {
+		return Optional.ofNullable(entries[EntryType.RESOURCE_FORK.entryId]).map(Entry::getBuffer).orElse(null);
+	}
+	/** The length of the resource fork, which may be larger than 2GB; -1 if not present. */
+	public long getResourceForkLength() {
+		return Optional.ofNullable(entries[EntryType.RESOURCE_FORK.entryId]).map(Entry::getLength).orElse(-1L);
 	}
 	public String getRealName() {
-		return realName;
+		return decode(EntryType.REAL_NAME);
 	}
 	public ProdosFileInfo getProdosFileInfo() {
-		return prodosFileInfo;
+		return decode(EntryType.PRODOS_FILE_INFO, ProdosFileInfo::standardBIN);
 	}
 	public FileDatesInfo getFileDatesInfo() {
-		return fileDatesInfo;
+		return decode(EntryType.FILE_DATES_INFO, FileDatesInfo::new);
+	}
+	public String getComment() {
+		return decode(EntryType.COMMENT);
+	}
+	public byte[] getIconBW() {
+		return decode(EntryType.ICON_BW);
+	}
+	public byte[] getIconColor() {
+		return decode(EntryType.ICON_COLOR);
+	}
+	public byte[] getFileInfo() {
+		return decode(EntryType.FILE_INFO);
+	}
+	public FinderInfo getFinderInfo() {
+		return decode(EntryType.FINDER_INFO);
+	}
+	public MacintoshFileInfo getMacintoshFileInfo() {
+		return decode(EntryType.MACINTOSH_FILE_INFO);
+	}
+	public MsdosFileInfo getMsdosFileInfo() {
+		return decode(EntryType.MSDOS_FILE_INFO);
+	}
+	public String getShortName() {
+		return decode(EntryType.SHORT_NAME);
+	}
+	public AfpFileInfo getAfpFileInfo() {
+		return decode(EntryType.AFP_FILE_INFO);
+	}
+	public Integer getDirectoryId() {
+		return decode(EntryType.DIRECTORY_ID);
+	}
+	/** Generic access to the decoded value of any known entry type; null if not present. */
+	public Object getValue(EntryType type) {
+		Objects.requireNonNull(type);
+		return decode(type);
 	}
 	
-	/** Write this AppleSingle to the given output stream. Note that it only supports the "understood" components. */
-	public void save(OutputStream outputStream) throws IOException {
+	/**
+	 * Answer the entries that make up this AppleSingle, as they will be written.  Entries from the 
+	 * original source are kept in their original order, and any that have not been changed are carried
+	 * through as-is (including entry types this library does not understand).  Changed entries are 
+	 * re-encoded in place.  Any of the "understood" components not in the original are then appended.
+	 */
+	public List<Entry> getEntries() {
 		List<Entry> entries = new ArrayList<>();
-		Optional.ofNullable(this.realName)
-				.map(String::getBytes)
-				.map(Entry::realName)
-				.ifPresent(entries::add);
-		Optional.ofNullable(this.prodosFileInfo)
-				.map(ProdosFileInfo::toEntry)
-				.ifPresent(entries::add);
-		Optional.ofNullable(this.fileDatesInfo)
-				.map(FileDatesInfo::toEntry)
-				.ifPresent(entries::add);
-		Optional.ofNullable(this.resourceFork)
-				.map(Entry::resourceFork)
-				.ifPresent(entries::add);
-		Optional.ofNullable(this.dataFork)
-				.map(Entry::dataFork)
-				.ifPresent(entries::add);
-		write(outputStream, entries);
-	}
-	/** Save this AppleSingle to a File. */
-	public void save(File file) throws IOException {
-		try (FileOutputStream outputStream = new FileOutputStream(file)) {
-			save(outputStream);
+		boolean[] written = new boolean[EntryType.MAX_ENTRY_ID + 1];
+		for (Entry entry : original) {
+			EntryType type = EntryType.lookup(entry.getEntryId());
+			if (type == null || !modified[type.entryId]) {
+				entries.add(entry);
+			} else if (!written[type.entryId]) {
+				current(type).ifPresent(entries::add);
+			}
+			if (type != null) written[type.entryId] = true;
+		}
+		for (EntryType type : UNDERSTOOD) {
+			if (!written[type.entryId]) {
+				current(type).ifPresent(entries::add);
+			}
+		}
+		return entries;
+	}
+	private static final EntryType[] UNDERSTOOD = { EntryType.REAL_NAME, EntryType.PRODOS_FILE_INFO, 
+			EntryType.FILE_DATES_INFO, EntryType.RESOURCE_FORK, EntryType.DATA_FORK };
+	private Optional<Entry> current(EntryType type) {
+		Entry entry = entries[type.entryId];
+		if (entry != null) {
+			return Optional.of(entry);
+		}
+		switch (type) {
+		case PRODOS_FILE_INFO:
+			return Optional.of(getProdosFileInfo().toEntry());
+		case FILE_DATES_INFO:
+			return Optional.of(getFileDatesInfo().toEntry());
+		default:
+			return Optional.empty();
 		}
 	}
-	/** Save this AppleSingle to a Path. */
+	
+	/** 
+	 * Write this AppleSingle to the given output stream.  Entries that have not been changed are streamed
+	 * from the original source; only changed metadata is re-encoded.
+	 */
+	public void save(OutputStream outputStream) throws IOException {
+		write(outputStream, getEntries());
+	}
+	/** Write this AppleSingle to the given output stream, placing the entries according to the layout. */
+	public void save(OutputStream outputStream, Layout layout) throws IOException {
+		write(outputStream, getEntries(), VERSION_NUMBER2, layout);
+	}
+	/** Save this AppleSingle to a File; see {@link #save(Path, Layout)}. */
+	public void save(File file) throws IOException {
+		save(file.toPath());
+	}
+	/** Save this AppleSingle to a Path.  Entry data is written straight from the source buffers. */
 	public void save(Path path) throws IOException {
-		try (OutputStream outputStream = Files.newOutputStream(path)) {
-			save(outputStream);
+		save(path, Layout.PACKED);
+	}
+	/** 
+	 * Save this AppleSingle to a Path, placing the entries according to the layout.
+	 * <p>
+	 * The target is written in place: an existing file keeps its identity, so its permissions, owner and
+	 * hard links are kept, but the write is neither atomic nor synced.  A reader may see a partly written
+	 * file, and a crash may leave one.
+	 * <p>
+	 * When entry data is mapped from a file and the target exists, the target may be that very file, and
+	 * rewriting it would change (or, if it shrinks, invalidate) the forks of this AppleSingle.  So the new
+	 * content is written beside the target and renamed over it instead: the old file, and so every mapping
+	 * of it, stays valid until it is unmapped.  The target's POSIX permissions are copied to the new file,
+	 * but in this case hard links to the target are not kept (they still name the old content), nor is
+	 * its owner.  For atomic, durable replacement (of one file or many), see {@link GroupCommit}.
+	 */
+	public void save(Path path, Layout layout) throws IOException {
+		Objects.requireNonNull(path, "Please supply a file");
+		List<Entry> entries = getEntries();
+		if (!isMapped(entries) || !Files.exists(path)) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, 
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				write(channel, entries, VERSION_NUMBER2, layout);
+			}
+			return;
+		}
+		Path temporary = GroupCommit.temporary(path);
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				write(channel, entries, VERSION_NUMBER2, layout);
+			}
+			replace(temporary, path);
+		} finally {
+			Files.deleteIfExists(temporary);
 		}
 	}
 	
+	/**
+	 * Save this AppleSingle to a Path without blocking the calling thread.  The I/O is done with an
+	 * {@link AsynchronousFileChannel} whose completion handlers run on the given executor (or the
+	 * default thread pool when it is null).  Entry data is written straight from the source buffers.  As
+	 * with {@link #save(Path, Layout)}, the target is written in place unless entry data is mapped and the
+	 * target exists, in which case the new content is renamed over it.
+	 */
+	public CompletableFuture<Void> saveAsync(Path path, ExecutorService executor) {
+		Objects.requireNonNull(path, "Please supply a file");
+		List<ByteBuffer> buffers = new ArrayList<>();
+		boolean staged;
+		try {
+			List<Entry> entries = getEntries();
+			staged = isMapped(entries) && Files.exists(path);
+			ByteArrayOutputStream headers = new ByteArrayOutputStream(26 + Entry.BYTES * entries.size());
+			writeHeaders(headers, entries, VERSION_NUMBER2, Layout.PACKED.offsets(entries));
+			buffers.add(ByteBuffer.wrap(headers.toByteArray()));
+			for (Entry entry : entries) {
+				buffers.addAll(Arrays.asList(entry.getSegments()));
+			}
+		} catch (IOException | RuntimeException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+		if (!staged) return AsyncChannels.writeAll(path, buffers, executor);
+		Path temporary = GroupCommit.temporary(path);
+		return AsyncChannels.writeAll(temporary, buffers, executor)
+				.thenCompose(v -> {
+					try {
+						replace(temporary, path);
+						return CompletableFuture.<Void>completedFuture(null);
+					} catch (IOException ex) {
+						return CompletableFuture.<Void>failedFuture(ex);
+					}
+				})
+				.whenComplete((v, t) -> temporary.toFile().delete());
+	}
+	/** Save this AppleSingle to a Path without blocking, using the default thread pool. */
+	public CompletableFuture<Void> saveAsync(Path path) {
+		return saveAsync(path, null);
+	}
+	
+	/** Whether any entry data lives outside the heap, as it does when mapped from a file. */
+	private static boolean isMapped(List<Entry> entries) {
+		for (Entry entry : entries) {
+			for (ByteBuffer segment : entry.getSegments()) {
+				if (segment.isDirect()) return true;
+			}
+		}
+		return false;
+	}
+	/** 
+	 * Rename a new file over the target, leaving the old file (and any mapping of it) intact.  The target's
+	 * POSIX permissions are carried over where the file system has them.
+	 */
+	private static void replace(Path temporary, Path target) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		if (view != null) {
+			Files.setPosixFilePermissions(temporary, view.readAttributes().permissions());
+		}
+		GroupCommit.move(temporary, target);
+	}
+	
 	/** 
 	 * Common write capability for an AppleSingle based on entries.  Also can be used by external 
 	 * entities to write a properly formatted AppleSingle file without the ProDOS assumptions of AppleSingle. 
 	 */
 	public static void write(OutputStream outputStream, List<Entry> entries) throws IOException {
-		final byte[] filler = new byte[16];
+		write(outputStream, entries, VERSION_NUMBER2);
+	}
+	/** 
+	 * Write an AppleSingle with the given version number.  Version 1 files record a "home file system"
+	 * in the filler; this is always written as ProDOS.
+	 */
+	public static void write(OutputStream outputStream, List<Entry> entries, int version) throws IOException {
+		write(outputStream, entries, version, Layout.PACKED);
+	}
+	/** Write an AppleSingle with the given version number, placing the entries according to the layout. */
+	public static void write(OutputStream outputStream, List<Entry> entries, int version, Layout layout) throws IOException {
+		List<Entry> arranged = layout.arrange(entries);
+		long[] offsets = layout.offsets(arranged);
+		long position = writeHeaders(outputStream, arranged, version, offsets);
+		for (int i = 0; i < offsets.length; i++) {
+			for (long padding = offsets[i] - position; padding > 0; padding -= PADDING.length) {
+				outputStream.write(PADDING, 0, (int)Math.min(padding, PADDING.length));
+			}
+			Entry entry = arranged.get(i);
+			entry.writeData(outputStream);
+			position = offsets[i] + entry.getLength();
+		}
+	}
+	/** Write an AppleSingle with the given version number to a channel; see {@link #write(OutputStream, List, int)}. */
+	public static void write(WritableByteChannel channel, List<Entry> entries, int version) throws IOException {
+		write(channel, entries, version, Layout.PACKED);
+	}
+	/** Write an AppleSingle to a channel, placing the entries according to the layout. */
+	public static void write(WritableByteChannel channel, List<Entry> entries, int version, Layout layout) throws IOException {
+		List<Entry> arranged = layout.arrange(entries);
+		long[] offsets = layout.offsets(arranged);
+		ByteArrayOutputStream headers = new ByteArrayOutputStream(26 + Entry.BYTES * arranged.size());
+		long position = writeHeaders(headers, arranged, version, offsets);
+		writeFully(channel, ByteBuffer.wrap(headers.toByteArray()));
+		for (int i = 0; i < offsets.length; i++) {
+			for (long padding = offsets[i] - position; padding > 0; padding -= PADDING.length) {
+				writeFully(channel, ByteBuffer.wrap(PADDING, 0, (int)Math.min(padding, PADDING.length)));
+			}
+			Entry entry = arranged.get(i);
+			entry.writeData(channel);
+			position = offsets[i] + entry.getLength();
+		}
+	}
+	private static final byte[] PADDING = new byte[4096];
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	/** 
+	 * Write the AppleSingle header and the entry descriptors, answering the number of bytes written.
+	 * Offsets are unsigned 32-bit values, so the file may not extend past 4GB.
+	 */
+	private static long writeHeaders(OutputStream outputStream, List<Entry> entries, int version, long[] offsets) throws IOException {
+		if (version != VERSION_NUMBER1 && version != VERSION_NUMBER2) {
+			throw new IllegalArgumentException(String.format("Unsupported AppleSingle version 0x%08x", version));
+		}
+		final byte[] filler = version == VERSION_NUMBER1 ? HOME_FILE_SYSTEM_PRODOS : new byte[16];
 		ByteBuffer buf = ByteBuffer.allocate(26).order(ByteOrder.BIG_ENDIAN);
 		buf.putInt(MAGIC_NUMBER);
-		buf.putInt(VERSION_NUMBER2);
+		buf.putInt(version);
 		buf.put(filler);
 		buf.putShort((short)entries.size());
 		outputStream.write(buf.array());
 		
-		int offset = 26 + (Entry.BYTES * entries.size());
-		for (Entry entry : entries) {
-			entry.writeHeader(outputStream, offset);
-			offset += entry.getLength();
-		}
-		for (Entry entry : entries) {
-			entry.writeData(outputStream);
+		for (int i = 0; i < offsets.length; i++) {
+			Entry entry = entries.get(i);
+			if (offsets[i] + entry.getLength() > Entry.MAX_LENGTH + 1) {
+				throw new IllegalArgumentException(String.format("AppleSingle file would be %,d bytes; "
+						+ "entries must end within the first %,d bytes", offsets[i] + entry.getLength(), Entry.MAX_LENGTH + 1));
+			}
+			entry.writeHeader(outputStream, offsets[i]);
 		}
-	}	
+		return 26 + Entry.BYTES * entries.size();
+	}
 
 	public static AppleSingle read(InputStream inputStream) throws IOException {
 		Objects.requireNonNull(inputStream, "Please supply an input stream");
-		return read(Utilities.toByteArray(inputStream));
+		return read(AppleSingleReader.builder().build().reset(inputStream));
 	}
 	public static AppleSingle read(File file) throws IOException {
 		Objects.requireNonNull(file, "Please supply a file");
@@ -152,54 +434,122 @@ public class AppleSingle {
 	}
 	public static AppleSingle read(Path path) throws IOException {
 		Objects.requireNonNull(path, "Please supply a file");
-		return read(Files.readAllBytes(path));
+		return new AppleSingle(asEntries(path));
 	}
+	/** 
+	 * Read an AppleSingle from an array.  Entries are views of the array, not copies: the AppleSingle takes
+	 * ownership of it, and the array must not be modified afterwards (pass a copy if it will be).
+	 */
 	public static AppleSingle read(byte[] data) throws IOException {
 		Objects.requireNonNull(data);
 		return new AppleSingle(asEntries(data));
 	}
+	/** Read an AppleSingle with the given reader; useful when reusing a reader via {@code reset}. */
+	public static AppleSingle read(AppleSingleReader reader) throws IOException {
+		Objects.requireNonNull(reader);
+		return new AppleSingle(asEntries(reader));
+	}
+	/** 
+	 * Wrap entries that are already in hand, such as a filtered list from {@link #asEntries(Path)}.
+	 * The entries, and their data, are shared rather than copied.
+	 */
+	public static AppleSingle of(List<Entry> entries) {
+		Objects.requireNonNull(entries);
+		return new AppleSingle(entries);
+	}
+	
+	/**
+	 * Read an AppleSingle from a Path without blocking the calling thread.  The file is read with an
+	 * {@link AsynchronousFileChannel} whose completion handlers (and the parsing) run on the given
+	 * executor, or the default thread pool when it is null.  Many reads may be in flight at once.
+	 */
+	public static CompletableFuture<AppleSingle> readAsync(Path path, ExecutorService executor) {
+		return asEntriesAsync(path, executor).thenApply(AppleSingle::new);
+	}
+	/** Read an AppleSingle from a Path without blocking, using the default thread pool. */
+	public static CompletableFuture<AppleSingle> readAsync(Path path) {
+		return readAsync(path, null);
+	}
 	
 	public static List<Entry> asEntries(InputStream inputStream) throws IOException {
 		Objects.requireNonNull(inputStream);
-		return asEntries(Utilities.toByteArray(inputStream));
+		return asEntries(AppleSingleReader.builder().build().reset(inputStream));
 	}
 	public static List<Entry> asEntries(File file) throws IOException {
 		Objects.requireNonNull(file);
 		return asEntries(file.toPath());
 	}
+	/** 
+	 * Read the entries of the given file.  Files too large for a {@code byte[]} are memory mapped; 
+	 * the entries remain valid after the file is closed.
+	 */
 	public static List<Entry> asEntries(Path path) throws IOException {
 		Objects.requireNonNull(path);
-		return asEntries(Files.readAllBytes(path));
+		try (AppleSingleReader reader = AppleSingleReader.builder().build().reset(path)) {
+			return asEntries(reader);
+		}
 	}
+	/** Read the entries from an array.  As with {@link #read(byte[])}, the entries are views of the array. */
 	public static List<Entry> asEntries(byte[] data) throws IOException {
 		Objects.requireNonNull(data);
 		return asEntries(AppleSingleReader.builder(data).build());
 	}
 	public static List<Entry> asEntries(AppleSingleReader reader) throws IOException {
 		Objects.requireNonNull(reader);
-		List<Entry> entries = new ArrayList<>();
-		required(reader, "Magic number", "Not an AppleSingle file - magic number does not match.", MAGIC_NUMBER);
-		int version = required(reader, "Version", "Only AppleSingle version 1 and 2 supported.", VERSION_NUMBER1, VERSION_NUMBER2);
-		reader.reportVersion(version);
-		reader.read(16, "Filler");
-		int numberOfEntries = reader.read(Short.BYTES, "Number of entries").getShort();
-		reader.reportNumberOfEntries(numberOfEntries);
-		for (int i = 0; i < numberOfEntries; i++) {
-			Entry entry = Entry.create(reader);
-			entries.add(entry);
-			reader.reportEntry(entry);
-		}
-		return entries;
+		return new ArrayList<>(asEntryTable(reader).asList());
 	}
-	private static int required(AppleSingleReader reader, String description, String message, int... expecteds) throws IOException {
-		int actual = reader.read(Integer.BYTES, description).getInt();
-		for (int expected : expecteds) {
-			if (actual == expected) return actual;
-		}
-		List<String> versions = new ArrayList<>();
-		for (int expected : expecteds) versions.add(String.format("0x%08x", expected));
-		throw new IOException(String.format("%s  Expected %s but read 0x%08x.", 
-				message, String.join(",", versions), actual));
+	
+	/** Read the entries of an AppleSingle from a Path without blocking; see {@link #readAsync(Path, ExecutorService)}. */
+	public static CompletableFuture<List<Entry>> asEntriesAsync(Path path, ExecutorService executor) {
+		Objects.requireNonNull(path, "Please supply a file");
+		return AsyncChannels.readAll(path, executor).thenApply(buffer -> {
+			try {
+				return asEntries(AppleSingleReader.builder().build().reset(buffer));
+			} catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		});
+	}
+	/** Read the entries of an AppleSingle from a Path without blocking, using the default thread pool. */
+	public static CompletableFuture<List<Entry>> asEntriesAsync(Path path) {
+		return asEntriesAsync(path, null);
+	}
+	
+	/**
+	 * Lazily scan a file or directory tree for AppleSingle files, producing a {@link ScanRecord} for each.
+	 * Only headers, descriptors, and small metadata entries are read; forks are never read.  Files that
+	 * are not AppleSingle are skipped after a bounded probe of the first 26 bytes.  The stream splits
+	 * the traversal itself, so {@code .parallel()} spreads directory listing and parsing across threads.
+	 * I/O errors are thrown as {@link java.io.UncheckedIOException}.
+	 */
+	public static Stream<ScanRecord> scan(Path root) {
+		Objects.requireNonNull(root, "Please supply a path");
+		return StreamSupport.stream(new ScanSpliterator(root), false);
+	}
+	
+	/** Read only the entry table (descriptors); no entry data is copied and no {@code Entry} objects are created. */
+	public static EntryTable asEntryTable(InputStream inputStream) throws IOException {
+		Objects.requireNonNull(inputStream);
+		return asEntryTable(AppleSingleReader.builder().build().reset(inputStream));
+	}
+	/** 
+	 * Read only the entry table (descriptors); no entry data is copied and no {@code Entry} objects are created.
+	 * The table keeps its reader, which holds a file larger than 2GB open; to close it when done, use
+	 * {@link AppleSingleReader#reset(Path)} and {@link #asEntryTable(AppleSingleReader)} instead.
+	 */
+	public static EntryTable asEntryTable(Path path) throws IOException {
+		Objects.requireNonNull(path);
+		return asEntryTable(AppleSingleReader.builder().build().reset(path));
+	}
+	/** Read only the entry table (descriptors); no entry data is copied and no {@code Entry} objects are created. */
+	public static EntryTable asEntryTable(byte[] data) throws IOException {
+		Objects.requireNonNull(data);
+		return asEntryTable(AppleSingleReader.builder(data).build());
+	}
+	/** Read only the entry table (descriptors); no entry data is copied and no {@code Entry} objects are created. */
+	public static EntryTable asEntryTable(AppleSingleReader reader) throws IOException {
+		Objects.requireNonNull(reader);
+		return EntryTable.read(reader);
 	}
 	
 	/** Perform a quick test against a File to see if it is an AppleSingle file. */
@@ -234,36 +584,44 @@ public class AppleSingle {
 			for (int expected : expecteds) {
 				if (actual == expected) return true;
 			}
-		} catch (ArrayIndexOutOfBoundsException ignored) {
+		} catch (IndexOutOfBoundsException ignored) {
 			// Bad file!  Fall through.
 		}
 		return false;
 	}
 	
 	public static Builder builder() {
-		return new Builder();
+		return new Builder(new AppleSingle(Collections.emptyList()));
 	}
+	/** 
+	 * Create a Builder based on an existing AppleSingle.  The original is not changed; the new 
+	 * AppleSingle shares all unchanged entries (including the forks) with the original.
+	 */
 	public static Builder builder(AppleSingle original) {
+		Objects.requireNonNull(original);
 		return new Builder(original);
 	}
 	public static class Builder {
-		final private AppleSingle as;
-		private Builder() {
-			this.as = new AppleSingle();
-		}
+		private final AppleSingle original;
+		private final Entry[] entries;
+		private final boolean[] modified;
+		private ProdosFileInfo prodosFileInfo;
+		private FileDatesInfo fileDatesInfo;
 		private Builder(AppleSingle original) {
-			this.as = original;
+			this.original = original;
+			this.entries = original.entries.clone();
+			this.modified = original.modified.clone();
 		}
 		public Builder realName(String realName) {
 			if (!Character.isAlphabetic(realName.charAt(0))) {
 				throw new IllegalArgumentException("ProDOS file names must begin with a letter");
 			}
-			as.realName = realName.chars()
+			String name = realName.chars()
 					.map(this::sanitize)
 					.limit(15)
 					.collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
 					.toString();
-			return this;
+			return set(EntryType.REAL_NAME, Entry.realName(name.getBytes()));
 		}
 		private int sanitize(int ch) {
 			if (Character.isAlphabetic(ch) || Character.isDigit(ch)) {
@@ -271,63 +629,97 @@ public class AppleSingle {
 			}
 			return '.';
 		}
+		/** Set the data fork.  Note that the array is copied. */
 		public Builder dataFork(byte[] dataFork) {
-			as.dataFork = dataFork;
-			return this;
+			return set(EntryType.DATA_FORK, Optional.ofNullable(dataFork).map(byte[]::clone).map(Entry::dataFork).orElse(null));
 		}
+		/** Set the resource fork.  Note that the array is copied. */
 		public Builder resourceFork(byte[] resourceFork) {
-			as.resourceFork = resourceFork;
-			return this;
+			return set(EntryType.RESOURCE_FORK, Optional.ofNullable(resourceFork).map(byte[]::clone).map(Entry::resourceFork).orElse(null));
+		}
+		/** 
+		 * Set the data fork to the content of a file, which is memory mapped rather than read; the file
+		 * may be up to 4GB.  The file must not change while this AppleSingle is in use.
+		 */
+		public Builder dataFork(Path dataFork) throws IOException {
+			return set(EntryType.DATA_FORK, map(EntryType.DATA_FORK, dataFork));
+		}
+		/** Set the resource fork to the content of a file; see {@link #dataFork(Path)}. */
+		public Builder resourceFork(Path resourceFork) throws IOException {
+			return set(EntryType.RESOURCE_FORK, map(EntryType.RESOURCE_FORK, resourceFork));
+		}
+		private Entry map(EntryType type, Path path) throws IOException {
+			Objects.requireNonNull(path);
+			try (FileChannel channel = FileChannel.open(path)) {
+				return Entry.create(type, channel, 0, channel.size());
+			}
 		}
 		public Builder access(int access) {
-			as.prodosFileInfo.access = access;
+			ProdosFileInfo info = prodosFileInfo();
+			prodosFileInfo = new ProdosFileInfo(access, info.getFileType(), info.getAuxType());
 			return this;
 		}
 		public Builder fileType(int fileType) {
-			as.prodosFileInfo.fileType = fileType;
+			ProdosFileInfo info = prodosFileInfo();
+			prodosFileInfo = new ProdosFileInfo(info.getAccess(), fileType, info.getAuxType());
 			return this;
 		}
 		public Builder auxType(int auxType) {
-			as.prodosFileInfo.auxType = auxType;
+			ProdosFileInfo info = prodosFileInfo();
+			prodosFileInfo = new ProdosFileInfo(info.getAccess(), info.getFileType(), auxType);
 			return this;
 		}
 		public Builder creationDate(int creation) {
-			as.fileDatesInfo.creation = creation;
+			FileDatesInfo info = fileDatesInfo();
+			fileDatesInfo = new FileDatesInfo(creation, info.getModification(), info.getBackup(), info.getAccess());
 			return this;
 		}
 		public Builder creationDate(Instant creation) {
-			as.fileDatesInfo.creation = FileDatesInfo.fromInstant(creation);
-			return this;
+			return creationDate(FileDatesInfo.fromInstant(creation));
 		}
 		public Builder modificationDate(int modification) {
-			as.fileDatesInfo.modification = modification;
+			FileDatesInfo info = fileDatesInfo();
+			fileDatesInfo = new FileDatesInfo(info.getCreation(), modification, info.getBackup(), info.getAccess());
 			return this;
 		}
 		public Builder modificationDate(Instant modification) {
-			as.fileDatesInfo.modification = FileDatesInfo.fromInstant(modification);
-			return this;
+			return modificationDate(FileDatesInfo.fromInstant(modification));
 		}
 		public Builder backupDate(int backup) {
-			as.fileDatesInfo.backup = backup;
+			FileDatesInfo info = fileDatesInfo();
+			fileDatesInfo = new FileDatesInfo(info.getCreation(), info.getModification(), backup, info.getAccess());
 			return this;
 		}
 		public Builder backupDate(Instant backup) {
-			as.fileDatesInfo.backup = FileDatesInfo.fromInstant(backup);
-			return this;
+			return backupDate(FileDatesInfo.fromInstant(backup));
 		}
 		public Builder accessDate(int access) {
-			as.fileDatesInfo.access = access;
+			FileDatesInfo info = fileDatesInfo();
+			fileDatesInfo = new FileDatesInfo(info.getCreation(), info.getModification(), info.getBackup(), access);
 			return this;
 		}
 		public Builder accessDate(Instant access) {
-			as.fileDatesInfo.access = FileDatesInfo.fromInstant(access);
-			return this;
+			return accessDate(FileDatesInfo.fromInstant(access));
 		}
 		public Builder allDates(Instant instant) {
 			return creationDate(instant).modificationDate(instant).backupDate(instant).accessDate(instant);
 		}
+		private Builder set(EntryType type, Entry entry) {
+			entries[type.entryId] = entry;
+			modified[type.entryId] = true;
+			return this;
+		}
+		private ProdosFileInfo prodosFileInfo() {
+			return prodosFileInfo != null ? prodosFileInfo : original.getProdosFileInfo();
+		}
+		private FileDatesInfo fileDatesInfo() {
+			return fileDatesInfo != null ? fileDatesInfo : original.getFileDatesInfo();
+		}
+		/** Build a new AppleSingle.  The Builder may continue to be used afterwards. */
 		public AppleSingle build() {
-			return as;
+			if (prodosFileInfo != null) set(EntryType.PRODOS_FILE_INFO, prodosFileInfo.toEntry());
+			if (fileDatesInfo != null) set(EntryType.FILE_DATES_INFO, fileDatesInfo.toEntry());
+			return new AppleSingle(original.original, entries.clone(), modified.clone());
 		}
 	}
 }
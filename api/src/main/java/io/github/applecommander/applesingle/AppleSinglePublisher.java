@@ -0,0 +1,240 @@
+package io.github.applecommander.applesingle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} for the content of an AppleSingle file.  A subscriber receives the header,
+ * then every {@link Entry}, and then the data and resource forks as read-only {@code ByteBuffer} chunks
+ * of at most {@code chunkSize} bytes.
+ * <p>
+ * Nothing is read ahead of demand: each item is produced from the {@link AppleSingleReader} only when
+ * the subscriber has requested it, so the reader's reporters fire as the items are emitted and a slow
+ * subscriber throttles reading.  Chunks are slices of the reader's source (a memory mapped file when
+ * the reader was reset with a {@code FileChannel}); a fork is never copied or buffered whole.
+ * <p>
+ * A reader is not thread-safe, so this publisher accepts a single subscriber.  Items are delivered
+ * on the given executor, one at a time.
+ */
+public final class AppleSinglePublisher implements Flow.Publisher<AppleSinglePublisher.Item> {
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private final AppleSingleReader reader;
+	private final int chunkSize;
+	private final Executor executor;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	private AppleSinglePublisher(AppleSingleReader reader, int chunkSize, Executor executor) {
+		this.reader = reader;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Item> subscriber) {
+		Objects.requireNonNull(subscriber);
+		if (subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new ItemSubscription(subscriber));
+		} else {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override public void request(long n) {}
+				@Override public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("AppleSinglePublisher only supports one subscriber"));
+		}
+	}
+
+	/** Create a {@code Builder} for a publisher reading from the given reader, which must have a source. */
+	public static Builder builder(AppleSingleReader reader) {
+		return new Builder(reader);
+	}
+	public static class Builder {
+		private final AppleSingleReader reader;
+		private int chunkSize = DEFAULT_CHUNK_SIZE;
+		private Executor executor = ForkJoinPool.commonPool();
+		private Builder(AppleSingleReader reader) {
+			this.reader = Objects.requireNonNull(reader, "You must supply an AppleSingleReader");
+		}
+		/** The maximum size of a fork chunk. */
+		public Builder chunkSize(int chunkSize) {
+			if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+			this.chunkSize = chunkSize;
+			return this;
+		}
+		/** The executor that items are produced and delivered on; defaults to the common pool. */
+		public Builder executor(Executor executor) {
+			this.executor = Objects.requireNonNull(executor);
+			return this;
+		}
+		public AppleSinglePublisher build() {
+			return new AppleSinglePublisher(reader, chunkSize, executor);
+		}
+	}
+
+	/**
+	 * Produces items on demand.  The drain loop is guarded by a work-in-progress counter so that only
+	 * one thread uses the reader (and signals the subscriber) at a time.
+	 */
+	private class ItemSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super Item> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+		private boolean done;
+
+		// Production state; only touched inside the drain loop
+		private EntryTable table;
+		private int entryIndex;
+		private int forkIndex = -1;
+		private long forkPosition;
+
+		private ItemSubscription(Flow.Subscriber<? super Item> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Subscription request must be positive (rule 3.9)");
+			} else {
+				requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+			}
+			schedule();
+		}
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this::drain);
+			}
+		}
+		private void drain() {
+			int missed = 1;
+			do {
+				while (!done && !cancelled) {
+					if (invalidRequest != null) {
+						done = true;
+						subscriber.onError(invalidRequest);
+						break;
+					}
+					Item item;
+					try {
+						if (!hasNext()) {
+							done = true;
+							subscriber.onComplete();
+							break;
+						}
+						if (requested.get() == 0) break;
+						item = next();
+					} catch (IOException | RuntimeException ex) {
+						done = true;
+						subscriber.onError(ex);
+						break;
+					}
+					if (requested.get() != Long.MAX_VALUE) requested.decrementAndGet();
+					subscriber.onNext(item);
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private boolean hasNext() {
+			if (table == null || entryIndex < table.size()) return true;
+			if (forkIndex >= 0 && forkPosition < table.getLength(forkIndex)) return true;
+			forkIndex = nextFork(forkIndex + 1);
+			forkPosition = 0;
+			return forkIndex < table.size();
+		}
+		/** Find the next non-empty fork at or after the given table index. */
+		private int nextFork(int index) {
+			while (index < table.size()) {
+				int entryId = table.getEntryId(index);
+				boolean fork = entryId == EntryType.DATA_FORK.entryId || entryId == EntryType.RESOURCE_FORK.entryId;
+				if (fork && table.getLength(index) > 0) break;
+				index++;
+			}
+			return index;
+		}
+		private Item next() throws IOException {
+			if (table == null) {
+				table = EntryTable.read(reader);
+				return new Item(Kind.HEADER, table.getVersion(), table.size(), null, null, 0, null);
+			}
+			if (entryIndex < table.size()) {
+				return new Item(Kind.ENTRY, table.getVersion(), table.size(), table.getEntry(entryIndex++), null, 0, null);
+			}
+			int length = (int)Math.min(chunkSize, table.getLength(forkIndex) - forkPosition);
+			EntryType type = EntryType.find(table.getEntryId(forkIndex));
+			ByteBuffer chunk = reader.sliceAt(table.getOffset(forkIndex) + forkPosition, length, type.name);
+			Item item = new Item(Kind.CHUNK, table.getVersion(), table.size(), null, type, forkPosition, chunk.asReadOnlyBuffer());
+			forkPosition += length;
+			return item;
+		}
+	}
+
+	public enum Kind {
+		/** The AppleSingle header; see {@link Item#getVersion()} and {@link Item#getNumberOfEntries()}. */
+		HEADER,
+		/** One entry (descriptor and data); see {@link Item#getEntry()}. */
+		ENTRY,
+		/** A chunk of a fork; see {@link Item#getEntryType()}, {@link Item#getPosition()} and {@link Item#getData()}. */
+		CHUNK
+	}
+
+	/** One item published for an AppleSingle file. */
+	public static class Item {
+		private final Kind kind;
+		private final int version;
+		private final int numberOfEntries;
+		private final Entry entry;
+		private final EntryType entryType;
+		private final long position;
+		private final ByteBuffer data;
+
+		private Item(Kind kind, int version, int numberOfEntries, Entry entry, EntryType entryType, long position, ByteBuffer data) {
+			this.kind = kind;
+			this.version = version;
+			this.numberOfEntries = numberOfEntries;
+			this.entry = entry;
+			this.entryType = entryType;
+			this.position = position;
+			this.data = data;
+		}
+		public Kind getKind() {
+			return kind;
+		}
+		public int getVersion() {
+			return version;
+		}
+		public int getNumberOfEntries() {
+			return numberOfEntries;
+		}
+		/** The entry for an {@code ENTRY} item; otherwise null. */
+		public Entry getEntry() {
+			return entry;
+		}
+		/** The fork a {@code CHUNK} belongs to; otherwise null. */
+		public EntryType getEntryType() {
+			return entryType;
+		}
+		/** The position of a {@code CHUNK} within its fork. */
+		public long getPosition() {
+			return position;
+		}
+		/** The read-only content of a {@code CHUNK}; otherwise null. */
+		public ByteBuffer getData() {
+			return data;
+		}
+	}
+}
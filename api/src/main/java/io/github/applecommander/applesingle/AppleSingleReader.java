@@ -1,7 +1,16 @@
 package io.github.applecommander.applesingle;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -9,16 +18,217 @@ import java.util.function.Consumer;
  * The AppleSingleReader is a component that allows tools to react to processing that 
  * goes on when an AppleSingle file is being read.  The {@code Builder} allows multiple
  * {@code Consumer}'s and {@code ReadAtReporter}'s to be defined. 
+ * <p>
+ * A reader may be reused: {@link #reset(byte[])} (and friends) point it at a new source while
+ * keeping the configured reporters.  A reader is not thread-safe; use one reader per thread.  An
+ * {@link EntryTable} reads entry data through its reader, so a table may not be used once the reader
+ * has been reset.
+ * <p>
+ * For a spilled stream, or a file opened by {@link #reset(Path)}, that is larger than 2GB, the reader keeps
+ * the channel it opened, since a long slice across two windows is mapped on demand.  That channel is
+ * closed by the next reset or by {@link #close()}; entries already created stay valid either way.
+ * <p>
+ * Offsets and lengths are unsigned 32-bit values in the file, so an AppleSingle file may be larger
+ * than 2GB.  Such a file is read through a {@code FileChannel} and mapped as a series of overlapping
+ * windows, so slices stay valid after the channel is closed.  A single slice is limited to 2GB; use
+ * {@link #segmentsAt(long, long, String)} for larger ranges.
+ * <p>
+ * The {@link ParseLimits} of a reader bound what a (possibly hostile) source can make it do; they are
+ * checked before a stream is read or a file is mapped, and before any entry is created.
  */
-public final class AppleSingleReader {
+public final class AppleSingleReader implements Closeable {
 	private AppleSingleReader() { /* Prevent construction */ }
 	
-	private byte[] data;
-	private int pos = 0;
+	/** Large sources are split into segments of this size; each window covers a segment and the next. */
+	static final int SEGMENT_BYTES = 1 << 30;
+	/** The largest array that can be safely allocated. */
+	private static final int MAX_ARRAY_BYTES = Integer.MAX_VALUE - 8;
+	
+	private ByteBuffer source;
+	private ByteBuffer[] windows;
+	private FileChannel channel;
+	/** A channel this reader opened itself, and so must close. */
+	private FileChannel owned;
+	private long size;
+	private long pos = 0;
+	/** Counts resets, so a table read from an earlier source can tell that it is stale. */
+	private int generation;
+	private ParseLimits limits = ParseLimits.UNLIMITED;
+	private long spillThreshold = Long.MAX_VALUE;
+	private Path spillDirectory;
 	private Consumer<Integer> versionReporter = v -> {};
 	private Consumer<Integer> numberOfEntriesReporter = n -> {};
 	private Consumer<Entry> entryReporter = e -> {};
 	private ReadAtReporter readAtReporter = (s,b,d) -> {};
+	private boolean hasReadAtReporter = false;
+	private SliceReporter sliceReporter = (s,b,d) -> {};
+	private boolean hasSliceReporter = false;
+	
+	/** Point this reader at a new source, keeping all reporters.  Answers this reader for chaining. */
+	public AppleSingleReader reset(byte[] data) {
+		Objects.requireNonNull(data, "You must supply a byte[] of data");
+		return reset(ByteBuffer.wrap(data));
+	}
+	/** 
+	 * Point this reader at a new source, keeping all reporters.  Offsets are relative to the current
+	 * position of the buffer.  Answers this reader for chaining.
+	 */
+	public AppleSingleReader reset(ByteBuffer buffer) {
+		Objects.requireNonNull(buffer, "You must supply a ByteBuffer of data");
+		release();
+		this.source = buffer.slice();
+		this.generation += 1;
+		this.windows = null;
+		this.channel = null;
+		this.size = source.limit();
+		this.pos = 0;
+		return this;
+	}
+	/** 
+	 * Point this reader at the content of a stream, keeping all reporters.  No more than the 
+	 * {@code maxTotalBytes} limit is read; a longer stream fails with a {@link ParseLimitException}.
+	 * <p>
+	 * A stream of up to the spill threshold is held in memory.  Beyond that, it is copied to a temporary
+	 * file which is memory mapped and then deleted, so a large stream does not fill the heap.
+	 */
+	public AppleSingleReader reset(InputStream inputStream) throws IOException {
+		Objects.requireNonNull(inputStream, "You must supply an InputStream");
+		long max = limits.getMaxTotalBytes();
+		long inMemory = Math.min(Math.min(spillThreshold, max), MAX_ARRAY_BYTES - 1);
+		// One byte past what can be held in memory tells whether there is more
+		byte[] head = inputStream.readNBytes((int)inMemory + 1);
+		if (head.length <= inMemory) {
+			return reset(head);
+		}
+		limits.checkSourceSize(head.length);
+		if (spillThreshold > inMemory) {
+			throw new IOException(String.format("Stream is larger than %,d bytes and cannot be held in memory; "
+					+ "set a spill threshold", inMemory));
+		}
+		return spill(head, inputStream);
+	}
+	/** 
+	 * Point this reader at the content of a file, keeping all reporters.  A file that fits in a {@code byte[]}
+	 * is read into memory; a larger one is memory mapped as by {@link #reset(FileChannel)}.
+	 */
+	public AppleSingleReader reset(Path path) throws IOException {
+		Objects.requireNonNull(path, "You must supply a file");
+		long size = Files.size(path);
+		limits.checkSourceSize(size);
+		if (size <= MAX_ARRAY_BYTES) {
+			return reset(Files.readAllBytes(path));
+		}
+		return adopt(FileChannel.open(path));
+	}
+	/** Copy the stream to a temporary file and map it.  The file is deleted when the channel is closed. */
+	private AppleSingleReader spill(byte[] head, InputStream inputStream) throws IOException {
+		Path file = spillDirectory == null ? Files.createTempFile("applesingle", ".spill") 
+				: Files.createTempFile(spillDirectory, "applesingle", ".spill");
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, 
+				StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			writeFully(channel, ByteBuffer.wrap(head));
+			long size = head.length;
+			byte[] chunk = new byte[64 * 1024];
+			for (int n = inputStream.read(chunk); n != -1; n = inputStream.read(chunk)) {
+				size += n;
+				limits.checkSourceSize(size);
+				writeFully(channel, ByteBuffer.wrap(chunk, 0, n));
+			}
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+		return adopt(channel);
+	}
+	/** 
+	 * Point this reader at a channel it opened.  The channel is kept (until the next reset or close) only
+	 * when slices may still need it; otherwise the mapping is all that is needed and it is closed now.
+	 */
+	private AppleSingleReader adopt(FileChannel channel) throws IOException {
+		try {
+			reset(channel);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+		if (this.channel == channel) {
+			this.owned = channel;
+		} else {
+			channel.close();
+		}
+		return this;
+	}
+	/** Close the channel this reader opened for its previous source, if any. */
+	private void release() {
+		FileChannel previous = owned;
+		owned = null;
+		if (previous != null) {
+			try {
+				previous.close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+	}
+	/** 
+	 * Let go of the current source, closing any channel this reader opened.  Entries already created stay
+	 * valid, but tables read from this source may no longer be used.  The reader may be reset and used again.
+	 */
+	@Override
+	public void close() throws IOException {
+		FileChannel previous = owned;
+		owned = null;
+		source = null;
+		windows = null;
+		channel = null;
+		generation += 1;
+		if (previous != null) previous.close();
+	}
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	/** 
+	 * Point this reader at the content of a file channel, which is memory mapped rather than read.
+	 * Files larger than 2GB are mapped as overlapping windows of up to 2GB, one per {@link #SEGMENT_BYTES}.
+	 * Only a slice of more than 1GB that straddles two windows needs the channel to still be open.
+	 */
+	public AppleSingleReader reset(FileChannel channel) throws IOException {
+		Objects.requireNonNull(channel, "You must supply a FileChannel");
+		long size = channel.size();
+		limits.checkSourceSize(size);
+		if (size <= Integer.MAX_VALUE) {
+			return reset(channel.map(MapMode.READ_ONLY, 0, size));
+		}
+		ByteBuffer[] windows = new ByteBuffer[(int)((size + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < windows.length; i++) {
+			long start = (long)i * SEGMENT_BYTES;
+			windows[i] = channel.map(MapMode.READ_ONLY, start, Math.min(Integer.MAX_VALUE, size - start));
+		}
+		reset(windows[0]);
+		this.windows = windows;
+		this.channel = channel;
+		this.size = size;
+		return this;
+	}
+	
+	/** Incremented by every reset; see {@link EntryTable}. */
+	int generation() {
+		return generation;
+	}
+	/** The limits that sources are checked against. */
+	public ParseLimits getLimits() {
+		return limits;
+	}
+	/** The size, in bytes, of the current source. */
+	public long size() {
+		if (source == null) {
+			throw new IllegalStateException("No source has been supplied; please reset the reader");
+		}
+		return size;
+	}
 	
 	public ByteBuffer read(int len, String description) {
 		try {
@@ -27,13 +237,57 @@ public final class AppleSingleReader {
 			pos += len;
 		}
 	}
-	public ByteBuffer readAt(int start, int len, String description) {
-		byte[] chunk = new byte[len];
-		System.arraycopy(data, start, chunk, 0, len);
-		readAtReporter.accept(start, chunk, description);
-		ByteBuffer buffer = ByteBuffer.wrap(chunk)
+	/** Answer a read-only, big-endian view of the given range.  No copy is made unless a reporter is registered. */
+	public ByteBuffer readAt(long start, int len, String description) {
+		return sliceAt(start, len, description)
+				.asReadOnlyBuffer()
 				.order(ByteOrder.BIG_ENDIAN);
-		return buffer;
+	}
+	/** 
+	 * Answer a slice of the source without copying.  A copy of the chunk is only made when a 
+	 * {@code ReadAtReporter} has been registered; a {@code SliceReporter} receives a read-only view.
+	 */
+	public ByteBuffer sliceAt(long start, int len, String description) {
+		Objects.checkFromIndexSize(start, len, size());
+		ByteBuffer slice;
+		if (start + len <= source.limit()) {
+			slice = source.slice((int)start, len);
+		} else {
+			ByteBuffer window = windows[(int)(start / SEGMENT_BYTES)];
+			int position = (int)(start % SEGMENT_BYTES);
+			if ((long)position + len <= window.limit()) {
+				slice = window.slice(position, len);
+			} else try {
+				slice = channel.map(MapMode.READ_ONLY, start, len);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+		if (hasReadAtReporter) {
+			byte[] chunk = new byte[len];
+			slice.duplicate().get(chunk);
+			readAtReporter.accept(start, chunk, description);
+		}
+		if (hasSliceReporter) {
+			sliceReporter.accept(start, slice.asReadOnlyBuffer(), description);
+		}
+		return slice;
+	}
+	/** 
+	 * Answer the given range as one or more slices; a range of up to 2GB is a single slice, a larger
+	 * range is split into slices of {@link #SEGMENT_BYTES}.  Each slice is reported as with {@link #sliceAt}.
+	 */
+	public ByteBuffer[] segmentsAt(long start, long len, String description) {
+		Objects.checkFromIndexSize(start, len, size());
+		if (len <= Integer.MAX_VALUE) {
+			return new ByteBuffer[] { sliceAt(start, (int)len, description) };
+		}
+		ByteBuffer[] segments = new ByteBuffer[(int)((len + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < segments.length; i++) {
+			long offset = (long)i * SEGMENT_BYTES;
+			segments[i] = sliceAt(start + offset, (int)Math.min(SEGMENT_BYTES, len - offset), description);
+		}
+		return segments;
 	}
 	public void reportVersion(int version) {
 		versionReporter.accept(version);
@@ -47,13 +301,43 @@ public final class AppleSingleReader {
 
 	/** Create a {@code Builder} for an {@code AppleSingleReader}. */
 	public static Builder builder(byte[] data) {
-		return new Builder(data);
+		Objects.requireNonNull(data, "You must supply a byte[] of data");
+		return new Builder().source(ByteBuffer.wrap(data));
+	}
+	/** 
+	 * Create a {@code Builder} for an {@code AppleSingleReader} without a source.  Supply the source
+	 * with one of the {@code reset} methods.
+	 */
+	public static Builder builder() {
+		return new Builder();
 	}
 	public static class Builder {
 		private AppleSingleReader reader = new AppleSingleReader();
-		private Builder(byte[] data) {
-			Objects.requireNonNull(data, "You must supply a byte[] of data");
-			reader.data = data;
+		private Builder() {
+			// Use the factory methods
+		}
+		private Builder source(ByteBuffer data) {
+			reader.reset(data);
+			return this;
+		}
+		/** Set the limits that sources are checked against; defaults to {@link ParseLimits#UNLIMITED}. */
+		public Builder limits(ParseLimits limits) {
+			reader.limits = Objects.requireNonNull(limits);
+			return this;
+		}
+		/** 
+		 * Streams larger than this many bytes are spilled to a temporary file rather than held in memory;
+		 * see {@link AppleSingleReader#reset(InputStream)}.  By default streams are never spilled.
+		 */
+		public Builder spillThreshold(long spillThreshold) {
+			if (spillThreshold < 0) throw new IllegalArgumentException("spillThreshold cannot be negative");
+			reader.spillThreshold = spillThreshold;
+			return this;
+		}
+		/** The directory for spill files; defaults to the system temporary directory. */
+		public Builder spillDirectory(Path spillDirectory) {
+			reader.spillDirectory = Objects.requireNonNull(spillDirectory);
+			return this;
 		}
 		/** Add a version reporter.  Note that multiple can be added. */
 		public Builder versionReporter(Consumer<Integer> consumer) {
@@ -77,6 +361,14 @@ public final class AppleSingleReader {
 		public Builder readAtReporter(ReadAtReporter consumer) {
 			Objects.requireNonNull(consumer);
 			reader.readAtReporter = reader.readAtReporter.andThen(consumer);
+			reader.hasReadAtReporter = true;
+			return this;
+		}
+		/** Add a slice reporter, which sees the data without a copy.  Note that multiple can be added. */
+		public Builder sliceReporter(SliceReporter consumer) {
+			Objects.requireNonNull(consumer);
+			reader.sliceReporter = reader.sliceReporter.andThen(consumer);
+			reader.hasSliceReporter = true;
 			return this;
 		}
 		public AppleSingleReader build() {
@@ -85,7 +377,7 @@ public final class AppleSingleReader {
 	}
 
 	/** 
-	 * A reporter for the {@code AppleSingleReader#readAt(int, int, String)} method, 
+	 * A reporter for the {@code AppleSingleReader#readAt(long, int, String)} method, 
 	 * heavily modeled on the {@code Consumer} interface.
 	 */
 	public interface ReadAtReporter {
@@ -96,7 +388,7 @@ public final class AppleSingleReader {
 	     * @param data the specific data being processed
 	     * @param description descriptive text regarding the data
 	     */
-		public void accept(int start, byte[] data, String description);
+		public void accept(long start, byte[] data, String description);
 
 		/**
 	     * Returns a composed {@code ReadAtReporter} that performs, in sequence, this
@@ -115,4 +407,32 @@ public final class AppleSingleReader {
 	        return (s,b,d) -> { accept(s,b,d); after.accept(s,b,d); };
 	    }
 	}
-}
\ No newline at end of file
+
+	/** 
+	 * A reporter for the {@code AppleSingleReader#sliceAt(long, int, String)} method that receives a 
+	 * read-only view of the source rather than a copy.  Preferred for large sources.
+	 */
+	public interface SliceReporter {
+		/**
+		 * Performs this operation on the given arguments.
+		 * 
+		 * @param start the offset into the file
+		 * @param data a read-only view of the specific data being processed
+		 * @param description descriptive text regarding the data
+		 */
+		public void accept(long start, ByteBuffer data, String description);
+
+		/**
+		 * Returns a composed {@code SliceReporter} that performs, in sequence, this
+		 * operation followed by the {@code after} operation.
+		 *
+		 * @param after the operation to perform after this operation
+		 * @return a composed {@code SliceReporter}
+		 * @throws NullPointerException if {@code after} is null
+		 */
+		public default SliceReporter andThen(SliceReporter after) {
+			Objects.requireNonNull(after);
+			return (s,b,d) -> { accept(s,b.duplicate(),d); after.accept(s,b.duplicate(),d); };
+		}
+	}
+}
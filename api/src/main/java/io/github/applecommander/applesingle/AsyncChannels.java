@@ -0,0 +1,109 @@
+package io.github.applecommander.applesingle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Whole-file reads and writes on an {@link AsynchronousFileChannel}.  No thread waits on the I/O;
+ * each step continues in a completion handler, which runs on the channel's executor (or the default
+ * thread pool when the executor is null).
+ */
+final class AsyncChannels {
+	private static final Set<OpenOption> READ = Set.of(StandardOpenOption.READ);
+	private static final Set<OpenOption> WRITE = Set.of(StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+	private AsyncChannels() {
+		// Prevent construction
+	}
+
+	/** Read the entire file into a heap buffer; the future completes with the buffer ready to read. */
+	static CompletableFuture<ByteBuffer> readAll(Path path, ExecutorService executor) {
+		CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+		try {
+			AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, READ, executor);
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				channel.close();
+				throw new IOException(String.format("File is too large to read (%,d bytes)", size));
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			channel.read(buffer, 0, buffer, new CompletionHandler<Integer,ByteBuffer>() {
+				@Override
+				public void completed(Integer count, ByteBuffer buffer) {
+					if (count < 0 && buffer.hasRemaining()) {
+						failed(new IOException(String.format("File was truncated while reading '%s'", path)), buffer);
+					} else if (buffer.hasRemaining()) {
+						channel.read(buffer, buffer.position(), buffer, this);
+					} else {
+						close(channel, future);
+						future.complete(buffer.flip());
+					}
+				}
+				@Override
+				public void failed(Throwable t, ByteBuffer buffer) {
+					close(channel, future);
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (IOException | RuntimeException ex) {
+			future.completeExceptionally(ex);
+		}
+		return future;
+	}
+
+	/** Write the buffers, in order, as the entire content of the file. */
+	static CompletableFuture<Void> writeAll(Path path, List<ByteBuffer> buffers, ExecutorService executor) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, WRITE, executor);
+			Iterator<ByteBuffer> iterator = buffers.iterator();
+			new CompletionHandler<Integer,ByteBuffer>() {
+				private long position = 0;
+				/** Write the next non-empty buffer, or finish when there are none left. */
+				void next(ByteBuffer buffer) {
+					while ((buffer == null || !buffer.hasRemaining()) && iterator.hasNext()) {
+						buffer = iterator.next();
+					}
+					if (buffer != null && buffer.hasRemaining()) {
+						channel.write(buffer, position, buffer, this);
+					} else {
+						close(channel, future);
+						future.complete(null);
+					}
+				}
+				@Override
+				public void completed(Integer count, ByteBuffer buffer) {
+					position += count;
+					next(buffer);
+				}
+				@Override
+				public void failed(Throwable t, ByteBuffer buffer) {
+					close(channel, future);
+					future.completeExceptionally(t);
+				}
+			}.next(null);
+		} catch (IOException | RuntimeException ex) {
+			future.completeExceptionally(ex);
+		}
+		return future;
+	}
+
+	private static void close(AsynchronousFileChannel channel, CompletableFuture<?> future) {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			future.completeExceptionally(ex);
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package io.github.applecommander.applesingle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Generates synthetic AppleSingle files for load testing.  Every file is derived only from the seed
+ * and its index, so a corpus is reproducible regardless of how many threads generate it.
+ * <p>
+ * Use the {@link #builder()} to configure the generator.
+ */
+public class CorpusGenerator {
+	private static final int[] PRODOS_FILE_TYPES = { 0x04, 0x06, 0xfa, 0xfc, 0xfe, 0xff };
+	private static final EntryType[] EXTRA_ENTRY_TYPES = { EntryType.COMMENT, EntryType.ICON_BW, EntryType.ICON_COLOR, 
+			EntryType.FINDER_INFO, EntryType.MACINTOSH_FILE_INFO, EntryType.MSDOS_FILE_INFO, EntryType.SHORT_NAME, 
+			EntryType.AFP_FILE_INFO, EntryType.DIRECTORY_ID };
+	/** Dates are generated relative to a fixed point so output does not depend on when it is generated. */
+	private static final int BASE_DATE = FileDatesInfo.fromInstant(Instant.parse("2020-01-01T00:00:00Z"));
+	private static final char[] NAME_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.".toCharArray();
+
+	private long seed = 0;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private SizeDistribution dataForkSize = SizeDistribution.logNormal(4096, 1.5, 1024 * 1024);
+	private SizeDistribution resourceForkSize = SizeDistribution.uniform(0, 4096);
+	private double resourceForkFraction = 0.0;
+	private double extraEntriesFraction = 0.0;
+	private double version1Fraction = 0.0;
+	private double malformedFraction = 0.0;
+	private boolean shuffleEntries = false;
+	private String prefix = "file";
+	private GroupCommit.Builder groupCommit;
+
+	private CorpusGenerator() {
+		// Use the builder
+	}
+	
+	/** Generate <code>count</code> files into the given directory, in parallel. */
+	public Summary generate(Path directory, int count) throws IOException {
+		Objects.requireNonNull(directory);
+		Files.createDirectories(directory);
+		Summary summary = new Summary();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		GroupCommit committer = groupCommit == null ? null : groupCommit.build();
+		AtomicReference<Throwable> commitFailure = new AtomicReference<>();
+		try {
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(index -> {
+				byte[] data = generate(index);
+				Path target = directory.resolve(fileName(index));
+				try {
+					if (committer == null) {
+						Files.write(target, data);
+					} else {
+						committer.write(target, data).whenComplete((p, t) -> {
+							if (t != null) commitFailure.compareAndSet(null, t);
+						});
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				summary.files.incrementAndGet();
+				summary.bytes.addAndGet(data.length);
+				if (isMalformed(index)) summary.malformed.incrementAndGet();
+			})).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while generating files", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException)e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdown();
+			if (committer != null) committer.close();
+		}
+		Throwable failure = commitFailure.get();
+		if (failure instanceof IOException) throw (IOException)failure;
+		if (failure != null) throw new IOException(failure);
+		return summary;
+	}
+	/** The file name used for the given index. */
+	public String fileName(int index) {
+		return String.format("%s-%08d.as", prefix, index);
+	}
+	/** Indicates if the file at the given index is intentionally malformed. */
+	public boolean isMalformed(int index) {
+		return random(index).nextDouble() < malformedFraction;
+	}
+	
+	/** Generate the AppleSingle file for the given index. */
+	public byte[] generate(int index) {
+		SplittableRandom random = random(index);
+		// Note: the first value is reserved for isMalformed(...)
+		boolean malformed = random.nextDouble() < malformedFraction;
+		int version = random.nextDouble() < version1Fraction ? AppleSingle.VERSION_NUMBER1 : AppleSingle.VERSION_NUMBER2;
+		
+		List<Entry> entries = new ArrayList<>();
+		entries.add(Entry.realName(randomName(random).getBytes()));
+		entries.add(new ProdosFileInfo(0xc3, PRODOS_FILE_TYPES[random.nextInt(PRODOS_FILE_TYPES.length)], 
+				random.nextInt(0x10000)).toEntry());
+		entries.add(new FileDatesInfo(BASE_DATE - random.nextInt(1 << 28), BASE_DATE - random.nextInt(1 << 24), 
+				FileDatesInfo.UNKNOWN_DATE, BASE_DATE).toEntry());
+		entries.add(Entry.dataFork(randomBytes(random, dataForkSize.sample(random))));
+		if (random.nextDouble() < resourceForkFraction) {
+			entries.add(Entry.resourceFork(randomBytes(random, resourceForkSize.sample(random))));
+		}
+		if (random.nextDouble() < extraEntriesFraction) {
+			for (EntryType type : EXTRA_ENTRY_TYPES) {
+				if (random.nextBoolean()) entries.add(randomEntry(random, type));
+			}
+		}
+		if (shuffleEntries) {
+			shuffle(random, entries);
+		}
+		
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			AppleSingle.write(outputStream, entries, version);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		byte[] data = outputStream.toByteArray();
+		return malformed ? malform(random, data, entries.size()) : data;
+	}
+	
+	private SplittableRandom random(int index) {
+		// Golden ratio increment keeps neighboring indexes well apart
+		return new SplittableRandom(seed + index * 0x9E3779B97F4A7C15L);
+	}
+	private String randomName(SplittableRandom random) {
+		char[] name = new char[1 + random.nextInt(15)];
+		name[0] = NAME_CHARS[random.nextInt(26)];
+		for (int i=1; i<name.length; i++) name[i] = NAME_CHARS[random.nextInt(NAME_CHARS.length)];
+		return new String(name);
+	}
+	private byte[] randomBytes(SplittableRandom random, int length) {
+		byte[] data = new byte[length];
+		random.nextBytes(data);
+		return data;
+	}
+	private Entry randomEntry(SplittableRandom random, EntryType type) {
+		switch (type) {
+		case COMMENT:
+			return Entry.create(type, ("Comment " + randomName(random)).getBytes());
+		case SHORT_NAME:
+			return Entry.create(type, randomName(random).getBytes());
+		case FINDER_INFO:
+			return new FinderInfo(random.nextInt(), random.nextInt(), random.nextInt(0x10000), random.nextInt(512), 
+					random.nextInt(512), 0, randomBytes(random, FinderInfo.EXTENDED_BYTES)).toEntry();
+		case MACINTOSH_FILE_INFO:
+			return new MacintoshFileInfo(random.nextInt() & (MacintoshFileInfo.LOCKED | MacintoshFileInfo.PROTECTED)).toEntry();
+		case MSDOS_FILE_INFO:
+			return new MsdosFileInfo(random.nextInt(0x40)).toEntry();
+		case AFP_FILE_INFO:
+			return new AfpFileInfo(random.nextInt()).toEntry();
+		case DIRECTORY_ID:
+			return Entry.create(type, ByteBuffer.allocate(Integer.BYTES).putInt(random.nextInt()).array());
+		default:
+			return Entry.create(type, randomBytes(random, 128 + random.nextInt(128)));
+		}
+	}
+	private void shuffle(SplittableRandom random, List<Entry> entries) {
+		for (int i=entries.size()-1; i>0; i--) {
+			Collections.swap(entries, i, random.nextInt(i + 1));
+		}
+	}
+	/** Damage the file in one of several ways that a reader should detect. */
+	private byte[] malform(SplittableRandom random, byte[] data, int numberOfEntries) {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		int descriptor = 26 + Entry.BYTES * random.nextInt(numberOfEntries);
+		switch (random.nextInt(5)) {
+		case 0:		// Truncated somewhere after the header
+			return Arrays.copyOf(data, 26 + random.nextInt(data.length - 26));
+		case 1:		// Bad magic number
+			buf.putInt(0, random.nextInt());
+			return data;
+		case 2:		// Bad version number
+			buf.putInt(4, 0x00030000);
+			return data;
+		case 3:		// Entry extends past the end of the file
+			buf.putInt(descriptor + 8, data.length);
+			return data;
+		default:	// Entry overlaps the descriptors
+			buf.putInt(descriptor + 4, 0);
+			return data;
+		}
+	}
+	
+	public static Builder builder() {
+		return new Builder();
+	}
+	public static class Builder {
+		private final CorpusGenerator generator = new CorpusGenerator();
+		private Builder() {
+			// Use CorpusGenerator.builder()
+		}
+		public Builder seed(long seed) {
+			generator.seed = seed;
+			return this;
+		}
+		public Builder parallelism(int parallelism) {
+			if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+			generator.parallelism = parallelism;
+			return this;
+		}
+		public Builder dataForkSize(SizeDistribution distribution) {
+			generator.dataForkSize = Objects.requireNonNull(distribution);
+			return this;
+		}
+		public Builder resourceForkSize(SizeDistribution distribution) {
+			generator.resourceForkSize = Objects.requireNonNull(distribution);
+			return this;
+		}
+		/** Fraction (0.0 to 1.0) of files that include a resource fork. */
+		public Builder resourceForkFraction(double fraction) {
+			generator.resourceForkFraction = checkFraction(fraction);
+			return this;
+		}
+		/** Fraction (0.0 to 1.0) of files that include extra (Macintosh, MS-DOS, AFP, etc) entries. */
+		public Builder extraEntriesFraction(double fraction) {
+			generator.extraEntriesFraction = checkFraction(fraction);
+			return this;
+		}
+		/** Fraction (0.0 to 1.0) of files written with a version 1 header. */
+		public Builder version1Fraction(double fraction) {
+			generator.version1Fraction = checkFraction(fraction);
+			return this;
+		}
+		/** Fraction (0.0 to 1.0) of files that are intentionally malformed. */
+		public Builder malformedFraction(double fraction) {
+			generator.malformedFraction = checkFraction(fraction);
+			return this;
+		}
+		/** Randomize the order of the entries within each file. */
+		public Builder shuffleEntries(boolean shuffleEntries) {
+			generator.shuffleEntries = shuffleEntries;
+			return this;
+		}
+		public Builder prefix(String prefix) {
+			generator.prefix = Objects.requireNonNull(prefix);
+			return this;
+		}
+		/** Write the files durably, committing them in groups; see {@link GroupCommit}. */
+		public Builder groupCommit(GroupCommit.Builder groupCommit) {
+			generator.groupCommit = groupCommit;
+			return this;
+		}
+		private double checkFraction(double fraction) {
+			if (fraction < 0.0 || fraction > 1.0) throw new IllegalArgumentException("Fraction must be between 0.0 and 1.0");
+			return fraction;
+		}
+		public CorpusGenerator build() {
+			return generator;
+		}
+	}
+	
+	/** Summary of a generation run. */
+	public static class Summary {
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong malformed = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		
+		public long getFiles() {
+			return files.get();
+		}
+		public long getMalformed() {
+			return malformed.get();
+		}
+		public long getBytes() {
+			return bytes.get();
+		}
+	}
+}
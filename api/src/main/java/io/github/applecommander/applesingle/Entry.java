@@ -4,41 +4,84 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Represents an AppleSingle entry.
+ * <p>
+ * Entries read from a source are a slice of that source rather than a copy; the bytes are only
+ * copied if {@link #getData()} is called.  Writing an entry streams directly from the slice.
+ * Entries are immutable and may be shared between threads.
+ * <p>
+ * Offsets and lengths are unsigned 32-bit values in the file and are handled as {@code long}.  An
+ * entry larger than 2GB cannot be held in a single {@code byte[]} or {@code ByteBuffer}; it is kept as
+ * a series of (memory mapped) segments and can only be written out, with {@link #writeData(OutputStream)}
+ * or {@link #writeData(WritableByteChannel)}.
  */
 public class Entry {
 	public static final int BYTES = 12;
-	private int entryId;
-	private int offset;
-	private int length;
-	private byte[] data;
+	/** The largest offset or length the AppleSingle format can represent (unsigned 32-bit). */
+	public static final long MAX_LENGTH = 0xffffffffL;
+	private final int entryId;
+	private final long offset;
+	private final long length;
+	/** The data, in order; a single segment unless the entry is larger than 2GB. */
+	private final ByteBuffer[] segments;
 
 	/** Create an Entry and read it's data from the reader. */
 	public static Entry create(AppleSingleReader reader) {
 		Objects.requireNonNull(reader);
 		
 		ByteBuffer buffer = reader.read(BYTES, "Entry header");
-		Entry entry = new Entry();
-		entry.entryId = buffer.getInt();
-		entry.offset = buffer.getInt();
-		entry.length = buffer.getInt();
+		int entryId = buffer.getInt();
+		long offset = Integer.toUnsignedLong(buffer.getInt());
+		long length = Integer.toUnsignedLong(buffer.getInt());
 		
-		entry.data = reader.readAt(entry.offset, entry.length, EntryType.findNameOrUnknown(entry)).array();
-		return entry;
+		String description = Optional.ofNullable(EntryType.lookup(entryId)).map(et -> et.name).orElse("Unknown");
+		return create(entryId, offset, length, reader.segmentsAt(offset, length, description));
 	}
-	/** Create an Entry. */
+	/** Create an Entry over a slice of the source; used by the {@link EntryTable}. */
+	static Entry create(int entryId, long offset, long length, ByteBuffer... segments) {
+		return new Entry(entryId, offset, length, segments);
+	}
+	/** 
+	 * Create an Entry.  The Entry takes ownership of the array; it must not be modified afterwards
+	 * if the Entry is shared. 
+	 */
 	public static Entry create(EntryType type, byte[] data) {
 		Objects.requireNonNull(type);
 		Objects.requireNonNull(data);
-		Entry entry = new Entry();
-		entry.entryId = type.entryId;
-		entry.offset = -1;
-		entry.length = data.length;
-		entry.data = data;
-		return entry;
+		return new Entry(type.entryId, -1, data.length, ByteBuffer.wrap(data));
+	}
+	/** 
+	 * Create an Entry for a region of a file, which may be larger than 2GB.  The region is memory
+	 * mapped, so the channel does not need to stay open.
+	 */
+	public static Entry create(EntryType type, FileChannel channel, long position, long length) throws IOException {
+		Objects.requireNonNull(type);
+		Objects.requireNonNull(channel);
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format("Entry length %,d exceeds the AppleSingle limit of %,d bytes", 
+					length, MAX_LENGTH));
+		}
+		return new Entry(type.entryId, -1, length, map(channel, position, length));
+	}
+	/** Map a region of a channel as read-only segments; see {@link AppleSingleReader#segmentsAt(long, long, String)}. */
+	private static ByteBuffer[] map(FileChannel channel, long position, long length) throws IOException {
+		if (length <= Integer.MAX_VALUE) {
+			return new ByteBuffer[] { channel.map(MapMode.READ_ONLY, position, length) };
+		}
+		int segmentBytes = AppleSingleReader.SEGMENT_BYTES;
+		ByteBuffer[] segments = new ByteBuffer[(int)((length + segmentBytes - 1) / segmentBytes)];
+		for (int i = 0; i < segments.length; i++) {
+			long start = (long)i * segmentBytes;
+			segments[i] = channel.map(MapMode.READ_ONLY, position + start, Math.min(segmentBytes, length - start));
+		}
+		return segments;
 	}
 	/** Create a REAL_NAME entry.  Primarily used for Java 8 streams. */
 	public static Entry realName(byte[] data) {
@@ -53,31 +96,102 @@ public class Entry {
 		return create(EntryType.RESOURCE_FORK, data);
 	}
 	
+	private Entry(int entryId, long offset, long length, ByteBuffer... segments) {
+		this.entryId = entryId;
+		this.offset = offset;
+		this.length = length;
+		this.segments = segments;
+	}
+	
 	public int getEntryId() {
 		return entryId;
 	}
-	public int getOffset() {
+	/** The offset of this entry in the file it was read from (unsigned), or -1 if it was created. */
+	public long getOffset() {
 		return offset;
 	}
-	public int getLength() {
+	/** The length of this entry (unsigned), up to {@link #MAX_LENGTH}. */
+	public long getLength() {
 		return length;
 	}
+	/** 
+	 * Answer a copy of the entry data.  Use {@link #getBuffer()} for a read-only view without copying.
+	 * @throws IllegalStateException if the entry is too large for a {@code byte[]}
+	 */
 	public byte[] getData() {
-		return data;
+		byte[] copy = new byte[checkedLength()];
+		segments[0].duplicate().get(copy);
+		return copy;
 	}
+	/** 
+	 * Answer a read-only view of the entry data. 
+	 * @throws IllegalStateException if the entry is too large for a {@code ByteBuffer}
+	 */
 	public ByteBuffer getBuffer() {
-		return ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN).asReadOnlyBuffer();
+		checkedLength();
+		return segments[0].duplicate().order(ByteOrder.BIG_ENDIAN).asReadOnlyBuffer();
+	}
+	/** 
+	 * Answer a read-only view of the data of a fixed-size entry, as {@link #getBuffer()} does.
+	 * @throws IllegalArgumentException if the entry is shorter than the given number of bytes
+	 */
+	ByteBuffer getBuffer(int bytes) {
+		if (length < bytes) {
+			throw new IllegalArgumentException(String.format("Entry id %d is truncated: expected %d bytes but it is %d bytes",
+					entryId, bytes, length));
+		}
+		return getBuffer();
+	}
+	/** Answer read-only views of the data segments; a single segment unless the entry is larger than 2GB. */
+	ByteBuffer[] getSegments() {
+		ByteBuffer[] views = new ByteBuffer[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			views[i] = segments[i].asReadOnlyBuffer();
+		}
+		return views;
+	}
+	private int checkedLength() {
+		if (segments.length > 1) {
+			throw new IllegalStateException(String.format("Entry is too large (%,d bytes) to hold in memory; "
+					+ "use writeData to copy it", length));
+		}
+		return (int)length;
 	}
 	
-	public void writeHeader(OutputStream outputStream, int offset) throws IOException {
-		this.offset = offset;
+	public void writeHeader(OutputStream outputStream, long offset) throws IOException {
+		if (offset < 0 || offset > MAX_LENGTH) {
+			throw new IllegalArgumentException(String.format("Entry offset %,d exceeds the AppleSingle limit of %,d bytes", 
+					offset, MAX_LENGTH));
+		}
 		ByteBuffer buf = ByteBuffer.allocate(BYTES).order(ByteOrder.BIG_ENDIAN);
 		buf.putInt(this.entryId);
-		buf.putInt(this.offset);
-		buf.putInt(this.length);
+		buf.putInt((int)offset);
+		buf.putInt((int)this.length);
 		outputStream.write(buf.array());
 	}
 	public void writeData(OutputStream outputStream) throws IOException {
-		outputStream.write(data);
+		byte[] chunk = null;
+		for (ByteBuffer segment : segments) {
+			if (segment.hasArray()) {
+				outputStream.write(segment.array(), segment.arrayOffset() + segment.position(), segment.remaining());
+				continue;
+			}
+			if (chunk == null) chunk = new byte[(int)Math.min(length, 8192)];
+			ByteBuffer source = segment.duplicate();
+			while (source.hasRemaining()) {
+				int len = Math.min(chunk.length, source.remaining());
+				source.get(chunk, 0, len);
+				outputStream.write(chunk, 0, len);
+			}
+		}
+	}
+	/** Write the entry data to a channel without copying it into the heap. */
+	public void writeData(WritableByteChannel channel) throws IOException {
+		for (ByteBuffer segment : segments) {
+			ByteBuffer source = segment.duplicate();
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+		}
 	}
 }
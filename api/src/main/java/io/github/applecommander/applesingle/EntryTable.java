@@ -0,0 +1,184 @@
+package io.github.applecommander.applesingle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The entry table (descriptors) of an AppleSingle file, held as parallel primitive columns.
+ * Reading the table does not touch or copy any entry data and creates no {@link Entry} objects; 
+ * an {@code Entry} is only created when one is asked for with {@link #getEntry(int)} or through 
+ * the {@link #asList()} view.  This keeps descriptor-only scans of many files cheap.
+ * <p>
+ * Entry data is fetched from the reader the table was read with, so the table's entries must be fetched
+ * before that reader is reset.  Fetching one afterwards throws an {@link IllegalStateException} rather than
+ * answering bytes from the new source.  The descriptors themselves remain available.
+ */
+public final class EntryTable {
+	private final AppleSingleReader reader;
+	private final int generation;
+	private final int version;
+	private final int size;
+	private final int[] entryIds;
+	private final int[] offsets;
+	private final int[] lengths;
+
+	/** 
+	 * Read the AppleSingle header and entry descriptors from the reader.  The reader's {@link ParseLimits}
+	 * are checked before the table is allocated and again before any entry can be created; a descriptor
+	 * that points past the end of the source fails with a {@link ParseLimitException} whatever the limits.
+	 */
+	public static EntryTable read(AppleSingleReader reader) throws IOException {
+		Objects.requireNonNull(reader);
+		return read(reader, reader.size());
+	}
+	/** 
+	 * Read the header and descriptors from a reader that holds only the start of a source of the given
+	 * size, such as the header and descriptors read from a file.  The descriptors are checked against
+	 * {@code sourceSize}; entries beyond what the reader holds cannot be fetched.
+	 */
+	public static EntryTable read(AppleSingleReader reader, long sourceSize) throws IOException {
+		Objects.requireNonNull(reader);
+		return read(reader, sourceSize, true);
+	}
+	/** 
+	 * Read the header and descriptors for inspection, as tools that report on damaged files do.  The reader's
+	 * limits apply, but descriptors are not checked against the source, so check an entry's bounds before
+	 * fetching it.
+	 */
+	public static EntryTable inspect(AppleSingleReader reader) throws IOException {
+		Objects.requireNonNull(reader);
+		return read(reader, reader.size(), false);
+	}
+	private static EntryTable read(AppleSingleReader reader, long sourceSize, boolean checkSource) throws IOException {
+		ParseLimits limits = reader.getLimits();
+		limits.checkSourceSize(reader.size());
+		required(reader, "Magic number", "Not an AppleSingle file - magic number does not match.", AppleSingle.MAGIC_NUMBER);
+		int version = required(reader, "Version", "Only AppleSingle version 1 and 2 supported.", 
+				AppleSingle.VERSION_NUMBER1, AppleSingle.VERSION_NUMBER2);
+		reader.reportVersion(version);
+		reader.read(16, "Filler");
+		int numberOfEntries = Short.toUnsignedInt(reader.read(Short.BYTES, "Number of entries").getShort());
+		reader.reportNumberOfEntries(numberOfEntries);
+		limits.checkNumberOfEntries(numberOfEntries, reader.size());
+		
+		EntryTable table = new EntryTable(reader, version, numberOfEntries);
+		for (int i = 0; i < numberOfEntries; i++) {
+			ByteBuffer buffer = reader.read(Entry.BYTES, "Entry header");
+			table.entryIds[i] = buffer.getInt();
+			table.offsets[i] = buffer.getInt();
+			table.lengths[i] = buffer.getInt();
+		}
+		limits.checkEntries(table, checkSource ? sourceSize : Long.MAX_VALUE);
+		return table;
+	}
+	private static int required(AppleSingleReader reader, String description, String message, int... expecteds) throws IOException {
+		int actual = reader.read(Integer.BYTES, description).getInt();
+		for (int expected : expecteds) {
+			if (actual == expected) return actual;
+		}
+		List<String> versions = new ArrayList<>();
+		for (int expected : expecteds) versions.add(String.format("0x%08x", expected));
+		throw new IOException(String.format("%s  Expected %s but read 0x%08x.", 
+				message, String.join(",", versions), actual));
+	}
+	
+	private EntryTable(AppleSingleReader reader, int version, int size) {
+		this.reader = reader;
+		this.generation = reader.generation();
+		this.version = version;
+		this.size = size;
+		this.entryIds = new int[size];
+		this.offsets = new int[size];
+		this.lengths = new int[size];
+	}
+	
+	public int getVersion() {
+		return version;
+	}
+	public int size() {
+		return size;
+	}
+	public int getEntryId(int index) {
+		Objects.checkIndex(index, size);
+		return entryIds[index];
+	}
+	/** The offset of the given entry; an unsigned 32-bit value. */
+	public long getOffset(int index) {
+		Objects.checkIndex(index, size);
+		return Integer.toUnsignedLong(offsets[index]);
+	}
+	/** The length of the given entry; an unsigned 32-bit value. */
+	public long getLength(int index) {
+		Objects.checkIndex(index, size);
+		return Integer.toUnsignedLong(lengths[index]);
+	}
+	/** Answer the index of the first entry with the given entry id, or -1 if there is none. */
+	public int indexOf(int entryId) {
+		for (int i = 0; i < size; i++) {
+			if (entryIds[i] == entryId) return i;
+		}
+		return -1;
+	}
+	/** 
+	 * Answer a read-only view of the data for the given entry without creating an {@code Entry}.
+	 * @throws IllegalStateException if the entry is larger than 2GB, is not in the source, or the reader has been reset
+	 */
+	public ByteBuffer getBuffer(int index) {
+		long length = getLength(index);
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalStateException(String.format("Entry is too large (%,d bytes) for a single buffer", length));
+		}
+		checkAvailable(index);
+		return reader.sliceAt(getOffset(index), (int)length, description(index)).asReadOnlyBuffer();
+	}
+	/** Create the {@code Entry} for the given index.  The entry data is a slice of the source, not a copy. */
+	public Entry getEntry(int index) {
+		Objects.checkIndex(index, size);
+		long offset = getOffset(index);
+		long length = getLength(index);
+		checkAvailable(index);
+		Entry entry = Entry.create(entryIds[index], offset, length, reader.segmentsAt(offset, length, description(index)));
+		reader.reportEntry(entry);
+		return entry;
+	}
+	/** 
+	 * Entry data comes from the reader, which must still be on the source this table was read from and
+	 * must hold the entry (it may not, for a table that was inspected or read from a partial source).
+	 */
+	private void checkAvailable(int index) {
+		if (reader.generation() != generation) {
+			throw new IllegalStateException("The reader has been reset or closed since this table was read");
+		}
+		long offset = getOffset(index);
+		long length = getLength(index);
+		if (offset + length > reader.size()) {
+			throw new IllegalStateException(String.format(
+					"Entry #%d (offset %,d, length %,d) extends past the end of the source (%,d bytes)", 
+					index, offset, length, reader.size()));
+		}
+	}
+	private String description(int index) {
+		EntryType type = EntryType.lookup(entryIds[index]);
+		return type == null ? "Unknown" : type.name;
+	}
+	/** Answer a {@code List} view of this table; each {@code Entry} is created as it is fetched. */
+	public List<Entry> asList() {
+		return new EntryList();
+	}
+	
+	private class EntryList extends AbstractList<Entry> implements RandomAccess {
+		@Override
+		public Entry get(int index) {
+			return getEntry(index);
+		}
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
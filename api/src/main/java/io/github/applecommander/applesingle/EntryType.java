@@ -1,44 +1,65 @@
 package io.github.applecommander.applesingle;
 
+import java.util.function.Function;
+
+/**
+ * The known AppleSingle entry types.  Each type carries the decoder used to turn the raw
+ * {@link Entry} into something more useful; lookups by entry id are a simple array index.
+ */
 public enum EntryType {
-	DATA_FORK(1, "Data Fork"),
-	RESOURCE_FORK(2, "Resource Fork"),
-	REAL_NAME(3, "Real Name"),
-	COMMENT(4, "Comment"),
-	ICON_BW(5, "Icon, B&W"),
-	ICON_COLOR(6, "Icon, Color"),
-	FILE_INFO(7, "File Info"),
-	FILE_DATES_INFO(8, "File Dates Info"),
-	FINDER_INFO(9, "Finder Info"),
-	MACINTOSH_FILE_INFO(10, "Macintosh File Info"),
-	PRODOS_FILE_INFO(11, "ProDOS File Info"),
-	MSDOS_FILE_INFO(12, "MS-DOS File Info"),
-	SHORT_NAME(13, "Short Name"),
-	AFP_FILE_INFO(14, "AFP File Info"),
-	DIRECTORY_ID(15, "Directory ID");
-	
-	public static final String findNameOrUnknown(Entry entry) {
+	DATA_FORK(1, "Data Fork", Entry::getData),
+	RESOURCE_FORK(2, "Resource Fork", Entry::getData),
+	REAL_NAME(3, "Real Name", Utilities::entryToAsciiString),
+	COMMENT(4, "Comment", Utilities::entryToAsciiString),
+	ICON_BW(5, "Icon, B&W", Entry::getData),
+	ICON_COLOR(6, "Icon, Color", Entry::getData),
+	FILE_INFO(7, "File Info", Entry::getData),
+	FILE_DATES_INFO(8, "File Dates Info", FileDatesInfo::fromEntry),
+	FINDER_INFO(9, "Finder Info", FinderInfo::fromEntry),
+	MACINTOSH_FILE_INFO(10, "Macintosh File Info", MacintoshFileInfo::fromEntry),
+	PRODOS_FILE_INFO(11, "ProDOS File Info", ProdosFileInfo::fromEntry),
+	MSDOS_FILE_INFO(12, "MS-DOS File Info", MsdosFileInfo::fromEntry),
+	SHORT_NAME(13, "Short Name", Utilities::entryToAsciiString),
+	AFP_FILE_INFO(14, "AFP File Info", AfpFileInfo::fromEntry),
+	DIRECTORY_ID(15, "Directory ID", entry -> entry.getBuffer(Integer.BYTES).getInt());
+
+	/** The highest entry id defined by the AppleSingle specification. */
+	public static final int MAX_ENTRY_ID = 15;
+	private static final EntryType[] REGISTRY = new EntryType[MAX_ENTRY_ID + 1];
+	static {
 		for (EntryType et : values()) {
-			if (et.entryId == entry.getEntryId()) {
-				return et.name;
-			}
+			REGISTRY[et.entryId] = et;
 		}
-		return "Unknown";
+	}
+
+	public static final String findNameOrUnknown(Entry entry) {
+		EntryType et = lookup(entry.getEntryId());
+		return et == null ? "Unknown" : et.name;
 	}
 	public static final EntryType find(int entryId) {
-		for (EntryType et : values()) {
-			if (et.entryId == entryId) {
-				return et;
-			}
+		EntryType et = lookup(entryId);
+		if (et == null) {
+			throw new IllegalArgumentException(String.format("Unable to find EntryType # %d", entryId));
 		}
-		throw new IllegalArgumentException(String.format("Unable to find EntryType # %d", entryId));
+		return et;
+	}
+	/** Locate the EntryType for the given entry id, answering null if it is not a known type. */
+	public static final EntryType lookup(int entryId) {
+		return (entryId >= 0 && entryId < REGISTRY.length) ? REGISTRY[entryId] : null;
 	}
-	
+
 	public final int entryId;
 	public final String name;
-	
-	private EntryType(int entryId, String name) {
+	private final Function<Entry,?> decoder;
+
+	private EntryType(int entryId, String name, Function<Entry,?> decoder) {
 		this.entryId = entryId;
 		this.name= name;
+		this.decoder = decoder;
+	}
+
+	/** Decode the given Entry into the type-specific representation (String, byte[], info class, etc). */
+	public Object decode(Entry entry) {
+		return decoder.apply(entry);
 	}
 }
@@ -5,6 +5,10 @@ import java.nio.ByteOrder;
 import java.time.Instant;
 import java.util.function.IntSupplier;
 
+/**
+ * A simple File Dates Info wrapper class.  Instances are immutable; use the 
+ * {@link AppleSingle.Builder} to change values.
+ */
 public class FileDatesInfo {
 	/** The number of seconds at the beginning of the AppleSingle date epoch since the Unix epoch began. */
 	public static final Instant EPOCH_INSTANT = Instant.parse("2000-01-01T00:00:00.00Z");
@@ -13,17 +17,16 @@ public class FileDatesInfo {
 	/** Number of bytes a File Dates Info takes per AppleSingle spec. */
 	public static final int BYTES = 16;
 
-	// Package scoped so AppleSingle Builder is able to set
-	int creation;
-	int modification;
-	int backup;
-	int access;
+	private final int creation;
+	private final int modification;
+	private final int backup;
+	private final int access;
 	
 	public static int fromInstant(Instant instant) {
 		return (int)(instant.getEpochSecond() - EPOCH_INSTANT.getEpochSecond());
 	}
 	public static FileDatesInfo fromEntry(Entry entry) {
-		ByteBuffer infoData = entry.getBuffer();
+		ByteBuffer infoData = entry.getBuffer(BYTES);
 		int creation = infoData.getInt();
 		int modification = infoData.getInt();
 		int backup = infoData.getInt();
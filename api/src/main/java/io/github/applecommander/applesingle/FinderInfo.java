@@ -0,0 +1,98 @@
+package io.github.applecommander.applesingle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A Macintosh Finder Info wrapper class.  The first 16 bytes are the Finder's FInfo structure
+ * while the (optional) remaining 16 bytes are the FXInfo structure, which is kept as-is.
+ */
+public class FinderInfo {
+	/** Number of bytes the FInfo portion of a Finder Info takes per AppleSingle spec. */
+	public static final int BYTES = 16;
+	/** Number of bytes the FXInfo portion of a Finder Info takes per AppleSingle spec. */
+	public static final int EXTENDED_BYTES = 16;
+
+	private final int fileType;
+	private final int creator;
+	private final int flags;
+	private final int locationV;
+	private final int locationH;
+	private final int folder;
+	private final byte[] extended;
+
+	public static FinderInfo fromEntry(Entry entry) {
+		ByteBuffer infoData = entry.getBuffer(BYTES);
+		int fileType = infoData.getInt();
+		int creator = infoData.getInt();
+		int flags = Short.toUnsignedInt(infoData.getShort());
+		int locationV = infoData.getShort();
+		int locationH = infoData.getShort();
+		int folder = infoData.getShort();
+		byte[] extended = new byte[Math.min(EXTENDED_BYTES, infoData.remaining())];
+		infoData.get(extended);
+		return new FinderInfo(fileType, creator, flags, locationV, locationH, folder, extended);
+	}
+
+	public FinderInfo(int fileType, int creator, int flags, int locationV, int locationH, int folder, byte[] extended) {
+		this.fileType = fileType;
+		this.creator = creator;
+		this.flags = flags;
+		this.locationV = locationV;
+		this.locationH = locationH;
+		this.folder = folder;
+		this.extended = extended == null ? new byte[0] : extended.clone();
+	}
+
+	public Entry toEntry() {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES + extended.length).order(ByteOrder.BIG_ENDIAN);
+		buf.putInt(fileType);
+		buf.putInt(creator);
+		buf.putShort((short)flags);
+		buf.putShort((short)locationV);
+		buf.putShort((short)locationH);
+		buf.putShort((short)folder);
+		buf.put(extended);
+		return Entry.create(EntryType.FINDER_INFO, buf.array());
+	}
+
+	/** Utility method to convert a Macintosh OSType (such as 'TEXT') into a String. */
+	public static String osTypeToString(int osType) {
+		char[] chars = new char[4];
+		for (int i=0; i<chars.length; i++) {
+			int ch = (osType >>> (24 - i*8)) & 0xff;
+			chars[i] = (ch >= ' ' && ch < 0x7f) ? (char)ch : '.';
+		}
+		return new String(chars);
+	}
+
+	public int getFileType() {
+		return fileType;
+	}
+	public int getCreator() {
+		return creator;
+	}
+	public int getFlags() {
+		return flags;
+	}
+	public int getLocationV() {
+		return locationV;
+	}
+	public int getLocationH() {
+		return locationH;
+	}
+	public int getFolder() {
+		return folder;
+	}
+	public byte[] getExtended() {
+		return extended.clone();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("type='%s', creator='%s', flags=%04X, location=(%d,%d), folder=%d, extended=%s",
+				osTypeToString(fileType), osTypeToString(creator), flags, locationV, locationH, folder,
+				Arrays.toString(extended));
+	}
+}
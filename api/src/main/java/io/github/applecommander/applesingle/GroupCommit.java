@@ -0,0 +1,300 @@
+package io.github.applecommander.applesingle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Durable writes for many files at once.  Each file is written to a temporary file beside its target;
+ * the temporary files are then committed as a group: all of them are synced (several at a time), renamed
+ * over their targets, and finally each parent directory is synced once so the renames survive a crash.
+ * A reader therefore sees either the old file or the complete new one, and the cost of a sync round trip
+ * is shared by the whole group rather than paid per file.
+ * <p>
+ * A group is committed when it reaches the batch size, when the oldest file in it has waited for the
+ * window, or on {@link #commit()} and {@link #close()}.  The future answered for each file completes once
+ * the file is durable.  Groups are committed one at a time, in the order they were formed, so when a target
+ * is written more than once the last write wins.  Use the {@link #builder()} to configure the batch size
+ * and window.
+ */
+public class GroupCommit implements Closeable {
+	/** Writes the content of one file. */
+	public interface Content {
+		void writeTo(FileChannel channel) throws IOException;
+	}
+
+	private static final Pattern TEMPORARY = Pattern.compile("\\.(.+)\\.[0-9a-f]{8}\\.tmp");
+
+	private final int batchSize;
+	private final long windowMillis;
+	private final ExecutorService syncPool;
+	private final ScheduledExecutorService timer;
+	/** Guards the current batch. */
+	private final Object lock = new Object();
+	/** Commits run one at a time, so that a later write to the same target always lands last. */
+	private final Object commitLock = new Object();
+	private List<Pending> batch = new ArrayList<>();
+	private ScheduledFuture<?> deadline;
+	private boolean closed;
+
+	private GroupCommit(Builder builder) {
+		this.batchSize = builder.batchSize;
+		this.windowMillis = builder.windowMillis;
+		this.syncPool = Executors.newFixedThreadPool(builder.parallelism, r -> daemon(r, "group-commit-sync"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "group-commit-timer"));
+	}
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Write a file to a temporary file beside the target, and add it to the current group.  Failure to
+	 * write is thrown here; failure to commit completes the answered future exceptionally.  The target is
+	 * only replaced when the group is committed.
+	 */
+	public CompletableFuture<Path> write(Path target, Content content) throws IOException {
+		Objects.requireNonNull(target, "Please supply a file");
+		Path temporary = temporary(target);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			content.writeTo(channel);
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(temporary);
+			throw ex;
+		}
+		Pending pending = new Pending(target, temporary);
+		boolean full;
+		synchronized (lock) {
+			if (closed) {
+				Files.deleteIfExists(temporary);
+				throw new IOException("GroupCommit is closed");
+			}
+			batch.add(pending);
+			full = batch.size() >= batchSize;
+			if (!full && deadline == null) {
+				deadline = timer.schedule(() -> commit(), windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		// The writer that fills a batch commits it, which also keeps writers from running far ahead
+		if (full) commit();
+		return pending.future;
+	}
+	/** Write the bytes as the content of a file; see {@link #write(Path, Content)}. */
+	public CompletableFuture<Path> write(Path target, byte[] data) throws IOException {
+		return write(target, channel -> {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		});
+	}
+	/** Save an AppleSingle, placing the entries according to the layout; see {@link #write(Path, Content)}. */
+	public CompletableFuture<Path> save(AppleSingle applesingle, Path target, Layout layout) throws IOException {
+		return write(target, channel -> AppleSingle.write(channel, applesingle.getEntries(), AppleSingle.VERSION_NUMBER2, layout));
+	}
+
+	/**
+	 * Commit the current group now, answering once it is durable (or has failed).  The group is taken
+	 * while holding the commit lock, so groups are committed in the order they were taken and a later
+	 * write to the same target always lands last.
+	 */
+	public void commit() {
+		synchronized (commitLock) {
+			List<Pending> current;
+			synchronized (lock) {
+				current = take();
+			}
+			commit(current);
+		}
+	}
+	/** Commit what remains and release the threads.  Nothing may be written afterwards. */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+		}
+		try {
+			commit();
+		} finally {
+			timer.shutdown();
+			syncPool.shutdown();
+		}
+	}
+
+	/** Take the current batch, leaving an empty one; the caller holds the lock. */
+	private List<Pending> take() {
+		List<Pending> current = batch;
+		batch = new ArrayList<>();
+		if (deadline != null) {
+			deadline.cancel(false);
+			deadline = null;
+		}
+		return current;
+	}
+
+	/** Commit a group; the caller holds the commit lock. */
+	private void commit(List<Pending> group) {
+		if (group.isEmpty()) return;
+		// Sync the file contents, several at a time; a file that fails is dropped from the group
+		List<CompletableFuture<Void>> syncs = new ArrayList<>();
+		for (Pending pending : group) {
+			syncs.add(CompletableFuture.runAsync(() -> sync(pending.temporary, false), syncPool)
+					.exceptionally(t -> pending.fail(t)));
+		}
+		syncs.forEach(CompletableFuture::join);
+
+		// Rename over the targets, then sync each directory once so the renames are durable
+		Map<Path,List<Pending>> directories = new LinkedHashMap<>();
+		for (Pending pending : group) {
+			if (pending.future.isDone()) continue;
+			try {
+				move(pending.temporary, pending.target);
+				directories.computeIfAbsent(directory(pending.target), d -> new ArrayList<>()).add(pending);
+			} catch (IOException | RuntimeException ex) {
+				pending.fail(ex);
+			}
+		}
+		List<CompletableFuture<Void>> directorySyncs = new ArrayList<>();
+		directories.forEach((directory, pendings) -> directorySyncs.add(
+				CompletableFuture.runAsync(() -> sync(directory, true), syncPool)
+					.handle((v, t) -> {
+						pendings.forEach(p -> p.done(t));
+						return null;
+					})));
+		directorySyncs.forEach(CompletableFuture::join);
+	}
+
+	/** Sync a file, or a directory where the platform allows it to be opened (it does not on Windows). */
+	private static void sync(Path path, boolean directory) {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(path, directory ? StandardOpenOption.READ : StandardOpenOption.WRITE);
+		} catch (IOException ex) {
+			if (directory) return;
+			throw new UncheckedIOException(ex);
+		}
+		try (FileChannel c = channel) {
+			c.force(true);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	private static Path directory(Path target) {
+		Path parent = target.toAbsolutePath().getParent();
+		return parent == null ? target.toAbsolutePath().getRoot() : parent;
+	}
+
+	/** A hidden file name beside the target, so the rename never crosses file systems. */
+	static Path temporary(Path target) {
+		return target.resolveSibling(String.format(".%s.%08x.tmp", target.getFileName(), ThreadLocalRandom.current().nextInt()));
+	}
+	/**
+	 * Answer the target a temporary file was written for, or null if the name is not that of a temporary
+	 * file.  A temporary file is left behind only if the process died before its group was committed.
+	 */
+	public static Path targetOf(Path path) {
+		Matcher matcher = TEMPORARY.matcher(path.getFileName().toString());
+		return matcher.matches() ? path.resolveSibling(matcher.group(1)) : null;
+	}
+	/** True if the name is that of a temporary file; see {@link #targetOf(Path)}. */
+	public static boolean isTemporary(Path path) {
+		return targetOf(path) != null;
+	}
+	/** Replace the target with the temporary file in one step where the file system can do so. */
+	static void move(Path temporary, Path target) throws IOException {
+		try {
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** A file written but not yet committed. */
+	private static class Pending {
+		final Path target;
+		final Path temporary;
+		final CompletableFuture<Path> future = new CompletableFuture<>();
+
+		Pending(Path target, Path temporary) {
+			this.target = target;
+			this.temporary = temporary;
+		}
+		Void fail(Throwable t) {
+			Throwable cause = unwrap(t);
+			try {
+				Files.deleteIfExists(temporary);
+			} catch (IOException ex) {
+				cause.addSuppressed(ex);
+			}
+			future.completeExceptionally(cause);
+			return null;
+		}
+		void done(Throwable t) {
+			if (t == null) future.complete(target);
+			else future.completeExceptionally(unwrap(t));
+		}
+		/** Answer the I/O failure itself rather than the wrappers it was passed through in. */
+		private static Throwable unwrap(Throwable t) {
+			while ((t instanceof CompletionException || t instanceof UncheckedIOException) && t.getCause() != null) {
+				t = t.getCause();
+			}
+			return t;
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+	public static class Builder {
+		private int batchSize = 64;
+		private long windowMillis = 100;
+		private int parallelism = 8;
+		private Builder() {
+			// Use GroupCommit.builder()
+		}
+		/** Commit once this many files are waiting. */
+		public Builder batchSize(int batchSize) {
+			if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+			this.batchSize = batchSize;
+			return this;
+		}
+		/** Commit once the oldest waiting file has waited this long. */
+		public Builder windowMillis(long windowMillis) {
+			if (windowMillis < 0) throw new IllegalArgumentException("Window must not be negative");
+			this.windowMillis = windowMillis;
+			return this;
+		}
+		/** The number of syncs issued at once. */
+		public Builder parallelism(int parallelism) {
+			if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+			this.parallelism = parallelism;
+			return this;
+		}
+		public GroupCommit build() {
+			return new GroupCommit(this);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.applecommander.applesingle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The placement of entry data when an AppleSingle file is written.
+ * <p>
+ * {@link #PACKED} writes the entries back to back, in the order given, directly after the descriptors;
+ * this is the smallest file.  {@link #aligned(int)} moves the small metadata entries to the front and
+ * pads so that the data and resource forks each start on a multiple of the alignment.  That makes
+ * the forks page aligned for readers that memory map them or use direct I/O.  Either way the result
+ * is a valid AppleSingle file, since readers locate entries through the descriptors.
+ */
+public final class Layout {
+	/** Entries are written back to back in the order given. */
+	public static final Layout PACKED = new Layout(1);
+	
+	private final int alignment;
+	
+	/** Metadata first, then each fork starting on a multiple of {@code alignment} bytes (typically 4096). */
+	public static Layout aligned(int alignment) {
+		if (alignment <= 0) {
+			throw new IllegalArgumentException("Alignment must be positive");
+		}
+		return alignment == 1 ? PACKED : new Layout(alignment);
+	}
+	
+	private Layout(int alignment) {
+		this.alignment = alignment;
+	}
+	
+	public int getAlignment() {
+		return alignment;
+	}
+	
+	/** Answer the entries in the order they are written; forks follow the metadata unless packed. */
+	public List<Entry> arrange(List<Entry> entries) {
+		Objects.requireNonNull(entries);
+		if (this == PACKED) return entries;
+		List<Entry> arranged = new ArrayList<>(entries.size());
+		List<Entry> forks = new ArrayList<>();
+		for (Entry entry : entries) {
+			(isFork(entry) ? forks : arranged).add(entry);
+		}
+		arranged.addAll(forks);
+		return arranged;
+	}
+	/** 
+	 * Answer the offset of each of the (arranged) entries; the first follows the header and descriptors.
+	 * The space between the end of one entry and the offset of the next is padding.
+	 */
+	public long[] offsets(List<Entry> arranged) {
+		long[] offsets = new long[arranged.size()];
+		long offset = 26 + Entry.BYTES * arranged.size();
+		for (int i = 0; i < offsets.length; i++) {
+			Entry entry = arranged.get(i);
+			if (isFork(entry) && entry.getLength() > 0) {
+				offset = (offset + alignment - 1) / alignment * alignment;
+			}
+			offsets[i] = offset;
+			offset += entry.getLength();
+		}
+		return offsets;
+	}
+	private static boolean isFork(Entry entry) {
+		return entry.getEntryId() == EntryType.DATA_FORK.entryId || entry.getEntryId() == EntryType.RESOURCE_FORK.entryId;
+	}
+	
+	@Override
+	public String toString() {
+		return this == PACKED ? "Layout[packed]" : String.format("Layout[aligned=%d]", alignment);
+	}
+}
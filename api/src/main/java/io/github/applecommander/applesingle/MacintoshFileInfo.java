@@ -0,0 +1,46 @@
+package io.github.applecommander.applesingle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A simple Macintosh File Info wrapper class.  Per the AppleSingle spec, bit 31 of the attributes
+ * indicates a locked file and bit 30 indicates a protected file.
+ */
+public class MacintoshFileInfo {
+	/** Number of bytes a Macintosh File Info takes per AppleSingle spec. */
+	public static final int BYTES = 4;
+	public static final int LOCKED = 0x80000000;
+	public static final int PROTECTED = 0x40000000;
+
+	private final int attributes;
+
+	public static MacintoshFileInfo fromEntry(Entry entry) {
+		return new MacintoshFileInfo(entry.getBuffer(BYTES).getInt());
+	}
+
+	public MacintoshFileInfo(int attributes) {
+		this.attributes = attributes;
+	}
+
+	public Entry toEntry() {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES).order(ByteOrder.BIG_ENDIAN);
+		buf.putInt(attributes);
+		return Entry.create(EntryType.MACINTOSH_FILE_INFO, buf.array());
+	}
+
+	public int getAttributes() {
+		return attributes;
+	}
+	public boolean isLocked() {
+		return (attributes & LOCKED) != 0;
+	}
+	public boolean isProtected() {
+		return (attributes & PROTECTED) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("attributes=%08X, locked=%b, protected=%b", attributes, isLocked(), isProtected());
+	}
+}
@@ -0,0 +1,38 @@
+package io.github.applecommander.applesingle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A simple MS-DOS File Info wrapper class.  The attributes are the standard MS-DOS
+ * attribute bits (read-only, hidden, system, archive, etc).
+ */
+public class MsdosFileInfo {
+	/** Number of bytes a MS-DOS File Info takes per AppleSingle spec. */
+	public static final int BYTES = 2;
+
+	private final int attributes;
+
+	public static MsdosFileInfo fromEntry(Entry entry) {
+		return new MsdosFileInfo(Short.toUnsignedInt(entry.getBuffer(BYTES).getShort()));
+	}
+
+	public MsdosFileInfo(int attributes) {
+		this.attributes = attributes;
+	}
+
+	public Entry toEntry() {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES).order(ByteOrder.BIG_ENDIAN);
+		buf.putShort((short)attributes);
+		return Entry.create(EntryType.MSDOS_FILE_INFO, buf.array());
+	}
+
+	public int getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("attributes=%04X", attributes);
+	}
+}
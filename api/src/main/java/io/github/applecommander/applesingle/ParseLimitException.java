@@ -0,0 +1,21 @@
+package io.github.applecommander.applesingle;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/** Thrown when an AppleSingle source exceeds the {@link ParseLimits} of its reader. */
+public class ParseLimitException extends IOException {
+	private static final long serialVersionUID = 1L;
+	
+	private final ParseLimits.Limit limit;
+	
+	public ParseLimitException(ParseLimits.Limit limit, String message) {
+		super(message);
+		this.limit = Objects.requireNonNull(limit);
+	}
+	
+	/** Which limit was exceeded. */
+	public ParseLimits.Limit getLimit() {
+		return limit;
+	}
+}
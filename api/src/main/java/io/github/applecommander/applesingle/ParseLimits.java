@@ -0,0 +1,162 @@
+package io.github.applecommander.applesingle;
+
+/**
+ * Resource limits applied when an AppleSingle file is parsed; see {@link AppleSingleReader.Builder#limits(ParseLimits)}.
+ * <p>
+ * Every field of an AppleSingle header comes from the file itself, so a small hostile file can claim
+ * thousands of entries or multi-gigabyte entries, or point many entries at the same bytes so that
+ * decoding them multiplies the work.  With limits in place, the descriptors are checked against the
+ * limits before any entry is created, and a violation is reported as a {@link ParseLimitException}.
+ * <p>
+ * Whatever the limits, every descriptor is checked against the real size of the source, and one that
+ * points past the end is reported as {@link Limit#SOURCE_SIZE}.  {@link #UNLIMITED} (the default) checks
+ * nothing else.  Use {@link #DEFAULT} or a {@link #builder()} for untrusted input.
+ */
+public final class ParseLimits {
+	/** Format limits only; see the class comment. */
+	public static final ParseLimits UNLIMITED = new ParseLimits(0xffff, Entry.MAX_LENGTH, Long.MAX_VALUE, Entry.MAX_LENGTH, false);
+	/** Conservative limits for untrusted input; the defaults of {@link #builder()}. */
+	public static final ParseLimits DEFAULT = builder().build();
+	
+	/** The limit that was exceeded; see {@link ParseLimitException#getLimit()}. */
+	public enum Limit {
+		/** The number of entries in the header. */
+		MAX_ENTRIES,
+		/** The length of any one entry. */
+		MAX_ENTRY_LENGTH,
+		/** The size of the source, and the total length of all entries. */
+		MAX_TOTAL_BYTES,
+		/** The length of an entry other than the data or resource fork. */
+		MAX_METADATA_LENGTH,
+		/** A descriptor points beyond the end of the source. */
+		SOURCE_SIZE
+	}
+	
+	private final int maxEntries;
+	private final long maxEntryLength;
+	private final long maxTotalBytes;
+	private final long maxMetadataLength;
+	private final boolean checkEntries;
+	
+	private ParseLimits(int maxEntries, long maxEntryLength, long maxTotalBytes, long maxMetadataLength, boolean checkEntries) {
+		this.maxEntries = maxEntries;
+		this.maxEntryLength = maxEntryLength;
+		this.maxTotalBytes = maxTotalBytes;
+		this.maxMetadataLength = maxMetadataLength;
+		this.checkEntries = checkEntries;
+	}
+	
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	public long getMaxEntryLength() {
+		return maxEntryLength;
+	}
+	public long getMaxTotalBytes() {
+		return maxTotalBytes;
+	}
+	public long getMaxMetadataLength() {
+		return maxMetadataLength;
+	}
+	
+	/** Check the size of a source before it is read or mapped. */
+	void checkSourceSize(long size) throws ParseLimitException {
+		if (size > maxTotalBytes) {
+			throw new ParseLimitException(Limit.MAX_TOTAL_BYTES, 
+					String.format("Source is %,d bytes; the limit is %,d", size, maxTotalBytes));
+		}
+	}
+	/** Check the number of entries, and that their descriptors fit in the source, before the table is allocated. */
+	void checkNumberOfEntries(int numberOfEntries, long sourceSize) throws ParseLimitException {
+		if (numberOfEntries > maxEntries) {
+			throw new ParseLimitException(Limit.MAX_ENTRIES, 
+					String.format("%,d entries; the limit is %,d", numberOfEntries, maxEntries));
+		}
+		long needed = 26L + (long)Entry.BYTES * numberOfEntries;
+		if (needed > sourceSize) {
+			throw new ParseLimitException(Limit.SOURCE_SIZE, 
+					String.format("%,d entry descriptors need %,d bytes but the source is %,d bytes", 
+							numberOfEntries, needed, sourceSize));
+		}
+	}
+	/** 
+	 * Check every descriptor against the source, and against the limits unless they are {@link #UNLIMITED},
+	 * before any {@code Entry} is created.
+	 */
+	void checkEntries(EntryTable table, long sourceSize) throws ParseLimitException {
+		long total = 0;
+		for (int i = 0; i < table.size(); i++) {
+			long offset = table.getOffset(i);
+			long length = table.getLength(i);
+			if (offset + length > sourceSize) {
+				throw new ParseLimitException(Limit.SOURCE_SIZE, String.format(
+						"Entry #%d (offset %,d, length %,d) extends past the end of the source (%,d bytes)", 
+						i, offset, length, sourceSize));
+			}
+			if (!checkEntries) continue;
+			if (length > maxEntryLength) {
+				throw new ParseLimitException(Limit.MAX_ENTRY_LENGTH, 
+						String.format("Entry #%d is %,d bytes; the limit is %,d", i, length, maxEntryLength));
+			}
+			int entryId = table.getEntryId(i);
+			boolean fork = entryId == EntryType.DATA_FORK.entryId || entryId == EntryType.RESOURCE_FORK.entryId;
+			if (!fork && length > maxMetadataLength) {
+				throw new ParseLimitException(Limit.MAX_METADATA_LENGTH, 
+						String.format("Entry #%d (id %d) is %,d bytes; the limit is %,d", i, entryId, length, maxMetadataLength));
+			}
+			total += length;
+			if (total > maxTotalBytes) {
+				throw new ParseLimitException(Limit.MAX_TOTAL_BYTES, 
+						String.format("Entries total more than %,d bytes", maxTotalBytes));
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("ParseLimits[maxEntries=%d, maxEntryLength=%d, maxTotalBytes=%d, maxMetadataLength=%d]",
+				maxEntries, maxEntryLength, maxTotalBytes, maxMetadataLength);
+	}
+	
+	/** 
+	 * Create a {@code Builder}.  The defaults allow 64 entries, entries of up to 64MB, 128MB in total,
+	 * and metadata entries of up to 64KB.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	public static class Builder {
+		private int maxEntries = 64;
+		private long maxEntryLength = 64L * 1024 * 1024;
+		private long maxTotalBytes = 128L * 1024 * 1024;
+		private long maxMetadataLength = 64 * 1024;
+		private Builder() {
+			// Use the factory method
+		}
+		public Builder maxEntries(int maxEntries) {
+			if (maxEntries < 0) throw new IllegalArgumentException("maxEntries cannot be negative");
+			this.maxEntries = maxEntries;
+			return this;
+		}
+		public Builder maxEntryLength(long maxEntryLength) {
+			if (maxEntryLength < 0) throw new IllegalArgumentException("maxEntryLength cannot be negative");
+			this.maxEntryLength = maxEntryLength;
+			return this;
+		}
+		/** The largest source that will be read, and the most that all entries together may claim. */
+		public Builder maxTotalBytes(long maxTotalBytes) {
+			if (maxTotalBytes < 0) throw new IllegalArgumentException("maxTotalBytes cannot be negative");
+			this.maxTotalBytes = maxTotalBytes;
+			return this;
+		}
+		/** The largest entry allowed other than the data and resource forks. */
+		public Builder maxMetadataLength(long maxMetadataLength) {
+			if (maxMetadataLength < 0) throw new IllegalArgumentException("maxMetadataLength cannot be negative");
+			this.maxMetadataLength = maxMetadataLength;
+			return this;
+		}
+		public ParseLimits build() {
+			return new ParseLimits(maxEntries, maxEntryLength, maxTotalBytes, maxMetadataLength, true);
+		}
+	}
+}
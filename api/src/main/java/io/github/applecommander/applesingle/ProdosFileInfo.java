@@ -3,28 +3,25 @@ package io.github.applecommander.applesingle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
-import io.github.applecommander.applesingle.AppleSingle.Builder;
-
 /**
  * A simple ProDOS File Info wrapper class.
  * <p>
  * Note 1: {@link #standardBIN()} can be used to generate sensible defaults.<br/>
- * Note 2: Fields are package-private to allow {@link Builder} to have direct access.<br/>
+ * Note 2: Instances are immutable; use the {@link AppleSingle.Builder} to change values.<br/>
  */
 public class ProdosFileInfo {
 	/** Number of bytes a File Dates Info takes per AppleSingle spec. */
 	public static final int BYTES = 8;
 
-	// Package scoped so AppleSingle Builder is able to set
-	int access;
-	int fileType;
-	int auxType;
+	private final int access;
+	private final int fileType;
+	private final int auxType;
 	
 	public static ProdosFileInfo standardBIN() {
 		return new ProdosFileInfo(0xc3, 0x06, 0x0000);
 	}
 	public static ProdosFileInfo fromEntry(Entry entry) {
-		ByteBuffer infoData = entry.getBuffer();
+		ByteBuffer infoData = entry.getBuffer(BYTES);
 		int access = infoData.getShort();
 		int fileType = infoData.getShort();
 		int auxType = infoData.getInt();
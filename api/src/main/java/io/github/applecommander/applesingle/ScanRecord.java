@@ -0,0 +1,71 @@
+package io.github.applecommander.applesingle;
+
+import java.nio.file.Path;
+
+/**
+ * A header-level summary of one AppleSingle file, as produced by {@link AppleSingle#scan(Path)}.
+ * Only the header, the descriptors and the small metadata entries were read to build it; fork sizes
+ * come from the descriptors.  Values for entries that are not present are null.
+ */
+public class ScanRecord {
+	private final Path path;
+	private final long size;
+	private final int version;
+	private final int numberOfEntries;
+	private final String realName;
+	private final ProdosFileInfo prodosFileInfo;
+	private final FileDatesInfo fileDatesInfo;
+	private final Long dataForkSize;
+	private final Long resourceForkSize;
+
+	ScanRecord(Path path, long size, int version, int numberOfEntries, String realName, ProdosFileInfo prodosFileInfo,
+			FileDatesInfo fileDatesInfo, Long dataForkSize, Long resourceForkSize) {
+		this.path = path;
+		this.size = size;
+		this.version = version;
+		this.numberOfEntries = numberOfEntries;
+		this.realName = realName;
+		this.prodosFileInfo = prodosFileInfo;
+		this.fileDatesInfo = fileDatesInfo;
+		this.dataForkSize = dataForkSize;
+		this.resourceForkSize = resourceForkSize;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+	/** The size of the file, in bytes. */
+	public long getSize() {
+		return size;
+	}
+	/** The version number, either {@link AppleSingle#VERSION_NUMBER1} or {@link AppleSingle#VERSION_NUMBER2}. */
+	public int getVersion() {
+		return version;
+	}
+	public int getNumberOfEntries() {
+		return numberOfEntries;
+	}
+	public String getRealName() {
+		return realName;
+	}
+	public ProdosFileInfo getProdosFileInfo() {
+		return prodosFileInfo;
+	}
+	public FileDatesInfo getFileDatesInfo() {
+		return fileDatesInfo;
+	}
+	public Long getDataForkSize() {
+		return dataForkSize;
+	}
+	public Long getResourceForkSize() {
+		return resourceForkSize;
+	}
+
+	@Override
+	public String toString() {
+		String prodos = prodosFileInfo == null ? null : String.format("$%02x/$%04x", 
+				prodosFileInfo.getFileType(), prodosFileInfo.getAuxType());
+		return String.format("ScanRecord[path=%s, realName=%s, prodos=%s, dataFork=%s, resourceFork=%s]",
+				path, realName, prodos, dataForkSize, resourceForkSize);
+	}
+}
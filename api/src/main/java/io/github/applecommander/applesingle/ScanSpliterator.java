@@ -0,0 +1,173 @@
+package io.github.applecommander.applesingle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Walks a directory tree and produces a {@link ScanRecord} for each AppleSingle file found.
+ * <p>
+ * Directories are only listed when they are reached, and any pending work (directories or files)
+ * can be split off, so a parallel stream spreads both the traversal and the header parsing across
+ * threads.  Each file is first checked with a bounded probe of the fixed header; files that are not
+ * AppleSingle, or whose descriptors point outside the file, are skipped.  Only the header, the
+ * descriptors, and the small metadata entries are read.  Symbolic links are not followed.
+ */
+final class ScanSpliterator implements Spliterator<ScanRecord> {
+	/** The probe: magic number, version, filler, and number of entries. */
+	static final int PROBE_BYTES = 26;
+	/** Metadata entries larger than this are ignored rather than read. */
+	static final int MAX_METADATA_BYTES = 4096;
+
+	private final Deque<Path> pending;
+	private ByteBuffer buffer = ByteBuffer.allocate(PROBE_BYTES + 32 * Entry.BYTES);
+	private final ByteBuffer metadata = ByteBuffer.allocate(MAX_METADATA_BYTES);
+	private final AppleSingleReader reader = AppleSingleReader.builder().build();
+
+	ScanSpliterator(Path root) {
+		this.pending = new ArrayDeque<>();
+		this.pending.add(root);
+	}
+	private ScanSpliterator(Deque<Path> pending) {
+		this.pending = pending;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ScanRecord> action) {
+		while (!pending.isEmpty()) {
+			Path path = pending.pollFirst();
+			BasicFileAttributes attributes = attributes(path);
+			if (attributes.isDirectory()) {
+				expand(path);
+			} else if (attributes.isRegularFile()) {
+				ScanRecord record = scan(path, attributes.size());
+				if (record != null) {
+					action.accept(record);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<ScanRecord> trySplit() {
+		// A lone directory is listed here so that its content can be shared out
+		if (pending.size() == 1 && attributes(pending.peekFirst()).isDirectory()) {
+			expand(pending.pollFirst());
+		}
+		int count = pending.size() / 2;
+		if (count == 0) return null;
+		Deque<Path> split = new ArrayDeque<>(count);
+		for (int i = 0; i < count; i++) {
+			split.add(pending.pollLast());
+		}
+		return new ScanSpliterator(split);
+	}
+
+	/** The size is unknown until the traversal is done. */
+	@Override
+	public long estimateSize() {
+		return pending.isEmpty() ? 0 : Long.MAX_VALUE;
+	}
+	@Override
+	public int characteristics() {
+		return NONNULL | DISTINCT;
+	}
+
+	private static BasicFileAttributes attributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	private void expand(Path directory) {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				pending.addLast(path);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/** Build the record for one file, answering null if it is not a usable AppleSingle file. */
+	ScanRecord scan(Path path, long size) {
+		if (size < PROBE_BYTES) return null;
+		try (FileChannel channel = FileChannel.open(path)) {
+			buffer.clear().limit(PROBE_BYTES);
+			if (!readFully(channel, 0) || !AppleSingle.test(buffer.array())) return null;
+
+			int numberOfEntries = Short.toUnsignedInt(buffer.getShort(24));
+			int length = PROBE_BYTES + numberOfEntries * Entry.BYTES;
+			if (length > size) return null;
+			if (buffer.capacity() < length) {
+				buffer = ByteBuffer.allocate(length).put(buffer.array(), 0, PROBE_BYTES);
+			}
+			buffer.limit(length).position(PROBE_BYTES);
+			if (!readFully(channel, PROBE_BYTES)) return null;
+			EntryTable table = EntryTable.read(reader.reset(buffer.flip()), size);
+
+			String realName = null;
+			ProdosFileInfo prodosFileInfo = null;
+			FileDatesInfo fileDatesInfo = null;
+			Long dataForkSize = null;
+			Long resourceForkSize = null;
+			for (int i = 0; i < table.size(); i++) {
+				long entryLength = table.getLength(i);
+
+				EntryType type = EntryType.lookup(table.getEntryId(i));
+				if (type == EntryType.DATA_FORK) {
+					dataForkSize = entryLength;
+				} else if (type == EntryType.RESOURCE_FORK) {
+					resourceForkSize = entryLength;
+				} else if (type == EntryType.REAL_NAME || type == EntryType.PRODOS_FILE_INFO
+						|| type == EntryType.FILE_DATES_INFO) {
+					if (entryLength > MAX_METADATA_BYTES) continue;
+					Object value = type.decode(readEntry(channel, table, i));
+					if (type == EntryType.REAL_NAME) realName = (String)value;
+					else if (type == EntryType.PRODOS_FILE_INFO) prodosFileInfo = (ProdosFileInfo)value;
+					else fileDatesInfo = (FileDatesInfo)value;
+				}
+			}
+			return new ScanRecord(path, size, table.getVersion(), table.size(), realName, prodosFileInfo,
+					fileDatesInfo, dataForkSize, resourceForkSize);
+		} catch (ParseLimitException ex) {
+			// A descriptor that points past the end of the file
+			return null;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} catch (RuntimeException ex) {
+			// A metadata entry that cannot be decoded is not a usable AppleSingle file
+			return null;
+		}
+	}
+	/** Read a metadata entry into the reused buffer; the decoded values do not keep a reference to it. */
+	private Entry readEntry(FileChannel channel, EntryTable table, int index) throws IOException {
+		long offset = table.getOffset(index);
+		metadata.clear().limit((int)table.getLength(index));
+		while (metadata.hasRemaining()) {
+			if (channel.read(metadata, offset + metadata.position()) < 0) break;
+		}
+		return Entry.create(table.getEntryId(index), table.getOffset(index), table.getLength(index), metadata.flip());
+	}
+	private boolean readFully(FileChannel channel, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) return false;
+			position += n;
+		}
+		return true;
+	}
+}
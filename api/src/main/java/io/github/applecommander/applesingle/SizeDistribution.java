@@ -0,0 +1,62 @@
+package io.github.applecommander.applesingle;
+
+import java.util.SplittableRandom;
+
+/**
+ * A distribution of sizes (in bytes) used by the {@link CorpusGenerator}.  The text form, used by
+ * {@link #parse(String)}, is one of:<br/>
+ * <code>fixed:SIZE</code><br/>
+ * <code>uniform:MIN:MAX</code> (MAX is inclusive)<br/>
+ * <code>lognormal:MEDIAN:SIGMA[:MAX]</code><br/>
+ */
+@FunctionalInterface
+public interface SizeDistribution {
+	/** Largest size generated unless a specific maximum is given. */
+	public static final int DEFAULT_MAX = 16 * 1024 * 1024;
+
+	/** Sample a size from this distribution; always 0 or greater. */
+	public int sample(SplittableRandom random);
+
+	public static SizeDistribution fixed(int size) {
+		if (size < 0) throw new IllegalArgumentException("Size must not be negative");
+		return r -> size;
+	}
+	public static SizeDistribution uniform(int min, int max) {
+		if (min < 0 || max < min) throw new IllegalArgumentException("Expecting 0 <= min <= max");
+		return r -> (int)r.nextLong(min, max + 1L);
+	}
+	public static SizeDistribution logNormal(int median, double sigma, int max) {
+		if (median < 1 || sigma < 0 || max < 0) throw new IllegalArgumentException("Expecting median >= 1, sigma >= 0, and max >= 0");
+		final double mu = Math.log(median);
+		return r -> {
+			// Box-Muller transform to get a standard normal value
+			double gaussian = Math.sqrt(-2.0 * Math.log(1.0 - r.nextDouble())) * Math.cos(2.0 * Math.PI * r.nextDouble());
+			return (int)Math.min(max, Math.round(Math.exp(mu + sigma * gaussian)));
+		};
+	}
+	
+	/** Parse the text form of a distribution. */
+	public static SizeDistribution parse(String text) {
+		String[] parts = text.trim().split(":");
+		try {
+			switch (parts[0].toLowerCase()) {
+			case "fixed":
+				if (parts.length == 2) return fixed(Integer.parseInt(parts[1]));
+				break;
+			case "uniform":
+				if (parts.length == 3) return uniform(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+				break;
+			case "lognormal":
+				if (parts.length == 3) return logNormal(Integer.parseInt(parts[1]), Double.parseDouble(parts[2]), DEFAULT_MAX);
+				if (parts.length == 4) return logNormal(Integer.parseInt(parts[1]), Double.parseDouble(parts[2]), Integer.parseInt(parts[3]));
+				break;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("Unable to parse size distribution '%s'", text), e);
+		}
+		throw new IllegalArgumentException(String.format("Unknown size distribution '%s'; expecting fixed:SIZE, "
+				+ "uniform:MIN:MAX, or lognormal:MEDIAN:SIGMA[:MAX]", text));
+	}
+}
@@ -23,9 +23,10 @@ public class Utilities {
 	/** Convert bytes in an Entry to a 7-bit ASCII string.  Emphasis on 7-bit in case Apple II high bit is along for the ride. */
 	public static String entryToAsciiString(Entry entry) {
 		byte[] data = entry.getData();
+		char[] chars = new char[data.length];
 		for (int i=0; i<data.length; i++) {
-			data[i] = (byte)(data[i] & 0x7f);
+			chars[i] = (char)(data[i] & 0x7f);
 		}
-		return new String(data);
+		return new String(chars);
 	}
 }
@@ -0,0 +1,132 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSinglePublisher.Item;
+import io.github.applecommander.applesingle.AppleSinglePublisher.Kind;
+import io.github.applecommander.applesingle.AppleSingleReaderTest.Ticker;
+
+public class AppleSinglePublisherTest {
+	@Test
+	public void testItemsFollowDemand() throws IOException {
+		byte[] dataFork = new byte[1000];
+		for (int i = 0; i < dataFork.length; i++) dataFork[i] = (byte)i;
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		AppleSingle.builder().realName("demand").dataFork(dataFork).resourceFork(new byte[10]).build().save(file);
+
+		Ticker entryReporterCalled = new Ticker();
+		AppleSingleReader reader = AppleSingleReader.builder(file.toByteArray())
+				.entryReporter(e -> entryReporterCalled.tick())
+				.build();
+		// Running on the calling thread makes delivery deterministic
+		AppleSinglePublisher publisher = AppleSinglePublisher.builder(reader)
+				.chunkSize(256)
+				.executor(Runnable::run)
+				.build();
+		Collector collector = new Collector();
+		publisher.subscribe(collector);
+		assertEquals(0, collector.items.size());
+
+		collector.subscription.request(2);
+		assertEquals(2, collector.items.size());
+		assertEquals(Kind.HEADER, collector.items.get(0).getKind());
+		assertEquals(5, collector.items.get(0).getNumberOfEntries());
+		assertEquals(Kind.ENTRY, collector.items.get(1).getKind());
+		// Entries are only read when they are requested
+		assertEquals(1, entryReporterCalled.count());
+
+		collector.subscription.request(Long.MAX_VALUE);
+		assertTrue(collector.completed);
+		assertNull(collector.error);
+		assertEquals(5, entryReporterCalled.count());
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int resourceBytes = 0;
+		for (Item item : collector.items) {
+			if (item.getKind() != Kind.CHUNK) continue;
+			ByteBuffer chunk = item.getData();
+			assertTrue(chunk.remaining() <= 256);
+			assertTrue(chunk.isReadOnly());
+			if (item.getEntryType() == EntryType.DATA_FORK) {
+				assertEquals(data.size(), item.getPosition());
+				byte[] bytes = new byte[chunk.remaining()];
+				chunk.get(bytes);
+				data.write(bytes);
+			} else {
+				resourceBytes += chunk.remaining();
+			}
+		}
+		assertArrayEquals(dataFork, data.toByteArray());
+		assertEquals(10, resourceBytes);
+		// 1 header + 5 entries + 4 data fork chunks + 1 resource fork chunk
+		assertEquals(11, collector.items.size());
+	}
+
+	@Test
+	public void testCancelAndErrors() throws IOException {
+		AppleSingleReader reader = AppleSingleReader.builder(AppleSingleReaderTest.SAMPLE_FILE).build();
+		AppleSinglePublisher publisher = AppleSinglePublisher.builder(reader).executor(Runnable::run).build();
+		Collector collector = new Collector();
+		publisher.subscribe(collector);
+		collector.subscription.request(1);
+		collector.subscription.cancel();
+		collector.subscription.request(10);
+		assertEquals(1, collector.items.size());
+		assertTrue(!collector.completed);
+
+		// Only one subscriber is allowed
+		Collector second = new Collector();
+		publisher.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+
+		// Non-positive requests are an error
+		Collector invalid = new Collector();
+		AppleSinglePublisher.builder(AppleSingleReader.builder(AppleSingleReaderTest.SAMPLE_FILE).build())
+				.executor(Runnable::run).build().subscribe(invalid);
+		invalid.subscription.request(0);
+		assertTrue(invalid.error instanceof IllegalArgumentException);
+
+		// Read failures are reported to the subscriber
+		Collector broken = new Collector();
+		AppleSinglePublisher.builder(AppleSingleReader.builder(new byte[30]).build())
+				.executor(Runnable::run).build().subscribe(broken);
+		broken.subscription.request(1);
+		assertTrue(broken.error instanceof IOException);
+	}
+
+	static class Collector implements Flow.Subscriber<Item> {
+		Flow.Subscription subscription;
+		List<Item> items = new ArrayList<>();
+		boolean completed;
+		Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+		@Override
+		public void onNext(Item item) {
+			items.add(item);
+		}
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+		}
+		@Override
+		public void onComplete() {
+			this.completed = true;
+		}
+	}
+}
@@ -3,7 +3,13 @@ package io.github.applecommander.applesingle;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
 public class AppleSingleReaderTest {
 	@Test(expected = NullPointerException.class)
@@ -41,6 +47,137 @@ public class AppleSingleReaderTest {
 		assertTrue(readAtCalled.count() >= 2);
 	}
 	
+	@Test
+	public void testReset() throws IOException {
+		Ticker entryReporterCalled = new Ticker();
+		AppleSingleReader r = AppleSingleReader.builder()
+				.entryReporter(e -> entryReporterCalled.tick())
+				.build();
+		for (int i = 0; i < 3; i++) {
+			AppleSingle as = AppleSingle.read(r.reset(SAMPLE_FILE));
+			assertEquals("Hello, World!\n", new String(as.getDataFork()));
+		}
+		assertEquals(3, entryReporterCalled.count());
+		
+		Path path = Files.createTempFile("sample", ".as");
+		try {
+			Files.write(path, SAMPLE_FILE);
+			try (FileChannel channel = FileChannel.open(path)) {
+				AppleSingle as = AppleSingle.read(r.reset(channel));
+				assertEquals("Hello, World!\n", new String(as.getDataFork()));
+			}
+		} finally {
+			Files.delete(path);
+		}
+		assertEquals(4, entryReporterCalled.count());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testRequiresSource() throws IOException {
+		AppleSingle.read(AppleSingleReader.builder().build());
+	}
+	
+	@Test
+	public void testParseLimits() throws IOException {
+		// 30 bytes claiming 65,535 entries is rejected before the table is allocated, even without limits
+		byte[] hostile = hostile(30, 0xffff);
+		assertLimit(ParseLimits.Limit.SOURCE_SIZE, AppleSingleReader.builder(hostile).build());
+		assertLimit(ParseLimits.Limit.MAX_ENTRIES, AppleSingleReader.builder(hostile).limits(ParseLimits.DEFAULT).build());
+
+		// A 4GB data fork in a tiny file is rejected, even without limits; tools can still inspect it
+		byte[] huge = hostile(100, 1, EntryType.DATA_FORK.entryId, 38, 0xfffffff0);
+		assertLimit(ParseLimits.Limit.SOURCE_SIZE, AppleSingleReader.builder(huge).build());
+		assertLimit(ParseLimits.Limit.SOURCE_SIZE, AppleSingleReader.builder(huge).limits(ParseLimits.DEFAULT).build());
+		EntryTable inspected = EntryTable.inspect(AppleSingleReader.builder(huge).build());
+		assertEquals(0xfffffff0L, inspected.getLength(0));
+		try {
+			inspected.getEntry(0);
+			fail("Expected an entry past the end of the source to be refused");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+
+		byte[] name = hostile(100_038, 1, EntryType.REAL_NAME.entryId, 38, 100_000);
+		assertLimit(ParseLimits.Limit.MAX_METADATA_LENGTH, AppleSingleReader.builder(name).limits(ParseLimits.DEFAULT).build());
+		ParseLimits small = ParseLimits.builder().maxEntryLength(1000).build();
+		assertLimit(ParseLimits.Limit.MAX_ENTRY_LENGTH, AppleSingleReader.builder(name).limits(small).build());
+
+		// Many entries pointing at the same bytes would multiply the work of decoding them
+		int[] descriptors = new int[60 * 3];
+		for (int i = 0; i < 60; i++) {
+			descriptors[i*3] = EntryType.DATA_FORK.entryId;
+			descriptors[i*3+1] = 26 + 60 * Entry.BYTES;
+			descriptors[i*3+2] = 1000;
+		}
+		byte[] repeated = hostile(26 + 60 * Entry.BYTES + 1000, 60, descriptors);
+		ParseLimits total = ParseLimits.builder().maxTotalBytes(20_000).build();
+		assertLimit(ParseLimits.Limit.MAX_TOTAL_BYTES, AppleSingleReader.builder(repeated).limits(total).build());
+
+		// Streams are not read past the limit
+		AppleSingleReader reader = AppleSingleReader.builder().limits(total).build();
+		try {
+			reader.reset(new ByteArrayInputStream(new byte[30_000]));
+			fail("Expected a ParseLimitException");
+		} catch (ParseLimitException ex) {
+			assertEquals(ParseLimits.Limit.MAX_TOTAL_BYTES, ex.getLimit());
+		}
+		AppleSingle as = AppleSingle.read(reader.reset(new ByteArrayInputStream(SAMPLE_FILE)));
+		assertEquals("Hello, World!\n", new String(as.getDataFork()));
+	}
+	@Test
+	public void testSpillToDisk() throws IOException {
+		Path directory = Files.createTempDirectory("spill");
+		try {
+			AppleSingleReader reader = AppleSingleReader.builder()
+					.spillThreshold(16)
+					.spillDirectory(directory)
+					.build();
+			AppleSingle as = AppleSingle.read(reader.reset(new ByteArrayInputStream(SAMPLE_FILE)));
+			assertEquals("Hello, World!\n", new String(as.getDataFork()));
+			assertEquals(SAMPLE_FILE.length, reader.size());
+			// The spill file is deleted once it is mapped; the data stays readable
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(0, files.count());
+			}
+
+			// Small streams stay in memory, and the limits still apply to spilled streams
+			AppleSingleReader limited = AppleSingleReader.builder()
+					.spillThreshold(16)
+					.spillDirectory(directory)
+					.limits(ParseLimits.builder().maxTotalBytes(40).build())
+					.build();
+			assertEquals(10, limited.reset(new ByteArrayInputStream(new byte[10])).size());
+			try {
+				limited.reset(new ByteArrayInputStream(SAMPLE_FILE));
+				fail("Expected a ParseLimitException");
+			} catch (ParseLimitException ex) {
+				assertEquals(ParseLimits.Limit.MAX_TOTAL_BYTES, ex.getLimit());
+			}
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(0, files.count());
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+	private static byte[] hostile(int size, int numberOfEntries, int... descriptors) {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(AppleSingle.MAGIC_NUMBER).putInt(AppleSingle.VERSION_NUMBER2).put(new byte[16]);
+		buffer.putShort((short)numberOfEntries);
+		for (int descriptor : descriptors) buffer.putInt(descriptor);
+		return buffer.array();
+	}
+	private static void assertLimit(ParseLimits.Limit limit, AppleSingleReader reader) {
+		try {
+			AppleSingle.asEntryTable(reader);
+			fail("Expected a ParseLimitException");
+		} catch (ParseLimitException ex) {
+			assertEquals(limit, ex.getLimit());
+		} catch (IOException ex) {
+			fail("Expected a ParseLimitException but got " + ex);
+		}
+	}
+	
 	/**
 	 * AppleSingle file with a simple Data Fork and nothing else.
 	 * <br/>
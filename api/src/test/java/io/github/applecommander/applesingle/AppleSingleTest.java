@@ -5,12 +5,30 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -95,4 +113,262 @@ public class AppleSingleTest {
 		// Could/should generate error due to truncated data, but this method should just give us a false.
 		assertFalse(AppleSingle.test(new byte[3]));
 	}
+	
+	@Test
+	public void testDecodeAdditionalEntries() throws IOException {
+		FinderInfo finderInfo = new FinderInfo(0x54455854, 0x74747874, 0x0100, 10, 20, 0, null);
+		ByteArrayOutputStream actualBytes = new ByteArrayOutputStream();
+		AppleSingle.write(actualBytes, Arrays.asList(
+				Entry.create(EntryType.COMMENT, "A COMMENT".getBytes()),
+				finderInfo.toEntry(),
+				new MacintoshFileInfo(MacintoshFileInfo.LOCKED).toEntry(),
+				new MsdosFileInfo(0x21).toEntry(),
+				new AfpFileInfo(0x1234).toEntry(),
+				Entry.create(EntryType.SHORT_NAME, "SHORT".getBytes()),
+				Entry.dataFork("data".getBytes())));
+		
+		AppleSingle as = AppleSingle.read(actualBytes.toByteArray());
+		assertEquals("A COMMENT", as.getComment());
+		assertEquals("SHORT", as.getShortName());
+		assertEquals("TEXT", FinderInfo.osTypeToString(as.getFinderInfo().getFileType()));
+		assertEquals("ttxt", FinderInfo.osTypeToString(as.getFinderInfo().getCreator()));
+		assertEquals(20, as.getFinderInfo().getLocationH());
+		assertTrue(as.getMacintoshFileInfo().isLocked());
+		assertEquals(0x21, as.getMsdosFileInfo().getAttributes());
+		assertEquals(0x1234, as.getAfpFileInfo().getAttributes());
+		assertNull(as.getDirectoryId());
+		assertNull(as.getRealName());
+		assertArrayEquals("data".getBytes(), as.getDataFork());
+		// Decoding is cached, so the same instance comes back
+		assertSame(as.getFinderInfo(), as.getValue(EntryType.FINDER_INFO));
+	}
+	
+	@Test
+	public void testDecodeTruncatedEntries() {
+		AppleSingle as = AppleSingle.of(Arrays.asList(
+				Entry.create(EntryType.FINDER_INFO, new byte[4]),
+				Entry.create(EntryType.MSDOS_FILE_INFO, new byte[1]),
+				Entry.create(EntryType.DIRECTORY_ID, new byte[0])));
+		try {
+			as.getFinderInfo();
+			fail("Expected a truncated Finder Info to be rejected");
+		} catch (IllegalArgumentException ex) {
+			assertEquals("Entry id 9 is truncated: expected 16 bytes but it is 4 bytes", ex.getMessage());
+		}
+		try {
+			as.getMsdosFileInfo();
+			fail("Expected a truncated MS-DOS File Info to be rejected");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Entry id 12 is truncated"));
+		}
+		try {
+			as.getDirectoryId();
+			fail("Expected a truncated Directory ID to be rejected");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Entry id 15 is truncated"));
+		}
+	}
+	
+	@Test
+	public void testRoundTripPreservesEntries() throws IOException {
+		ByteArrayOutputStream originalBytes = new ByteArrayOutputStream();
+		AppleSingle.write(originalBytes, Arrays.asList(
+				Entry.create(EntryType.COMMENT, "A COMMENT".getBytes()),
+				Entry.create(EntryType.ICON_BW, new byte[] { 1, 2, 3, 4 }),
+				new ProdosFileInfo(0xc3, 0x04, 0x0000).toEntry(),
+				Entry.dataFork("data".getBytes())));
+		AppleSingle original = AppleSingle.read(originalBytes.toByteArray());
+		
+		// Unchanged, only the missing "understood" entries get added (at the end)
+		List<Entry> entries = original.getEntries();
+		assertEquals(EntryType.COMMENT.entryId, entries.get(0).getEntryId());
+		assertEquals(EntryType.ICON_BW.entryId, entries.get(1).getEntryId());
+		assertEquals(EntryType.PRODOS_FILE_INFO.entryId, entries.get(2).getEntryId());
+		assertEquals(EntryType.DATA_FORK.entryId, entries.get(3).getEntryId());
+		assertEquals(EntryType.FILE_DATES_INFO.entryId, entries.get(4).getEntryId());
+		assertEquals(5, entries.size());
+		
+		// Edit only the file type; the ProDOS entry is re-encoded in place
+		AppleSingle edited = AppleSingle.builder(original).fileType(0x06).build();
+		ByteArrayOutputStream editedBytes = new ByteArrayOutputStream();
+		edited.save(editedBytes);
+		AppleSingle reread = AppleSingle.read(editedBytes.toByteArray());
+		assertEquals("A COMMENT", reread.getComment());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, reread.getIconBW());
+		assertArrayEquals("data".getBytes(), reread.getDataFork());
+		assertEquals(0x06, reread.getProdosFileInfo().getFileType());
+		assertEquals(EntryType.PRODOS_FILE_INFO.entryId, reread.getEntries().get(2).getEntryId());
+	}
+	
+	@Test
+	public void testOfSharesEntries() throws IOException {
+		List<Entry> entries = AppleSingle.asEntries(getClass().getResourceAsStream(AS_HELLO_BIN));
+		AppleSingle as = AppleSingle.of(entries);
+		assertEquals(0x06, as.getProdosFileInfo().getFileType());
+		Entry dataFork = entries.stream().filter(e -> e.getEntryId() == EntryType.DATA_FORK.entryId).findFirst().get();
+		assertEquals(dataFork.getBuffer(), as.getDataForkBuffer());
+		assertEquals(entries, as.getEntries().subList(0, entries.size()));
+	}
+	
+	@Test
+	public void testAlignedLayout() throws IOException {
+		byte[] dataFork = new byte[5000];
+		Arrays.fill(dataFork, (byte)0x42);
+		AppleSingle as = AppleSingle.builder().realName("aligned").dataFork(dataFork).resourceFork(new byte[10]).build();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		as.save(bytes, Layout.aligned(4096));
+
+		EntryTable table = AppleSingle.asEntryTable(bytes.toByteArray());
+		boolean forks = false;
+		for (int i = 0; i < table.size(); i++) {
+			int entryId = table.getEntryId(i);
+			boolean fork = entryId == EntryType.DATA_FORK.entryId || entryId == EntryType.RESOURCE_FORK.entryId;
+			// Metadata comes before any fork, and forks are aligned
+			assertTrue(fork || !forks);
+			if (fork) assertEquals(0, table.getOffset(i) % 4096);
+			forks |= fork;
+		}
+		AppleSingle copy = AppleSingle.read(bytes.toByteArray());
+		assertEquals("ALIGNED", copy.getRealName());
+		assertArrayEquals(dataFork, copy.getDataFork());
+		assertArrayEquals(new byte[10], copy.getResourceFork());
+		// Metadata, the resource fork at 4096, then the data fork at 8192
+		assertEquals(2 * 4096 + dataFork.length, bytes.size());
+
+		// The channel writer produces the same bytes
+		Path path = Files.createTempFile("aligned", ".as");
+		try {
+			as.save(path, Layout.aligned(4096));
+			assertArrayEquals(bytes.toByteArray(), Files.readAllBytes(path));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testSaveOverSource() throws IOException {
+		byte[] dataFork = "mapped from the file being replaced".getBytes();
+		Path path = Files.createTempFile("source", ".bin");
+		try {
+			Files.write(path, dataFork);
+			// The data fork is mapped from the target itself
+			AppleSingle.builder().realName("SOURCE").dataFork(path).build().save(path);
+			AppleSingle copy = AppleSingle.read(path);
+			assertEquals("SOURCE", copy.getRealName());
+			assertArrayEquals(dataFork, copy.getDataFork());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testSaveOverSourceKeepsSnapshot() throws Exception {
+		byte[] dataFork = "mapped from the file being replaced".getBytes();
+		Path path = Files.createTempFile("source", ".bin");
+		Path link = path.resolveSibling(path.getFileName() + ".link");
+		boolean posix = Files.getFileAttributeView(path, PosixFileAttributeView.class) != null;
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+		try {
+			Files.write(path, dataFork);
+			Files.createLink(link, path);
+			if (posix) Files.setPosixFilePermissions(path, permissions);
+			AppleSingle saved = AppleSingle.builder().realName("SOURCE").dataFork(path).build();
+			saved.save(path);
+			// Renamed over the source, so the saved AppleSingle (and the hard link) still see the old file
+			assertArrayEquals(dataFork, saved.getDataFork());
+			assertFalse(Files.isSameFile(path, link));
+			assertArrayEquals(dataFork, Files.readAllBytes(link));
+			assertArrayEquals(dataFork, AppleSingle.read(path).getDataFork());
+			if (posix) assertEquals(permissions, Files.getPosixFilePermissions(path));
+			
+			Files.delete(path);
+			Files.write(path, dataFork);
+			AppleSingle async = AppleSingle.builder().realName("ASYNC").dataFork(path).build();
+			async.saveAsync(path).get();
+			AppleSingle copy = AppleSingle.read(path);
+			assertEquals("ASYNC", copy.getRealName());
+			assertArrayEquals(dataFork, copy.getDataFork());
+			assertArrayEquals(dataFork, async.getDataFork());
+		} finally {
+			Files.deleteIfExists(link);
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testBuilderDoesNotModifyOriginal() throws IOException {
+		AppleSingle original = AppleSingle.read(getClass().getResourceAsStream(AS_HELLO_BIN));
+		AppleSingle derived = AppleSingle.builder(original)
+				.realName("derived")
+				.fileType(0x04)
+				.build();
+		
+		assertNull(original.getRealName());
+		assertEquals(0x06, original.getProdosFileInfo().getFileType());
+		assertEquals("DERIVED", derived.getRealName());
+		assertEquals(0x04, derived.getProdosFileInfo().getFileType());
+		assertEquals(0x0803, derived.getProdosFileInfo().getAuxType());
+		// The data fork is shared, not copied
+		assertEquals(original.getDataForkBuffer(), derived.getDataForkBuffer());
+		assertArrayEquals(original.getDataFork(), derived.getDataFork());
+		// Changing the returned array does not change the AppleSingle
+		byte[] dataFork = derived.getDataFork();
+		dataFork[0] = (byte)(dataFork[0] ^ 0xff);
+		assertArrayEquals(original.getDataFork(), derived.getDataFork());
+	}
+	
+	@Test
+	public void testReadAndSaveAsync() throws Exception {
+		byte[] sample = Utilities.toByteArray(getClass().getResourceAsStream(AS_HELLO_BIN));
+		Path source = Files.createTempFile("sample", ".as");
+		Path target = Files.createTempFile("saved", ".as");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Files.write(source, sample);
+			
+			// Many reads in flight at once
+			List<CompletableFuture<AppleSingle>> futures = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				futures.add(AppleSingle.readAsync(source, executor));
+			}
+			for (CompletableFuture<AppleSingle> future : futures) {
+				AppleSingle as = future.get(10, TimeUnit.SECONDS);
+				assertEquals(0x0803, as.getProdosFileInfo().getAuxType());
+				assertEquals(2912, as.getDataForkBuffer().remaining());
+			}
+			assertEquals(2, AppleSingle.asEntriesAsync(source, executor).get(10, TimeUnit.SECONDS).size());
+			
+			AppleSingle as = AppleSingle.builder(AppleSingle.read(source)).realName("async").build();
+			as.saveAsync(target, executor).get(10, TimeUnit.SECONDS);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			as.save(expected);
+			assertArrayEquals(expected.toByteArray(), Files.readAllBytes(target));
+		} finally {
+			executor.shutdown();
+			Files.delete(source);
+			Files.delete(target);
+		}
+	}
+	
+	@Test
+	public void testReadAsyncFailure() throws Exception {
+		Path missing = Paths.get("does-not-exist.as");
+		try {
+			AppleSingle.readAsync(missing).get(10, TimeUnit.SECONDS);
+			fail("Expected the read to fail");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof NoSuchFileException);
+		}
+		
+		Path path = Files.createTempFile("bad", ".as");
+		try {
+			Files.write(path, new byte[100]);
+			AppleSingle.readAsync(path).get(10, TimeUnit.SECONDS);
+			fail("Expected the read to fail");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		} finally {
+			Files.delete(path);
+		}
+	}
 }
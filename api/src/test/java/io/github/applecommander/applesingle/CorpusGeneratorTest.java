@@ -0,0 +1,108 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CorpusGeneratorTest {
+	private CorpusGenerator.Builder standard() {
+		return CorpusGenerator.builder()
+				.seed(42)
+				.dataForkSize(SizeDistribution.uniform(0, 2048))
+				.resourceForkFraction(0.5)
+				.extraEntriesFraction(0.5)
+				.version1Fraction(0.5)
+				.shuffleEntries(true);
+	}
+	
+	@Test
+	public void testReproducible() {
+		CorpusGenerator a = standard().build();
+		CorpusGenerator b = standard().build();
+		for (int i = 0; i < 50; i++) {
+			assertArrayEquals(a.generate(i), b.generate(i));
+		}
+	}
+	
+	@Test
+	public void testWellFormed() throws IOException {
+		CorpusGenerator generator = standard().build();
+		for (int i = 0; i < 200; i++) {
+			AppleSingle as = AppleSingle.read(generator.generate(i));
+			assertNotNull(as.getRealName());
+			assertNotNull(as.getDataFork());
+			assertTrue(as.getDataFork().length <= 2048);
+		}
+	}
+	
+	@Test
+	public void testMalformedFraction() {
+		CorpusGenerator generator = standard().malformedFraction(1.0).build();
+		for (int i = 0; i < 50; i++) {
+			assertTrue(generator.isMalformed(i));
+		}
+		assertFalse(standard().build().isMalformed(0));
+	}
+	
+	@Test
+	public void testGenerateFiles() throws IOException {
+		Path directory = Files.createTempDirectory("corpus");
+		try {
+			CorpusGenerator generator = standard().malformedFraction(0.25).parallelism(4).build();
+			CorpusGenerator.Summary summary = generator.generate(directory, 40);
+			assertEquals(40, summary.getFiles());
+			for (int i = 0; i < 40; i++) {
+				assertArrayEquals(generator.generate(i), Files.readAllBytes(directory.resolve(generator.fileName(i))));
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(directory)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+	
+	@Test
+	public void testGenerateFilesWithGroupCommit() throws IOException {
+		Path directory = Files.createTempDirectory("corpus");
+		try {
+			CorpusGenerator generator = standard().parallelism(4)
+					.groupCommit(GroupCommit.builder().batchSize(7).windowMillis(5))
+					.build();
+			generator.generate(directory, 40);
+			for (int i = 0; i < 40; i++) {
+				assertArrayEquals(generator.generate(i), Files.readAllBytes(directory.resolve(generator.fileName(i))));
+			}
+			// No temporary files are left behind
+			try (Stream<Path> paths = Files.list(directory)) {
+				assertEquals(40, paths.count());
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(directory)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+	
+	@Test
+	public void testSizeDistributionParse() {
+		assertEquals(100, SizeDistribution.parse("fixed:100").sample(null));
+		assertNotNull(SizeDistribution.parse("uniform:0:10"));
+		assertNotNull(SizeDistribution.parse("lognormal:4096:1.5"));
+		assertNotNull(SizeDistribution.parse("lognormal:4096:1.5:65536"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizeDistributionParseError() {
+		SizeDistribution.parse("normal:1:2");
+	}
+}
@@ -0,0 +1,65 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSingleReaderTest.Ticker;
+
+public class EntryTableTest {
+	@Test
+	public void testDescriptorsOnly() throws IOException {
+		Ticker entryReporterCalled = new Ticker();
+		AppleSingleReader reader = AppleSingleReader.builder(AppleSingleReaderTest.SAMPLE_FILE)
+				.entryReporter(e -> entryReporterCalled.tick())
+				.build();
+		EntryTable table = AppleSingle.asEntryTable(reader);
+		
+		assertEquals(AppleSingle.VERSION_NUMBER2, table.getVersion());
+		assertEquals(1, table.size());
+		assertEquals(EntryType.DATA_FORK.entryId, table.getEntryId(0));
+		assertEquals(0x26, table.getOffset(0));
+		assertEquals(14, table.getLength(0));
+		assertEquals(0, table.indexOf(EntryType.DATA_FORK.entryId));
+		assertEquals(-1, table.indexOf(EntryType.REAL_NAME.entryId));
+		// No entries are created until asked for
+		assertEquals(0, entryReporterCalled.count());
+		
+		List<Entry> entries = table.asList();
+		assertEquals("Hello, World!\n", new String(entries.get(0).getData()));
+		assertEquals(1, entryReporterCalled.count());
+	}
+	
+	@Test
+	public void testResetReaderInvalidatesTable() throws IOException {
+		AppleSingleReader reader = AppleSingleReader.builder(AppleSingleReaderTest.SAMPLE_FILE).build();
+		EntryTable table = AppleSingle.asEntryTable(reader);
+		ByteArrayOutputStream other = new ByteArrayOutputStream();
+		AppleSingle.builder().realName("OTHER").dataFork(new byte[14]).build().save(other);
+		reader.reset(other.toByteArray());
+		// The descriptors were read up front and stay valid
+		assertEquals(14, table.getLength(0));
+		try {
+			table.getBuffer(0);
+			fail("Expected the stale table to be rejected");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		try {
+			table.asList().get(0);
+			fail("Expected the stale table to be rejected");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testIndexChecked() throws IOException {
+		AppleSingle.asEntryTable(AppleSingleReaderTest.SAMPLE_FILE).getEntryId(1);
+	}
+}
@@ -0,0 +1,29 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class EntryTypeTest {
+	@Test
+	public void testFindAllTypes() {
+		for (EntryType et : EntryType.values()) {
+			assertEquals(et, EntryType.find(et.entryId));
+			assertEquals(et, EntryType.lookup(et.entryId));
+		}
+	}
+	
+	@Test
+	public void testLookup() {
+		assertNull(EntryType.lookup(0));
+		assertNull(EntryType.lookup(-1));
+		assertNull(EntryType.lookup(EntryType.MAX_ENTRY_ID + 1));
+		assertEquals("Comment", EntryType.findNameOrUnknown(Entry.create(EntryType.COMMENT, new byte[0])));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testFindUnknown() {
+		EntryType.find(16);
+	}
+}
@@ -0,0 +1,124 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupCommitTest {
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("commit");
+	}
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testBatchCommitsWhenFull() throws Exception {
+		try (GroupCommit committer = GroupCommit.builder().batchSize(3).windowMillis(60_000).build()) {
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				futures.add(committer.write(directory.resolve("file" + i), new byte[] { (byte)i }));
+			}
+			// Not yet committed: the targets do not exist, only the temporary files
+			assertFalse(futures.get(0).isDone());
+			assertFalse(Files.exists(directory.resolve("file0")));
+			futures.add(committer.write(directory.resolve("file2"), new byte[] { 2 }));
+			for (int i = 0; i < 3; i++) {
+				assertEquals(directory.resolve("file" + i), futures.get(i).get(0, TimeUnit.SECONDS));
+				assertArrayEquals(new byte[] { (byte)i }, Files.readAllBytes(directory.resolve("file" + i)));
+			}
+		}
+		assertEquals(3, count());
+	}
+
+	@Test
+	public void testWindowCommits() throws Exception {
+		try (GroupCommit committer = GroupCommit.builder().batchSize(100).windowMillis(10).build()) {
+			CompletableFuture<Path> future = committer.write(directory.resolve("file"), new byte[] { 1, 2, 3 });
+			future.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(directory.resolve("file")));
+		}
+	}
+
+	@Test
+	public void testCloseCommitsAndReplaces() throws Exception {
+		Path target = directory.resolve("file.as");
+		Files.write(target, new byte[1000]);
+		AppleSingle as = AppleSingle.builder().realName("REPLACED").dataFork(new byte[] { 1 }).build();
+		CompletableFuture<Path> future;
+		try (GroupCommit committer = GroupCommit.builder().windowMillis(60_000).build()) {
+			future = committer.save(as, target, Layout.PACKED);
+		}
+		assertTrue(future.isDone());
+		assertEquals("REPLACED", AppleSingle.read(target).getRealName());
+		assertEquals(1, count());
+	}
+
+	@Test
+	public void testLastWriteWins() throws Exception {
+		// The timer, the writer that fills a batch, and close all commit; none may overtake another
+		Path target = directory.resolve("file");
+		for (int round = 0; round < 20; round++) {
+			CompletableFuture<Path> last = null;
+			try (GroupCommit committer = GroupCommit.builder().batchSize(2).windowMillis(0).build()) {
+				for (int i = 0; i < 200; i++) {
+					last = committer.write(target, Integer.toString(i).getBytes());
+				}
+			}
+			assertTrue(last.isDone());
+			assertEquals("199", new String(Files.readAllBytes(target)));
+			assertEquals(1, count());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException {
+		GroupCommit committer = GroupCommit.builder().build();
+		committer.close();
+		try {
+			committer.write(directory.resolve("file"), new byte[1]);
+		} finally {
+			assertEquals(0, count());
+		}
+	}
+
+	@Test
+	public void testTemporaryNames() {
+		Path target = directory.resolve("HELLO.as");
+		for (int i = 0; i < 100; i++) {
+			assertEquals(target, GroupCommit.targetOf(GroupCommit.temporary(target)));
+		}
+		assertNull(GroupCommit.targetOf(target));
+		assertNull(GroupCommit.targetOf(directory.resolve(".HELLO.as.tmp")));
+		assertNull(GroupCommit.targetOf(directory.resolve(".HELLO.as.0123456g.tmp")));
+		assertTrue(GroupCommit.isTemporary(directory.resolve(".HELLO.as.0123abcd.tmp")));
+	}
+
+	private long count() throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.count();
+		}
+	}
+}
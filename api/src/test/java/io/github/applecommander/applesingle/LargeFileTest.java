@@ -0,0 +1,176 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exercises files larger than 2GB, where offsets and lengths no longer fit a signed {@code int}.
+ * The files are sparse, so they take almost no disk space, and the data is never copied to the heap.
+ */
+public class LargeFileTest {
+	/** 3GB; negative when read as a signed int. */
+	private static final long FORK_LENGTH = 3L << 30;
+	private static final int HEADER_LENGTH = 26 + 2 * Entry.BYTES;
+	private static final byte[] NAME = "LARGE".getBytes();
+
+	private Path file;
+
+	@Before
+	public void createSparseFile() throws IOException {
+		file = Files.createTempFile("large", ".as");
+		Assume.assumeTrue("Not enough space for a sparse 3GB file",
+				Files.getFileStore(file).getUsableSpace() > FORK_LENGTH + (1L << 30));
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(AppleSingle.MAGIC_NUMBER).putInt(AppleSingle.VERSION_NUMBER2).put(new byte[16]).putShort((short)2);
+		header.putInt(EntryType.DATA_FORK.entryId).putInt(HEADER_LENGTH).putInt((int)FORK_LENGTH);
+		// The real name comes after the data fork, so its offset is beyond 2GB
+		header.putInt(EntryType.REAL_NAME.entryId).putInt((int)(HEADER_LENGTH + FORK_LENGTH)).putInt(NAME.length);
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.write(header.array());
+			raf.seek(HEADER_LENGTH + FORK_LENGTH - 1);
+			raf.write(0x7f);
+			raf.write(NAME);
+		}
+	}
+	@After
+	public void deleteSparseFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testReadUnsignedOffsetsAndLengths() throws IOException {
+		EntryTable table = AppleSingle.asEntryTable(file);
+		assertEquals(FORK_LENGTH, table.getLength(0));
+		assertEquals(HEADER_LENGTH + FORK_LENGTH, table.getOffset(1));
+
+		AppleSingle as = AppleSingle.read(file);
+		assertEquals("LARGE", as.getRealName());
+		assertEquals(FORK_LENGTH, as.getDataForkLength());
+		assertEquals(-1, as.getResourceForkLength());
+		try {
+			as.getDataForkBuffer();
+			fail("A 3GB fork cannot be held in a single buffer");
+		} catch (IllegalStateException expected) {
+			// Expected
+		}
+
+		Entry dataFork = as.getEntries().stream().filter(e -> e.getEntryId() == EntryType.DATA_FORK.entryId)
+				.findFirst().get();
+		CountingChannel channel = new CountingChannel();
+		dataFork.writeData(channel);
+		assertEquals(FORK_LENGTH, channel.count);
+		assertEquals(0x7f, channel.last);
+	}
+
+	@Test
+	public void testSliceAcrossWindows() throws IOException {
+		try (FileChannel channel = FileChannel.open(file)) {
+			AppleSingleReader reader = AppleSingleReader.builder().build().reset(channel);
+			assertEquals(HEADER_LENGTH + FORK_LENGTH + NAME.length, reader.size());
+			ByteBuffer slice = reader.sliceAt(HEADER_LENGTH + FORK_LENGTH - 1, 1 + NAME.length, "Straddle");
+			assertEquals(0x7f, slice.get());
+			byte[] name = new byte[NAME.length];
+			slice.get(name);
+			assertArrayEquals(NAME, name);
+			assertEquals(0, reader.sliceAt(Integer.MAX_VALUE - 4, 8, "Straddle").getLong());
+			assertEquals(3, reader.segmentsAt(HEADER_LENGTH, FORK_LENGTH, "Data Fork").length);
+		}
+	}
+
+	@Test
+	public void testLongSliceFromPath() throws IOException {
+		// The reader opens (and keeps) the channel itself, so a slice too long for one window can be mapped
+		AppleSingleReader reader = AppleSingleReader.builder().build().reset(file);
+		try {
+			ByteBuffer slice = reader.sliceAt(HEADER_LENGTH, Integer.MAX_VALUE - 8, "Straddle");
+			assertEquals(Integer.MAX_VALUE - 8, slice.remaining());
+			assertEquals(0, slice.get(0));
+		} finally {
+			reader.close();
+		}
+		try {
+			reader.sliceAt(HEADER_LENGTH, 8, "Closed");
+			fail("A closed reader has no source");
+		} catch (IllegalStateException expected) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testWriteUnsignedOffsets() throws IOException {
+		AppleSingle as = AppleSingle.builder()
+				.realName("LARGE")
+				.dataFork(file)
+				.build();
+		List<Entry> entries = as.getEntries();
+		CountingChannel channel = new CountingChannel();
+		AppleSingle.write(channel, entries, AppleSingle.VERSION_NUMBER2);
+
+		long total = 26 + Entry.BYTES * entries.size();
+		for (Entry entry : entries) total += entry.getLength();
+		assertEquals(total, channel.count);
+
+		ByteBuffer header = ByteBuffer.wrap(channel.head);
+		long offset = 26 + Entry.BYTES * entries.size();
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			header.position(26 + i * Entry.BYTES);
+			assertEquals(entry.getEntryId(), header.getInt());
+			assertEquals(offset, Integer.toUnsignedLong(header.getInt()));
+			assertEquals(entry.getLength(), Integer.toUnsignedLong(header.getInt()));
+			offset += entry.getLength();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectBeyondFourGigabytes() throws IOException {
+		AppleSingle as = AppleSingle.read(file);
+		Entry dataFork = as.getEntries().stream().filter(e -> e.getEntryId() == EntryType.DATA_FORK.entryId)
+				.findFirst().get();
+		AppleSingle.write(new CountingChannel(), Arrays.asList(dataFork, dataFork), AppleSingle.VERSION_NUMBER2);
+	}
+
+	/** Counts what is written, keeping the first bytes; the data itself is not touched. */
+	static class CountingChannel implements WritableByteChannel {
+		byte[] head = new byte[256];
+		long count;
+		int last = -1;
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			if (n == 0) return 0;
+			if (count < head.length) {
+				src.duplicate().get(head, (int)count, (int)Math.min(n, head.length - count));
+			}
+			last = src.get(src.limit() - 1);
+			src.position(src.limit());
+			count += n;
+			return n;
+		}
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		@Override
+		public void close() {
+			// Nothing to close
+		}
+	}
+}
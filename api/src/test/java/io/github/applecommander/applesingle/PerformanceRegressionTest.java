@@ -0,0 +1,128 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Allocation and throughput regression gate.  Each operation is warmed up and then measured on a 
+ * fixed fixture; the allocation budgets (bytes per operation) and throughput floors (operations per
+ * second) live in {@code perf-baselines.properties}.  The budgets are set so that re-introducing a 
+ * copy of the file or a fork (or a per-byte allocation) fails the build.  Throughput depends on the
+ * machine and its load, so the floors are only checked when the {@value #CHECK_THROUGHPUT} system
+ * property is set, as the {@code perfTest} task does.
+ */
+public class PerformanceRegressionTest {
+	public static final String CHECK_THROUGHPUT = "applesingle.perf.checkThroughput";
+	private static final String BASELINES = "/perf-baselines.properties";
+	private static final String AS_HELLO_BIN = "/hello.applesingle.bin";
+	private static final int LARGE_FORK_SIZE = 1024 * 1024;
+	private static final int WARMUP = 2000;
+	private static final int ITERATIONS = 500;
+	
+	private static Properties baselines = new Properties();
+	private static com.sun.management.ThreadMXBean threadMXBean;
+	private static byte[] hello;
+	private static byte[] large;
+	private static AppleSingle largeAS;
+
+	@BeforeClass
+	public static void setup() throws IOException {
+		try (InputStream inputStream = PerformanceRegressionTest.class.getResourceAsStream(BASELINES)) {
+			baselines.load(inputStream);
+		}
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		}
+		hello = Utilities.toByteArray(PerformanceRegressionTest.class.getResourceAsStream(AS_HELLO_BIN));
+		
+		byte[] dataFork = new byte[LARGE_FORK_SIZE];
+		for (int i=0; i<dataFork.length; i++) dataFork[i] = (byte)i;
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		AppleSingle.builder()
+				.realName("large")
+				.dataFork(dataFork)
+				.resourceFork(new byte[4096])
+				.build()
+				.save(outputStream);
+		large = outputStream.toByteArray();
+		largeAS = AppleSingle.read(large);
+	}
+	
+	@Test
+	public void testReadSmall() {
+		check("read.small", () -> AppleSingle.read(hello).getProdosFileInfo());
+	}
+	@Test
+	public void testReadLarge() {
+		check("read.large", () -> AppleSingle.read(large).getRealName());
+	}
+	@Test
+	public void testEntryTableLarge() {
+		check("entryTable.large", () -> AppleSingle.asEntryTable(large).size());
+	}
+	@Test
+	public void testWriteLarge() {
+		check("write.large", () -> largeAS.save(NULL_OUTPUT_STREAM));
+	}
+	@Test
+	public void testTestSmall() {
+		check("test.small", () -> AppleSingle.test(hello));
+	}
+	@Test
+	public void testTestLarge() {
+		check("test.large", () -> AppleSingle.test(large));
+	}
+	
+	private void check(String name, Operation operation) {
+		assumeTrue("Thread allocation measurement is not supported", threadMXBean != null 
+				&& threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		try {
+			for (int i=0; i<WARMUP; i++) operation.run();
+			
+			long threadId = Thread.currentThread().threadId();
+			long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+			long startNanos = System.nanoTime();
+			for (int i=0; i<ITERATIONS; i++) operation.run();
+			long elapsedNanos = System.nanoTime() - startNanos;
+			long bytesPerOp = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / ITERATIONS;
+			double opsPerSecond = ITERATIONS * 1_000_000_000.0 / Math.max(1, elapsedNanos);
+			
+			long budget = Long.parseLong(baselines.getProperty(name + ".allocatedBytes"));
+			assertTrue(String.format("%s allocated %,d bytes/op; budget is %,d", name, bytesPerOp, budget), 
+					bytesPerOp <= budget);
+			if (!Boolean.getBoolean(CHECK_THROUGHPUT)) return;
+			long floor = Long.parseLong(baselines.getProperty(name + ".opsPerSecond"));
+			assertTrue(String.format("%s ran at %,.0f ops/s; floor is %,d", name, opsPerSecond, floor), 
+					opsPerSecond >= floor);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Operation {
+		public void run() throws IOException;
+	}
+	
+	private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+		@Override
+		public void write(int b) {
+			// Do nothing
+		}
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// Do nothing
+		}
+	};
+}
@@ -0,0 +1,86 @@
+package io.github.applecommander.applesingle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ScanSpliteratorTest {
+	@Test
+	public void testScanDirectoryTree() throws IOException {
+		Path root = Files.createTempDirectory("scan");
+		try {
+			CorpusGenerator generator = CorpusGenerator.builder().seed(39).resourceForkFraction(0.5).build();
+			generator.generate(root.resolve("a"), 30);
+			generator.generate(root.resolve("b").resolve("c"), 20);
+			Files.write(root.resolve("readme.txt"), "not an AppleSingle file".getBytes());
+			Files.write(root.resolve("b").resolve("tiny"), new byte[3]);
+			// Right magic and version, but the descriptors point past the end of the file
+			byte[] truncated = generator.generate(0);
+			Files.write(root.resolve("truncated.as"), Arrays.copyOf(truncated, truncated.length - 1));
+
+			assertEquals(50, AppleSingle.scan(root).count());
+			assertEquals(50, AppleSingle.scan(root).parallel().count());
+
+			Map<Path,ScanRecord> records = AppleSingle.scan(root).parallel()
+					.collect(Collectors.toMap(ScanRecord::getPath, Function.identity()));
+			for (int i = 0; i < 30; i++) {
+				Path path = root.resolve("a").resolve(generator.fileName(i));
+				ScanRecord record = records.get(path);
+				AppleSingle as = AppleSingle.read(path);
+				assertNotNull(record);
+				assertEquals(as.getRealName(), record.getRealName());
+				assertEquals(as.getProdosFileInfo().getFileType(), record.getProdosFileInfo().getFileType());
+				assertEquals(as.getProdosFileInfo().getAuxType(), record.getProdosFileInfo().getAuxType());
+				assertEquals(as.getFileDatesInfo().getCreation(), record.getFileDatesInfo().getCreation());
+				assertEquals(as.getDataForkBuffer().remaining(), record.getDataForkSize().longValue());
+				if (as.getResourceForkBuffer() == null) {
+					assertNull(record.getResourceForkSize());
+				} else {
+					assertEquals(as.getResourceForkBuffer().remaining(), record.getResourceForkSize().longValue());
+				}
+				assertEquals(Files.size(path), record.getSize());
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void testSplitsDirectories() throws IOException {
+		Path root = Files.createTempDirectory("scan");
+		try {
+			CorpusGenerator generator = CorpusGenerator.builder().build();
+			generator.generate(root, 8);
+			Spliterator<ScanRecord> spliterator = new ScanSpliterator(root);
+			// The root directory is listed so its files can be split off
+			Spliterator<ScanRecord> split = spliterator.trySplit();
+			assertNotNull(split);
+			long[] counts = new long[2];
+			spliterator.forEachRemaining(r -> counts[0]++);
+			split.forEachRemaining(r -> counts[1]++);
+			assertEquals(4, counts[0]);
+			assertEquals(4, counts[1]);
+			assertTrue(spliterator.trySplit() == null);
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Work waiting to be done, admitted against a budget of bytes in flight.  The largest waiting item that fits
+ * in what is left of the budget goes first: large files start early, which shortens the tail of a batch, and
+ * small files fill whatever capacity the large ones leave.  An item larger than the whole budget is admitted
+ * only when nothing else is in flight.
+ * <p>
+ * The bytes are the files' sizes on disk.  Files are mapped rather than read onto the heap, so the budget is
+ * an I/O concurrency limit, bounding how much file data is being read (and paged in) at once; it is not a
+ * bound on heap use.
+ * <p>
+ * A large item that does not fit is passed over by at most {@link #MAX_BYPASS} smaller ones; after that,
+ * nothing more is admitted until it fits, so a steady stream of small files cannot starve it.
+ */
+public class Admission<T> {
+	public static final int MAX_BYPASS = 1000;
+
+	private final long budget;
+	/** Waiting items by size; items of the same size go in the order they were added. */
+	private final TreeMap<Long,Deque<Ticket<T>>> waiting = new TreeMap<>();
+	private int size;
+	private long inFlight;
+	private int bypassed;
+
+	/** Admit items against the given budget of bytes; {@code Long.MAX_VALUE} only orders them. */
+	public Admission(long budget) {
+		if (budget < 1) throw new IllegalArgumentException("Budget must be at least 1 byte");
+		this.budget = budget;
+	}
+
+	public synchronized void add(T item, long bytes) {
+		waiting.computeIfAbsent(bytes, k -> new ArrayDeque<>()).add(new Ticket<>(item, bytes));
+		size += 1;
+		notifyAll();
+	}
+	/** The number of items waiting. */
+	public synchronized int size() {
+		return size;
+	}
+	/** The bytes admitted but not yet released. */
+	public synchronized long inFlight() {
+		return inFlight;
+	}
+
+	/** Admit the largest waiting item that fits, or answer null if none can be admitted now. */
+	public synchronized Ticket<T> poll() {
+		if (waiting.isEmpty()) return null;
+		Map.Entry<Long,Deque<Ticket<T>>> largest = waiting.lastEntry();
+		Map.Entry<Long,Deque<Ticket<T>>> chosen;
+		if (inFlight == 0 || largest.getKey() <= budget - inFlight) {
+			chosen = largest;
+			bypassed = 0;
+		} else if (bypassed >= MAX_BYPASS || budget - inFlight < 0) {
+			return null;
+		} else {
+			chosen = waiting.floorEntry(budget - inFlight);
+			if (chosen == null) return null;
+			bypassed += 1;
+		}
+		Ticket<T> ticket = chosen.getValue().poll();
+		if (chosen.getValue().isEmpty()) waiting.remove(chosen.getKey());
+		size -= 1;
+		inFlight += ticket.bytes;
+		return ticket;
+	}
+	/** Admit the next item as {@link #poll()} does, waiting for room if necessary; null once none are waiting. */
+	public synchronized Ticket<T> take() throws InterruptedException {
+		while (!waiting.isEmpty()) {
+			Ticket<T> ticket = poll();
+			if (ticket != null) return ticket;
+			wait();
+		}
+		return null;
+	}
+	/** Return an admitted item's bytes to the budget. */
+	public synchronized void release(Ticket<T> ticket) {
+		inFlight -= ticket.bytes;
+		notifyAll();
+	}
+
+	/** An admitted item and the bytes it holds against the budget. */
+	public static class Ticket<T> {
+		private final T item;
+		private final long bytes;
+
+		Ticket(T item, long bytes) {
+			this.item = item;
+			this.bytes = bytes;
+		}
+		public T getItem() {
+			return item;
+		}
+		public long getBytes() {
+			return bytes;
+		}
+	}
+}
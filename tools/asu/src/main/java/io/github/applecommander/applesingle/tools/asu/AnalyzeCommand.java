@@ -1,20 +1,28 @@
 package io.github.applecommander.applesingle.tools.asu;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.function.BiConsumer;
 
 import io.github.applecommander.applesingle.AppleSingle;
 import io.github.applecommander.applesingle.AppleSingleReader;
 import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
 import io.github.applecommander.applesingle.EntryType;
 import io.github.applecommander.applesingle.FileDatesInfo;
 import io.github.applecommander.applesingle.ProdosFileInfo;
@@ -43,34 +51,113 @@ public class AnalyzeCommand implements Callable<Void> {
 	private boolean verboseFlag;
 	private PrintStream verbose = new PrintStream(NullOutputStream.INSTANCE);
 	
+	@Option(names = "--offset", description = "Only dump bytes at or after this offset.", converter = LongTypeConverter.class)
+	private Long offset;
+	
+	@Option(names = "--length", description = "Only dump this many bytes.", converter = LongTypeConverter.class)
+	private Long length;
+	
+	@Option(names = "--entry", description = "Only dump the data of these entryIds.", split = ",")
+	private Integer[] entryIds;
+	
 	@Parameters(arity = "0..1", description = "File to process")
 	private Path path;
 	
+	/** The regions of the file to dump; null indicates everything is dumped. */
+	private List<IntRange> windows;
+	private HexDumper dumper;
+	
 	@Override
 	public Void call() throws IOException {
-		byte[] fileData = stdinFlag ? Utilities.toByteArray(System.in) : Files.readAllBytes(path);
-		if (verboseFlag) this.verbose = System.out;
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+		if (verboseFlag) this.verbose = out;
+		this.dumper = HexDumper.standard(out);
+		
+		IntRange window = null;
+		if (offset != null || length != null) {
+			long low = Optional.ofNullable(offset).orElse(0L);
+			long high = length == null ? Long.MAX_VALUE : low + length;
+			window = IntRange.of(low, high);
+			windows = Arrays.asList(window);
+		}
+		if (entryIds != null) {
+			windows = new ArrayList<>();		// Nothing is dumped until the entries are known
+		}
 		
-		List<IntRange> used = new ArrayList<>();
-		HexDumper dumper = HexDumper.standard();
-		AppleSingleReader reader = AppleSingleReader.builder(fileData)
-				.readAtReporter((start,chunk,desc) -> used.add(IntRange.of(start, start + chunk.length)))
-				.readAtReporter((start,chunk,desc) -> dumper.dump(start, chunk, desc))
+		AppleSingleReader.Builder builder = AppleSingleReader.builder()
+				.sliceReporter(this::dump)
 				.versionReporter(this::reportVersion)
 				.numberOfEntriesReporter(this::reportNumberOfEntries)
-				.entryReporter(this::reportEntry)
-				.build();
-		AppleSingle.asEntries(reader);
-		
-		List<IntRange> ranges = IntRange.normalize(used);
-		if (ranges.size() == 1 && ranges.get(0).getLow() == 0 && ranges.get(0).getHigh() == fileData.length) {
-			verbose.printf("The entirety of the file was used.\n");
-		} else {
-			verbose.printf("Parts of the file were skipped!\n  - Expected: %s\n  - Actual:   %s\n", 
-					Arrays.asList(IntRange.of(0,fileData.length)), ranges);
+				.entryReporter(this::reportEntry);
+		// Files (and large stdin, once spilled) are memory mapped so that they are dumped without being read into the heap
+		try (FileChannel channel = stdinFlag ? null : FileChannel.open(path);
+				AppleSingleReader reader = channel != null ? builder.limits(Main.limits()).build().reset(channel) 
+						: Main.stdin(builder)) {
+			long fileLength = reader.size();
+			
+			// Inspected rather than read, so that descriptors beyond the end of the file are reported
+			EntryTable table = EntryTable.inspect(reader);
+			if (entryIds != null) {
+				Set<Integer> selected = new HashSet<>(Arrays.asList(entryIds));
+				for (int i = 0; i < table.size(); i++) {
+					if (!selected.contains(table.getEntryId(i))) continue;
+					IntRange range = IntRange.of(table.getOffset(i), table.getOffset(i) + table.getLength(i));
+					if (window != null) {
+						long low = Math.max(range.getLow(), window.getLow());
+						long high = Math.min(range.getHigh(), window.getHigh());
+						if (low > high) continue;
+						range = IntRange.of(low, high);
+					}
+					windows.add(range);
+				}
+			}
+			// Coverage is computed from the descriptors alone, so no entry data is needed for it
+			Coverage coverage = Coverage.analyze(table, fileLength);
+			for (int i = 0; i < table.size(); i++) {
+				if (coverage.isOutOfBounds(i)) {
+					verbose.printf(" .. Entry: entryId=%d, offset=%d, length=%d is beyond the end of the file!\n", 
+							table.getEntryId(i), table.getOffset(i), table.getLength(i));
+					continue;
+				}
+				table.getEntry(i);		// Reported to the reader's entry reporter
+			}
+			reportCoverage(coverage);
+		} finally {
+			out.flush();
 		}
 		return null;
 	}
+	
+	public void reportCoverage(Coverage coverage) {
+		if (coverage.isClean()) {
+			verbose.printf("The entirety of the file was used.\n");
+			return;
+		}
+		verbose.printf("Parts of the file were not used exactly once (file length = %d)!\n", coverage.getFileLength());
+		coverage.getOverlaps().forEach(pair -> verbose.printf("  - Overlap: %s and %s\n", pair[0], pair[1]));
+		coverage.getOutOfBounds().forEach(r -> verbose.printf("  - Out of bounds: %s\n", r));
+		coverage.getGaps().forEach(r -> verbose.printf("  - %s\n", r));
+		Optional.ofNullable(coverage.getTrailing())
+		        .ifPresent(r -> verbose.printf("  - %s\n", r));
+	}
+	
+	/** Dump the parts of a slice that fall within the selected windows. */
+	private void dump(long start, ByteBuffer slice, String description) {
+		if (windows == null) {
+			dumper.dump(start, slice, description);
+			return;
+		}
+		long end = start + slice.remaining();
+		for (IntRange window : windows) {
+			long low = Math.max(start, window.getLow());
+			long high = Math.min(end, window.getHigh());
+			if (low < high || (start == end && low == high)) {
+				ByteBuffer part = slice.duplicate();
+				part.limit((int)(high - start)).position((int)(low - start));
+				dumper.dump(low, part, description);
+			}
+		}
+	}
 
 	public void reportVersion(int version) {
 		verbose.printf(" .. %s\n", VERSION_TEXT.getOrDefault(version, "Unrecognized version!"));
@@ -82,8 +169,13 @@ public class AnalyzeCommand implements Callable<Void> {
 		String entryName = EntryType.findNameOrUnknown(entry);
 		verbose.printf(" .. Entry: entryId=%d (%s), offset=%d, length=%d\n", entry.getEntryId(), 
 				entryName, entry.getOffset(), entry.getLength());
-		REPORTERS.getOrDefault(entry.getEntryId(), this::reportDefaultEntry)
-		         .accept(entry, entryName);
+		try {
+			REPORTERS.getOrDefault(entry.getEntryId(), this::reportDefaultEntry)
+			         .accept(entry, entryName);
+		} catch (IllegalArgumentException ex) {
+			// A fixed-size entry that is too short to decode; keep going, as this is the tool for damaged files
+			verbose.printf(" .. %s: truncated (%d bytes)\n", entryName, entry.getLength());
+		}
 	}
 	private void reportDefaultEntry(Entry entry, String entryName) {
 		verbose.printf(" .. No further details for this entry type (%s).\n", entryName);
@@ -91,6 +183,9 @@ public class AnalyzeCommand implements Callable<Void> {
 	private void reportStringEntry(Entry entry, String entryName) {
 		verbose.printf(" .. %s: '%s'\n", entryName, Utilities.entryToAsciiString(entry));
 	}
+	private void reportDecodedEntry(Entry entry, String entryName) {
+		verbose.printf(" .. %s: %s\n", entryName, EntryType.find(entry.getEntryId()).decode(entry));
+	}
 	private void reportFileDatesInfoEntry(Entry entry, String entryName) {
 		FileDatesInfo info = FileDatesInfo.fromEntry(entry);
 		verbose.printf(" .. %s -\n", entryName);
@@ -121,5 +216,10 @@ public class AnalyzeCommand implements Callable<Void> {
 		REPORTERS.put(EntryType.SHORT_NAME.entryId, this::reportStringEntry);
 		REPORTERS.put(EntryType.FILE_DATES_INFO.entryId, this::reportFileDatesInfoEntry);
 		REPORTERS.put(EntryType.PRODOS_FILE_INFO.entryId, this::reportProdosFileInfoEntry);
+		REPORTERS.put(EntryType.FINDER_INFO.entryId, this::reportDecodedEntry);
+		REPORTERS.put(EntryType.MACINTOSH_FILE_INFO.entryId, this::reportDecodedEntry);
+		REPORTERS.put(EntryType.MSDOS_FILE_INFO.entryId, this::reportDecodedEntry);
+		REPORTERS.put(EntryType.AFP_FILE_INFO.entryId, this::reportDecodedEntry);
+		REPORTERS.put(EntryType.DIRECTORY_ID.entryId, this::reportDecodedEntry);
 	}
 }
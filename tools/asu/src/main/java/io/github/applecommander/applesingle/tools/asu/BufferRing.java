@@ -0,0 +1,207 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed set of buffers handed from a producer thread to a consumer thread and back again.
+ * The producer blocks when every buffer is in flight, so memory use is bounded and a slow
+ * consumer throttles the producer.  {@link #close()} (or {@link #fail(Throwable)}) marks the end.
+ */
+final class BufferRing {
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> full;
+	private volatile Throwable failure;
+	private boolean ended;
+
+	BufferRing(int count, int size) {
+		this.free = new ArrayBlockingQueue<>(count);
+		this.full = new ArrayBlockingQueue<>(count + 1);
+		for (int i = 0; i < count; i++) {
+			free.add(ByteBuffer.allocate(size));
+		}
+	}
+
+	/** Producer: take an empty buffer, waiting for one to be released if necessary. */
+	ByteBuffer acquire() throws InterruptedIOException {
+		try {
+			return free.take().clear();
+		} catch (InterruptedException ex) {
+			throw interrupted(ex);
+		}
+	}
+	/** Producer: pass a filled (flipped) buffer to the consumer. */
+	void publish(ByteBuffer buffer) throws InterruptedIOException {
+		try {
+			full.put(buffer);
+		} catch (InterruptedException ex) {
+			throw interrupted(ex);
+		}
+	}
+	/** Producer: no more buffers will be published. */
+	void close() throws InterruptedIOException {
+		publish(END);
+	}
+	/** Producer: no more buffers will be published because of the given failure. */
+	void fail(Throwable throwable) {
+		failure = throwable;
+		full.offer(END);
+	}
+
+	/** Consumer: answer the next filled buffer, or null at the end. */
+	ByteBuffer next() throws IOException {
+		if (ended) return null;
+		try {
+			ByteBuffer buffer = full.take();
+			if (buffer != END) return buffer;
+		} catch (InterruptedException ex) {
+			throw interrupted(ex);
+		}
+		ended = true;
+		if (failure instanceof IOException) throw (IOException)failure;
+		if (failure != null) throw new IOException(failure);
+		return null;
+	}
+	/** Consumer: hand a buffer back to the producer. */
+	void release(ByteBuffer buffer) {
+		free.offer(buffer);
+	}
+
+	private static InterruptedIOException interrupted(InterruptedException ex) {
+		Thread.currentThread().interrupt();
+		InterruptedIOException ioe = new InterruptedIOException();
+		ioe.initCause(ex);
+		return ioe;
+	}
+
+	/** Fill the ring from a stream on the current thread until the stream ends. */
+	void fill(InputStream inputStream) {
+		try {
+			while (true) {
+				ByteBuffer buffer = acquire();
+				int n = inputStream.read(buffer.array(), 0, buffer.capacity());
+				if (n < 0) {
+					release(buffer);
+					close();
+					return;
+				}
+				publish(buffer.limit(n));
+			}
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+	/**
+	 * Drain the ring to a stream on the current thread until the ring is closed.  After a write fails,
+	 * buffers are still drained (and discarded) so that the producer never blocks; the failure is rethrown.
+	 */
+	void drain(OutputStream outputStream) throws IOException {
+		IOException error = null;
+		for (ByteBuffer buffer = next(); buffer != null; buffer = next()) {
+			if (error == null) {
+				try {
+					outputStream.write(buffer.array(), 0, buffer.limit());
+				} catch (IOException ex) {
+					error = ex;
+				}
+			}
+			release(buffer);
+		}
+		if (error != null) throw error;
+		outputStream.flush();
+	}
+
+	/** The consumer side as an {@code InputStream}, which also exposes the buffers themselves. */
+	static class Input extends InputStream {
+		private final BufferRing ring;
+		private ByteBuffer current;
+
+		Input(BufferRing ring) {
+			this.ring = ring;
+		}
+		/** The current buffer with bytes remaining, fetching the next one if needed; null at the end. */
+		ByteBuffer chunk() throws IOException {
+			while (current == null || !current.hasRemaining()) {
+				if (current != null) ring.release(current);
+				current = ring.next();
+				if (current == null) return null;
+			}
+			return current;
+		}
+		@Override
+		public int read() throws IOException {
+			ByteBuffer chunk = chunk();
+			return chunk == null ? -1 : chunk.get() & 0xff;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			ByteBuffer chunk = chunk();
+			if (chunk == null) return -1;
+			int n = Math.min(len, chunk.remaining());
+			chunk.get(b, off, n);
+			return n;
+		}
+	}
+
+	/** The producer side as an {@code OutputStream}; {@link #flush()} publishes a partly filled buffer. */
+	static class Output extends OutputStream {
+		private final BufferRing ring;
+		private ByteBuffer current;
+
+		Output(BufferRing ring) {
+			this.ring = ring;
+		}
+		private ByteBuffer buffer() throws IOException {
+			if (current == null) current = ring.acquire();
+			return current;
+		}
+		@Override
+		public void write(int b) throws IOException {
+			buffer().put((byte)b);
+			if (!current.hasRemaining()) flush();
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, buffer().remaining());
+				current.put(b, off, n);
+				off += n;
+				len -= n;
+				if (!current.hasRemaining()) flush();
+			}
+		}
+		/** Copy {@code len} bytes from the source buffer, advancing its position. */
+		void write(ByteBuffer src, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, buffer().remaining());
+				System.arraycopy(src.array(), src.arrayOffset() + src.position(), current.array(), current.position(), n);
+				src.position(src.position() + n);
+				current.position(current.position() + n);
+				len -= n;
+				if (!current.hasRemaining()) flush();
+			}
+		}
+		@Override
+		public void flush() throws IOException {
+			if (current != null && current.position() > 0) {
+				ring.publish(current.flip());
+				current = null;
+			}
+		}
+		@Override
+		public void close() throws IOException {
+			flush();
+			if (current != null) ring.release(current);
+			current = null;
+			ring.close();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import picocli.CommandLine.ITypeConverter;
+
+/** Add support for byte counts like "512m" and "2g" (powers of 1024) as well as plain numbers. */
+public class ByteSizeConverter implements ITypeConverter<Long> {
+	@Override
+	public Long convert(String value) {
+		if (value == null) return null;
+		String text = value.trim().toLowerCase();
+		int shift = 0;
+		switch (text.isEmpty() ? ' ' : text.charAt(text.length() - 1)) {
+		case 'k': shift = 10; break;
+		case 'm': shift = 20; break;
+		case 'g': shift = 30; break;
+		case 't': shift = 40; break;
+		default:  break;
+		}
+		try {
+			long number = Long.parseLong(shift == 0 ? text : text.substring(0, text.length() - 1));
+			if (number < 1 || number > Long.MAX_VALUE >> shift) throw new NumberFormatException();
+			return number << shift;
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException(String.format("Unable to parse size '%s'; expecting bytes like 1048576 or 512m", value));
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
+import io.github.applecommander.applesingle.EntryType;
+
+/**
+ * Coverage analysis of an AppleSingle file based only on its descriptors (no entry data is read).
+ * Reports overlapping regions, gaps, descriptors that point past the end of the file, and trailing
+ * garbage after the last region.  Runs in O(n log n) for n entries (plus the number of overlaps).
+ */
+public class Coverage {
+	/** Size of the fixed AppleSingle header (magic, version, filler, and number of entries). */
+	public static final int HEADER_BYTES = 26;
+	
+	private final long fileLength;
+	private final List<Region> regions = new ArrayList<>();
+	private final List<Region[]> overlaps = new ArrayList<>();
+	private final List<Region> outOfBounds = new ArrayList<>();
+	private final BitSet outOfBoundsEntries = new BitSet();
+	private final List<Region> gaps = new ArrayList<>();
+	private Region trailing;
+	
+	public static Coverage analyze(EntryTable table, long fileLength) {
+		Coverage coverage = new Coverage(fileLength);
+		coverage.add(0, HEADER_BYTES, "Header", -1);
+		coverage.add(HEADER_BYTES, HEADER_BYTES + (long)Entry.BYTES * table.size(), "Entry descriptors", -1);
+		for (int i = 0; i < table.size(); i++) {
+			long offset = table.getOffset(i);
+			long length = table.getLength(i);
+			EntryType type = EntryType.lookup(table.getEntryId(i));
+			String name = String.format("Entry #%d (%s)", i, type == null ? "Unknown" : type.name);
+			coverage.add(offset, offset + length, name, i);
+		}
+		coverage.analyze();
+		return coverage;
+	}
+	
+	private Coverage(long fileLength) {
+		this.fileLength = fileLength;
+	}
+	
+	private void add(long low, long high, String name, int entryIndex) {
+		regions.add(new Region(regions.size(), low, high, name, entryIndex));
+	}
+	
+	private void analyze() {
+		for (Region region : regions) {
+			if (region.high > fileLength) {
+				outOfBounds.add(region);
+				if (region.entryIndex >= 0) outOfBoundsEntries.set(region.entryIndex);
+			}
+		}
+		
+		IntervalTree<Region> tree = IntervalTree.of(regions, Region::getLow, Region::getHigh);
+		for (Region region : regions) {
+			// Only report each pair once (the region listed first is reported as 'a')
+			tree.query(region.low, region.high, other -> {
+				if (other.ordinal > region.ordinal) overlaps.add(new Region[] { region, other });
+			});
+		}
+		
+		long covered = 0;
+		for (int i = 0; i < tree.size(); i++) {
+			Region region = tree.get(i);
+			if (region.low > covered && covered < fileLength) {
+				gaps.add(new Region(-1, covered, Math.min(region.low, fileLength), "Unused", -1));
+			}
+			covered = Math.max(covered, region.high);
+		}
+		if (covered < fileLength) {
+			trailing = new Region(-1, covered, fileLength, "Trailing garbage", -1);
+		}
+	}
+	
+	/** True when every byte of the file is used exactly once and nothing is out of bounds. */
+	public boolean isClean() {
+		return overlaps.isEmpty() && outOfBounds.isEmpty() && gaps.isEmpty() && trailing == null;
+	}
+	public long getFileLength() {
+		return fileLength;
+	}
+	public List<Region> getRegions() {
+		return Collections.unmodifiableList(regions);
+	}
+	/** Pairs of overlapping regions, in descriptor order. */
+	public List<Region[]> getOverlaps() {
+		return Collections.unmodifiableList(overlaps);
+	}
+	/** Regions that extend beyond the end of the file. */
+	public List<Region> getOutOfBounds() {
+		return Collections.unmodifiableList(outOfBounds);
+	}
+	/** Indicates if the entry at the given table index extends beyond the end of the file. */
+	public boolean isOutOfBounds(int entryIndex) {
+		return outOfBoundsEntries.get(entryIndex);
+	}
+	/** Unused areas between regions. */
+	public List<Region> getGaps() {
+		return Collections.unmodifiableList(gaps);
+	}
+	/** Unused area after the last region; null if there is none. */
+	public Region getTrailing() {
+		return trailing;
+	}
+	
+	/** A named region of the file.  <code>low</code> is inclusive while <code>high</code> is exclusive. */
+	public static class Region {
+		private final int ordinal;
+		private final long low;
+		private final long high;
+		private final String name;
+		private final int entryIndex;
+		
+		private Region(int ordinal, long low, long high, String name, int entryIndex) {
+			this.ordinal = ordinal;
+			this.low = low;
+			this.high = high;
+			this.name = name;
+			this.entryIndex = entryIndex;
+		}
+		public long getLow() {
+			return low;
+		}
+		public long getHigh() {
+			return high;
+		}
+		public String getName() {
+			return name;
+		}
+		/** The index into the entry table, or -1 if this region is not an entry. */
+		public int getEntryIndex() {
+			return entryIndex;
+		}
+		@Override
+		public String toString() {
+			return low == high ? String.format("%s (empty at %d)", name, low)
+					: String.format("%s %d..%d", name, low, high-1);
+		}
+	}
+}
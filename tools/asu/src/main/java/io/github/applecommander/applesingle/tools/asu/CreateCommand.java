@@ -9,6 +9,7 @@ import java.util.Optional;
 import java.util.concurrent.Callable;
 
 import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.Layout;
 import io.github.applecommander.applesingle.Utilities;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -44,6 +45,10 @@ public class CreateCommand implements Callable<Void> {
 	@Option(names = "--resource-fork", description = "Read resource fork from file")
 	private Path resourceForkFile;
 	
+	@Option(names = "--align", description = "Put metadata first and start forks on a multiple of this many bytes (e.g. 4096)", 
+			converter = IntegerTypeConverter.class)
+	private Integer alignment;
+
 	@Option(names = "--name", description = "Set the filename (defaults to name of data fork, if supplied)")
 	private String realName;
 	
@@ -154,10 +159,11 @@ public class CreateCommand implements Callable<Void> {
 	}
 	
 	public void writeAppleSingle(AppleSingle applesingle) throws IOException {
+		Layout layout = alignment == null ? Layout.PACKED : Layout.aligned(alignment);
 		if (stdoutFlag) {
-			applesingle.save(System.out);
+			applesingle.save(System.out, layout);
 		} else {
-			applesingle.save(file);
+			applesingle.save(file, layout);
 			System.out.printf("Saved to '%s'.\n", file);
 		}
 	}
@@ -1,16 +1,25 @@
 package io.github.applecommander.applesingle.tools.asu;
 
 import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
+import io.github.applecommander.applesingle.EntryType;
+import io.github.applecommander.applesingle.Layout;
 import io.github.applecommander.applesingle.Utilities;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 
@@ -46,6 +55,10 @@ public class EditCommand implements Callable<Void> {
 	@Option(names = "--resource-fork", description = "Read resource fork from file")
 	private Path resourceForkFile;
 	
+	@Option(names = "--align", description = "Put metadata first and start forks on a multiple of this many bytes (e.g. 4096)", 
+			converter = IntegerTypeConverter.class)
+	private Integer alignment;
+
 	@Option(names = "--name", description = "Set the filename (defaults to name of data fork, if supplied)")
 	private String realName;
 	
@@ -74,7 +87,15 @@ public class EditCommand implements Callable<Void> {
 	public Void call() throws IOException {
 		validateArguments();
 
-		AppleSingle original = stdinFlag ? AppleSingle.read(System.in) : AppleSingle.read(file);
+		if (stdinFlag && stdoutFlag && alignment == null && stdinForkType == null) {
+			streamAppleSingle();
+			return null;
+		}
+		AppleSingle original;
+		try (AppleSingleReader reader = stdinFlag ? Main.stdin(AppleSingleReader.builder()) 
+				: Main.file(AppleSingleReader.builder(), file)) {
+			original = AppleSingle.read(reader);
+		}
 
 		byte[] dataFork = prepDataFork();
 		byte[] resourceFork = prepResourceFork();
@@ -85,6 +106,43 @@ public class EditCommand implements Callable<Void> {
 		return null;
 	}
 	
+	/**
+	 * Edit from stdin to stdout as a pipeline.  Only the metadata is read before the new header is written;
+	 * forks that are not being replaced are then forwarded from stdin as they arrive.
+	 */
+	public void streamAppleSingle() throws IOException {
+		byte[] dataFork = prepDataFork();
+		byte[] resourceFork = prepResourceFork();
+		new StreamingRewriter(System.in, System.out).rewrite(new StreamingRewriter.Plan() {
+			@Override
+			public boolean needs(int entryId) {
+				return !isFork(entryId);
+			}
+			@Override
+			public List<Entry> plan(EntryTable table, BitSet forwarded) throws IOException {
+				List<Entry> metadata = new ArrayList<>();
+				for (int i = 0; i < table.size(); i++) {
+					if (needs(table.getEntryId(i))) metadata.add(table.getEntry(i));
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				AppleSingle.write(bytes, metadata);
+				List<Entry> entries = buildAppleSingle(AppleSingle.read(bytes.toByteArray()), dataFork, resourceFork).getEntries();
+				for (int i = 0; i < table.size(); i++) {
+					int entryId = table.getEntryId(i);
+					if (isFork(entryId) && entries.stream().noneMatch(e -> e.getEntryId() == entryId)) forwarded.set(i);
+				}
+				return entries;
+			}
+		}, in -> {
+			try (AppleSingleReader reader = Main.stdin(AppleSingleReader.builder(), in)) {
+				writeAppleSingle(buildAppleSingle(AppleSingle.read(reader), dataFork, resourceFork));
+			}
+		});
+	}
+	private static boolean isFork(int entryId) {
+		return entryId == EntryType.DATA_FORK.entryId || entryId == EntryType.RESOURCE_FORK.entryId;
+	}
+	
 	public void validateArguments() throws IOException {
 		if ((stdinFlag && file != null) || (!stdinFlag && file == null)) {
 			throw new IOException("Please choose one of stdin or input file for original");
@@ -157,10 +215,11 @@ public class EditCommand implements Callable<Void> {
 	}
 	
 	public void writeAppleSingle(AppleSingle applesingle) throws IOException {
+		Layout layout = alignment == null ? Layout.PACKED : Layout.aligned(alignment);
 		if (stdoutFlag) {
-			applesingle.save(System.out);
+			applesingle.save(System.out, layout);
 		} else {
-			applesingle.save(file);
+			applesingle.save(file, layout);
 			System.out.printf("Saved to '%s'.\n", file);
 		}
 	}
@@ -1,12 +1,16 @@
 package io.github.applecommander.applesingle.tools.asu;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.Callable;
 
 import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryType;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Help.Visibility;
 import picocli.CommandLine.Option;
@@ -46,7 +50,11 @@ public class ExtractCommand implements Callable<Void> {
 	public Void call() throws IOException {
 		validateArguments();
 		
-		AppleSingle applesingle = stdinFlag ? AppleSingle.read(System.in) : AppleSingle.read(file);
+		AppleSingle applesingle;
+		try (AppleSingleReader reader = stdinFlag ? Main.stdin(AppleSingleReader.builder()) 
+				: Main.file(AppleSingleReader.builder(), file)) {
+			applesingle = AppleSingle.read(reader);
+		}
 		if (!stdoutFlag && baseFilename == null && applesingle.getRealName() == null) {
 			throw new IOException("Please include an output base filename; this AppleSingle file does not contain a name");
 		}
@@ -54,8 +62,8 @@ public class ExtractCommand implements Callable<Void> {
 			baseFilename = applesingle.getRealName();
 		}
 		
-		writeFork(ForkType.data, applesingle.getDataFork());
-		writeFork(ForkType.resource, applesingle.getResourceFork());
+		writeFork(ForkType.data, fork(applesingle, EntryType.DATA_FORK));
+		writeFork(ForkType.resource, fork(applesingle, EntryType.RESOURCE_FORK));
 		return null;
 	}
 	
@@ -71,28 +79,42 @@ public class ExtractCommand implements Callable<Void> {
 		}
 	}
 	
-	public void writeFork(ForkType forkType, byte[] data) throws IOException {
+	private static Entry fork(AppleSingle applesingle, EntryType type) {
+		return applesingle.getEntries().stream()
+				.filter(e -> e.getEntryId() == type.entryId)
+				.findFirst()
+				.orElse(null);
+	}
+	
+	/** Write a fork.  Unless the text is being fixed, the data is streamed rather than copied, so forks may exceed 2GB. */
+	public void writeFork(ForkType forkType, Entry fork) throws IOException {
 		if (this.forkType != forkType && this.forkType != ForkType.both) return;
 		
-		if (data == null || data.length == 0) {
+		if (fork == null || fork.getLength() == 0) {
 			throw new IOException(String.format("There is no data in the %s fork, aborting", forkType));
 		}
 		
 		if (fixTextFlag) {
+			byte[] data = fork.getData();
 			for (int i=0; i<data.length; i++) {
 				data[i] = (byte)(data[i] & 0x7f);
 				if (data[i] == 0x0d) data[i] = '\n';
 			}
+			fork = Entry.create(EntryType.find(fork.getEntryId()), data);
 		}
 
 		if (baseFilename != null) {
 			String targetFilename = String.format("%s.%s", baseFilename, forkType.name());
 			System.out.printf("Writing %s fork to file '%s'...\n", forkType.name(), targetFilename);
 			Path path = Paths.get(targetFilename);
-			Files.write(path, data);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, 
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				fork.writeData(channel);
+			}
 		}
 		if (stdoutFlag) {
-			System.out.write(data);
+			fork.writeData(System.out);
+			System.out.flush();
 		}
 	}
 }
@@ -0,0 +1,283 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.github.applecommander.applesingle.AfpFileInfo;
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
+import io.github.applecommander.applesingle.EntryType;
+import io.github.applecommander.applesingle.FileDatesInfo;
+import io.github.applecommander.applesingle.FinderInfo;
+import io.github.applecommander.applesingle.MacintoshFileInfo;
+import io.github.applecommander.applesingle.MsdosFileInfo;
+import io.github.applecommander.applesingle.ProdosFileInfo;
+
+/**
+ * Verify the structure of AppleSingle files.  Normally only the header and entry descriptors are
+ * read; a deep check also maps the file and decodes every known entry.  A FileVerifier reuses its
+ * buffers between files, so it is not thread-safe; use one per thread.
+ */
+public class FileVerifier {
+	/** The fixed sizes of the known entry types; 0 indicates a variable length. */
+	private static final int[] KNOWN_SIZES = new int[EntryType.MAX_ENTRY_ID + 1];
+	static {
+		KNOWN_SIZES[EntryType.FILE_DATES_INFO.entryId] = FileDatesInfo.BYTES;
+		KNOWN_SIZES[EntryType.MACINTOSH_FILE_INFO.entryId] = MacintoshFileInfo.BYTES;
+		KNOWN_SIZES[EntryType.PRODOS_FILE_INFO.entryId] = ProdosFileInfo.BYTES;
+		KNOWN_SIZES[EntryType.MSDOS_FILE_INFO.entryId] = MsdosFileInfo.BYTES;
+		KNOWN_SIZES[EntryType.AFP_FILE_INFO.entryId] = AfpFileInfo.BYTES;
+		KNOWN_SIZES[EntryType.DIRECTORY_ID.entryId] = Integer.BYTES;
+	}
+
+	/** The smallest boundary that gaps are accepted as alignment padding for. */
+	private static final int MIN_ALIGNMENT = 512;
+
+	private final boolean deep;
+	private final AppleSingleReader reader = AppleSingleReader.builder().build();
+	private ByteBuffer header = ByteBuffer.allocate(4096);
+	private final ByteBuffer padding = ByteBuffer.allocate(4096);
+
+	public FileVerifier(boolean deep) {
+		this.deep = deep;
+	}
+
+	public Result verify(Path path) {
+		Result result = new Result(path);
+		try (FileChannel channel = FileChannel.open(path)) {
+			result.size = channel.size();
+			if (readHeader(result, channel)) {
+				// Only the descriptors are in the buffer; verify reports those beyond the end of the file itself
+				EntryTable table = EntryTable.inspect(reader.reset(header));
+				result.version = table.getVersion();
+				result.entries = table.size();
+				checkEntries(result, table, channel);
+				if (deep && result.isValid()) {
+					checkDecode(result, channel);
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			result.error("io", String.valueOf(ex.getMessage()));
+		}
+		return result;
+	}
+
+	/** Read the header and descriptors into the header buffer, answering false if they are unusable. */
+	private boolean readHeader(Result result, FileChannel channel) throws IOException {
+		if (result.size < Coverage.HEADER_BYTES) {
+			result.error("truncated-header", String.format("File is %d bytes, header needs %d", result.size, Coverage.HEADER_BYTES));
+			return false;
+		}
+		header.clear().limit(Coverage.HEADER_BYTES);
+		readFully(channel, header, 0);
+		int magic = header.getInt(0);
+		if (magic != AppleSingle.MAGIC_NUMBER) {
+			result.error("bad-magic", String.format("Magic number is 0x%08x", magic));
+			return false;
+		}
+		int version = header.getInt(4);
+		if (version != AppleSingle.VERSION_NUMBER1 && version != AppleSingle.VERSION_NUMBER2) {
+			result.error("bad-version", String.format("Version is 0x%08x", version));
+			return false;
+		}
+		int count = Short.toUnsignedInt(header.getShort(24));
+		int length = Coverage.HEADER_BYTES + count * Entry.BYTES;
+		if (result.size < length) {
+			result.error("truncated-descriptors", String.format("File is %d bytes, %d descriptors need %d",
+					result.size, count, length));
+			return false;
+		}
+		if (header.capacity() < length) {
+			header = ByteBuffer.allocate(length).put(header.flip());
+		}
+		header.limit(length).position(Coverage.HEADER_BYTES);
+		readFully(channel, header, Coverage.HEADER_BYTES);
+		header.flip();
+		return true;
+	}
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) throw new IOException("Unexpected end of file");
+			position += n;
+		}
+	}
+
+	private void checkEntries(Result result, EntryTable table, FileChannel channel) throws IOException {
+		Coverage coverage = Coverage.analyze(table, result.size);
+		BitSet seen = new BitSet();
+		for (int i = 0; i < table.size(); i++) {
+			int entryId = table.getEntryId(i);
+			long offset = table.getOffset(i);
+			long length = table.getLength(i);
+			if (offset > result.size) {
+				result.error("out-of-bounds", String.format("Entry #%d (id %d) starts at %d, past the end of the file",
+						i, entryId, offset));
+			} else if (coverage.isOutOfBounds(i)) {
+				result.error("truncated-entry", String.format("Entry #%d (id %d) needs %d bytes but only %d remain",
+						i, entryId, length, result.size - offset));
+			}
+			EntryType type = EntryType.lookup(entryId);
+			if (type != null) {
+				int expected = KNOWN_SIZES[entryId];
+				if (expected != 0 && length != expected) {
+					result.error("entry-size", String.format("Entry #%d (%s) is %d bytes, expected %d",
+							i, type.name, length, expected));
+				} else if (type == EntryType.FINDER_INFO && length != FinderInfo.BYTES
+						&& length != FinderInfo.BYTES + FinderInfo.EXTENDED_BYTES) {
+					result.error("entry-size", String.format("Entry #%d (%s) is %d bytes, expected %d or %d",
+							i, type.name, length, FinderInfo.BYTES, FinderInfo.BYTES + FinderInfo.EXTENDED_BYTES));
+				}
+			}
+			if (entryId >= 0 && seen.get(entryId)) {
+				result.warning("duplicate-entry", String.format("Entry #%d repeats entry id %d", i, entryId));
+			}
+			if (entryId >= 0) seen.set(entryId);
+		}
+		for (Coverage.Region[] pair : coverage.getOverlaps()) {
+			result.error("overlap", String.format("%s overlaps %s", pair[0], pair[1]));
+		}
+		Set<Long> forks = null;
+		for (Coverage.Region gap : coverage.getGaps()) {
+			if (forks == null) forks = forkOffsets(table);
+			if (!isAlignmentPadding(gap, forks, channel)) result.warning("gap", gap.toString());
+		}
+		if (coverage.getTrailing() != null) {
+			result.warning("trailing-garbage", coverage.getTrailing().toString());
+		}
+	}
+
+	/** The offsets of the non-empty forks, which are the only entries an aligned {@code Layout} pads for. */
+	private static Set<Long> forkOffsets(EntryTable table) {
+		Set<Long> offsets = new HashSet<>();
+		for (int i = 0; i < table.size(); i++) {
+			int entryId = table.getEntryId(i);
+			if ((entryId == EntryType.DATA_FORK.entryId || entryId == EntryType.RESOURCE_FORK.entryId)
+					&& table.getLength(i) > 0) {
+				offsets.add(table.getOffset(i));
+			}
+		}
+		return offsets;
+	}
+	/** 
+	 * Padding written by an aligned {@code Layout}: it is followed by a fork, which starts on a boundary 
+	 * (a power of two of at least {@value #MIN_ALIGNMENT} bytes) longer than the gap, and it is all zeros.
+	 */
+	private boolean isAlignmentPadding(Coverage.Region gap, Set<Long> forks, FileChannel channel) throws IOException {
+		long length = gap.getHigh() - gap.getLow();
+		long boundary = Math.max(MIN_ALIGNMENT, Long.highestOneBit(length) << 1);
+		if (!forks.contains(gap.getHigh()) || gap.getHigh() % boundary != 0) return false;
+		long position = gap.getLow();
+		while (position < gap.getHigh()) {
+			padding.clear().limit((int)Math.min(padding.capacity(), gap.getHigh() - position));
+			readFully(channel, padding, position);
+			position += padding.flip().remaining();
+			while (padding.hasRemaining()) {
+				if (padding.get() != 0) return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkDecode(Result result, FileChannel channel) throws IOException {
+		EntryTable table = AppleSingle.asEntryTable(reader.reset(channel));
+		for (int i = 0; i < table.size(); i++) {
+			EntryType type = EntryType.lookup(table.getEntryId(i));
+			// Forks are opaque; decoding one would only copy it (and forks may exceed 2GB)
+			if (type == null || type == EntryType.DATA_FORK || type == EntryType.RESOURCE_FORK) continue;
+			try {
+				type.decode(table.getEntry(i));
+			} catch (RuntimeException ex) {
+				result.error("decode", String.format("Entry #%d (%s) failed to decode: %s", i, type.name, ex.getMessage()));
+			}
+		}
+	}
+
+	/** The outcome of verifying one file. */
+	public static class Result {
+		public enum Status { OK, WARNING, ERROR }
+
+		private final Path path;
+		private long size;
+		private int version;
+		private int entries;
+		private Status status = Status.OK;
+		private final List<String[]> issues = new ArrayList<>();
+
+		private Result(Path path) {
+			this.path = path;
+		}
+		private void error(String code, String message) {
+			issues.add(new String[] { "error", code, message });
+			status = Status.ERROR;
+		}
+		private void warning(String code, String message) {
+			issues.add(new String[] { "warning", code, message });
+			if (status == Status.OK) status = Status.WARNING;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+		public long getSize() {
+			return size;
+		}
+		public Status getStatus() {
+			return status;
+		}
+		public boolean isValid() {
+			return status != Status.ERROR;
+		}
+		/** Issues as (severity, code, message) triples. */
+		public List<String[]> getIssues() {
+			return Collections.unmodifiableList(issues);
+		}
+
+		/** Format this result as a single line of JSON. */
+		public String toJson() {
+			StringBuilder sb = new StringBuilder(128);
+			sb.append("{\"path\":").append(quote(path.toString()))
+			  .append(",\"status\":").append(quote(status.name().toLowerCase()))
+			  .append(",\"size\":").append(size);
+			if (version != 0) {
+				sb.append(",\"version\":").append(version >>> 16)
+				  .append(",\"entries\":").append(entries);
+			}
+			sb.append(",\"issues\":[");
+			for (int i = 0; i < issues.size(); i++) {
+				String[] issue = issues.get(i);
+				if (i > 0) sb.append(',');
+				sb.append("{\"severity\":").append(quote(issue[0]))
+				  .append(",\"code\":").append(quote(issue[1]))
+				  .append(",\"message\":").append(quote(issue[2])).append('}');
+			}
+			return sb.append("]}").toString();
+		}
+		static String quote(String s) {
+			StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+			for (char ch : s.toCharArray()) {
+				switch (ch) {
+				case '"':  sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (ch < 0x20) sb.append(String.format("\\u%04x", (int)ch));
+					else sb.append(ch);
+				}
+			}
+			return sb.append('"').toString();
+		}
+	}
+}
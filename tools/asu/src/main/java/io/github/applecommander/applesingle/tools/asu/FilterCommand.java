@@ -5,8 +5,9 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.SortedSet;
@@ -16,8 +17,11 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
 import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
 import io.github.applecommander.applesingle.EntryType;
+import io.github.applecommander.applesingle.Layout;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
@@ -47,6 +51,10 @@ public class FilterCommand implements Callable<Void> {
 	@Parameters(arity = "0..1", description = "File to process")
 	private Path inputFile;
 	
+	@Option(names = "--align", description = "Put metadata first and start forks on a multiple of this many bytes (e.g. 4096)", 
+			converter = IntegerTypeConverter.class)
+	private Integer alignment;
+	
 	@Option(names = "--prodos", description = "Apply ProDOS specific filter")
 	private boolean prodosFlag;
 	@Option(names = { "--mac", "--macintosh" }, description = "Apply Macintosh specific filter")
@@ -62,34 +70,76 @@ public class FilterCommand implements Callable<Void> {
 	@Option(names = "--exclude", description = "Filter by excluding specific entryIds", split = ",")
 	private Integer[] excludeEntryIds;
 	
+	private SortedSet<Integer> included;
+	private SortedSet<Integer> excluded;
+	
 	@Override
 	public Void call() throws IOException {
-		try (PrintStream ps = this.stdoutFlag ? new PrintStream(NullOutputStream.INSTANCE) : System.out) {
-			OSFilter osFilter = validate();
-			
-			SortedSet<Integer> included = toSet(includeEntryIds, osFilter);
-			SortedSet<Integer> excluded = toSet(excludeEntryIds, null);
-			List<Entry> entries = stdinFlag ? AppleSingle.asEntries(System.in) : AppleSingle.asEntries(inputFile);
-			List<Entry> newEntries = entries.stream()
-					.filter(e -> included.isEmpty() || included.contains(e.getEntryId()))
-					.filter(e -> excluded.isEmpty() || !excluded.contains(e.getEntryId()))
-					.collect(Collectors.toList());
-			// Check if we ended up with different things
-			SortedSet<EntryType> before = toEntryType(entries);
-			SortedSet<EntryType> after = toEntryType(newEntries);
-			before.removeAll(after);	// Note: modifies before
-			if (!before.isEmpty()) {
-				ps.printf("Removed the following entries:\n");
-				before.forEach(e -> ps.printf("- %s\n", e.name));
-			} else {
-				ps.printf("No entries removed.\n");
+		// Messages are dropped when the AppleSingle itself goes to stdout; System.out is never closed
+		PrintStream ps = this.stdoutFlag ? new PrintStream(NullOutputStream.INSTANCE) : System.out;
+		OSFilter osFilter = validate();
+		
+		included = toSet(includeEntryIds, osFilter);
+		excluded = toSet(excludeEntryIds, null);
+		if (stdinFlag && stdoutFlag && alignment == null) {
+			// Kept entries are forwarded from stdin to stdout as they arrive
+			new StreamingRewriter(System.in, System.out).rewrite((table, forwarded) -> {
+				for (int i = 0; i < table.size(); i++) {
+					if (keep(table.getEntryId(i))) forwarded.set(i);
+				}
+				return Collections.emptyList();
+			}, in -> {
+				try (AppleSingleReader reader = Main.stdin(AppleSingleReader.builder(), in)) {
+					filter(AppleSingle.asEntryTable(reader), ps);
+				}
+			});
+		} else {
+			try (AppleSingleReader reader = stdinFlag ? Main.stdin(AppleSingleReader.builder()) 
+					: Main.file(AppleSingleReader.builder(), inputFile)) {
+				filter(AppleSingle.asEntryTable(reader), ps);
 			}
-			
-			OutputStream outputStream = stdoutFlag ? System.out : Files.newOutputStream(outputFile);
-			AppleSingle.write(outputStream, newEntries);
 		}
+		System.out.flush();
 		return null;
 	}
+	private void filter(EntryTable table, PrintStream ps) throws IOException {
+		// Only the entries being kept are ever created; the rest are just descriptors.  Entries of an
+		// unknown type are treated like any other: kept unless an include list leaves them out or they
+		// are excluded by id.
+		List<Entry> newEntries = new ArrayList<>();
+		SortedSet<Integer> before = new TreeSet<>();
+		SortedSet<Integer> after = new TreeSet<>();
+		for (int i = 0; i < table.size(); i++) {
+			int entryId = table.getEntryId(i);
+			before.add(entryId);
+			if (keep(entryId)) {
+				newEntries.add(table.getEntry(i));
+				after.add(entryId);
+			}
+		}
+		// Check if we ended up with different things
+		before.removeAll(after);	// Note: modifies before
+		if (!before.isEmpty()) {
+			ps.printf("Removed the following entries:\n");
+			before.forEach(id -> ps.printf("- %s\n", Optional.ofNullable(EntryType.lookup(id))
+					.map(e -> e.name).orElse(String.format("Unknown entry id %d", id))));
+		} else {
+			ps.printf("No entries removed.\n");
+		}
+		
+		Layout layout = alignment == null ? Layout.PACKED : Layout.aligned(alignment);
+		if (stdoutFlag) {
+			AppleSingle.write(System.out, newEntries, AppleSingle.VERSION_NUMBER2, layout);
+		} else {
+			try (OutputStream outputStream = Files.newOutputStream(outputFile)) {
+				AppleSingle.write(outputStream, newEntries, AppleSingle.VERSION_NUMBER2, layout);
+			}
+		}
+	}
+	private boolean keep(int entryId) {
+		return (included.isEmpty() || included.contains(entryId)) 
+				&& (excluded.isEmpty() || !excluded.contains(entryId));
+	}
 	private OSFilter validate() throws IOException {
 		long count = Stream.of(prodosFlag, macintoshFlag, msdosFlag, afpFlag).filter(flag -> flag).count();
 		// Expected boundaries
@@ -115,12 +165,6 @@ public class FilterCommand implements Callable<Void> {
 						              .collect(Collectors.toCollection(() -> set)));
 		return set;
 	}
-	private SortedSet<EntryType> toEntryType(Collection<Entry> entries) {
-		return entries.stream()
-				.map(e -> e.getEntryId())
-				.map(EntryType::find)
-				.collect(Collectors.toCollection(() -> new TreeSet<EntryType>()));
-	}
 	
 	public enum OSFilter {
 		PRODOS(EntryType.DATA_FORK, EntryType.RESOURCE_FORK, EntryType.REAL_NAME, EntryType.FILE_DATES_INFO, 
@@ -0,0 +1,107 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import io.github.applecommander.applesingle.CorpusGenerator;
+import io.github.applecommander.applesingle.GroupCommit;
+import io.github.applecommander.applesingle.SizeDistribution;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Visibility;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Generate a synthetic corpus of AppleSingle files for load testing. 
+ */
+@Command(name = "generate", description = { "Generate a synthetic corpus of AppleSingle files" },
+		parameterListHeading = "%nParameters:%n",
+		descriptionHeading = "%n",
+		footerHeading = "%nNotes:%n",
+		footer = { "* Sizes are 'fixed:SIZE', 'uniform:MIN:MAX', or 'lognormal:MEDIAN:SIGMA[:MAX]'.",
+				   "* Fractions are between 0.0 and 1.0.",
+				   "* The same seed always generates the same files.",
+				   "* With --durable, files appear in groups as each group is committed." },
+		optionListHeading = "%nOptions:%n")
+public class GenerateCommand implements Callable<Void> {
+	@Option(names = { "-h", "--help" }, description = "Show help for subcommand", usageHelp = true)
+	private boolean helpFlag;
+	
+	@Option(names = { "-n", "--count" }, description = "Number of files to generate", required = true)
+	private int count;
+	
+	@Option(names = "--seed", description = "Random seed", showDefaultValue = Visibility.ALWAYS)
+	private long seed = 0;
+	
+	@Option(names = "--threads", description = "Number of threads (defaults to number of processors)")
+	private Integer threads;
+	
+	@Option(names = "--prefix", description = "File name prefix", showDefaultValue = Visibility.ALWAYS)
+	private String prefix = "file";
+	
+	@Option(names = "--data-size", description = "Data fork size distribution", converter = SizeDistributionConverter.class, 
+			defaultValue = "lognormal:4096:1.5:1048576", showDefaultValue = Visibility.ALWAYS)
+	private SizeDistribution dataForkSize;
+	
+	@Option(names = "--resource-size", description = "Resource fork size distribution", converter = SizeDistributionConverter.class, 
+			defaultValue = "uniform:0:4096", showDefaultValue = Visibility.ALWAYS)
+	private SizeDistribution resourceForkSize;
+	
+	@Option(names = "--resource-fraction", description = "Fraction of files with a resource fork", showDefaultValue = Visibility.ALWAYS)
+	private double resourceForkFraction = 0.0;
+	
+	@Option(names = "--extra-fraction", description = "Fraction of files with extra entry types", showDefaultValue = Visibility.ALWAYS)
+	private double extraEntriesFraction = 0.0;
+	
+	@Option(names = "--v1-fraction", description = "Fraction of files with a version 1 header", showDefaultValue = Visibility.ALWAYS)
+	private double version1Fraction = 0.0;
+	
+	@Option(names = "--malformed-fraction", description = "Fraction of files that are malformed", showDefaultValue = Visibility.ALWAYS)
+	private double malformedFraction = 0.0;
+	
+	@Option(names = "--shuffle", description = "Randomize the order of entries")
+	private boolean shuffleFlag;
+	
+	@Option(names = "--durable", description = "Sync each file and rename it into place, committing files in groups")
+	private boolean durableFlag;
+	
+	@Option(names = "--commit-batch", description = "Most files in a group commit", showDefaultValue = Visibility.ALWAYS)
+	private int commitBatch = 64;
+	
+	@Option(names = "--commit-window", description = "Most milliseconds a file waits for its group commit", 
+			showDefaultValue = Visibility.ALWAYS)
+	private long commitWindowMillis = 100;
+	
+	@Parameters(arity = "1", description = "Directory to write files into")
+	private Path directory;
+	
+	@Override
+	public Void call() throws IOException {
+		CorpusGenerator.Builder builder = CorpusGenerator.builder()
+				.seed(seed)
+				.prefix(prefix)
+				.dataForkSize(dataForkSize)
+				.resourceForkSize(resourceForkSize)
+				.resourceForkFraction(resourceForkFraction)
+				.extraEntriesFraction(extraEntriesFraction)
+				.version1Fraction(version1Fraction)
+				.malformedFraction(malformedFraction)
+				.shuffleEntries(shuffleFlag);
+		if (threads != null) builder.parallelism(threads.intValue());
+		if (durableFlag) {
+			if (commitBatch < 1 || commitWindowMillis < 0) {
+				throw new IOException("Please give a commit batch of at least 1 and a commit window of 0 or more");
+			}
+			builder.groupCommit(GroupCommit.builder().batchSize(commitBatch).windowMillis(commitWindowMillis));
+		}
+		
+		long start = System.currentTimeMillis();
+		CorpusGenerator.Summary summary = builder.build().generate(directory, count);
+		long elapsed = System.currentTimeMillis() - start;
+		
+		System.out.printf("Generated %,d files (%,d malformed), %,d bytes in %,d ms into '%s'.\n", 
+				summary.getFiles(), summary.getMalformed(), summary.getBytes(), elapsed, directory);
+		return null;
+	}
+}
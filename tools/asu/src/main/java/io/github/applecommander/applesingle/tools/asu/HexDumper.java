@@ -1,17 +1,41 @@
 package io.github.applecommander.applesingle.tools.asu;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A slightly-configurable reusable hex dumping mechanism. */
+/** 
+ * A slightly-configurable reusable hex dumping mechanism.
+ * <p>
+ * The standard format is rendered with lookup tables into a reusable buffer, which is written to the
+ * output stream in large chunks (at the latest when each {@code dump} completes, so output can be mixed
+ * with other writes to the same stream).  Dumping a {@code ByteBuffer} does not copy the data.
+ */
 public class HexDumper {
-	private PrintStream ps = System.out;
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	private static final byte[] PRINTABLE = new byte[256];
+	static {
+		for (int i=0; i<PRINTABLE.length; i++) {
+			PRINTABLE[i] = (byte)((i >= ' ' && i < 0x7f) ? i : '.');
+		}
+	}
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private OutputStream outputStream = System.out;
 	private int lineWidth = 16;
 	private LinePrinter printLine;
+	private byte[] buffer;
+	private int pos;
 	
 	public static HexDumper standard() {
+		return standard(System.out);
+	}
+	public static HexDumper standard(OutputStream outputStream) {
 		HexDumper hd = new HexDumper();
-		hd.printLine = hd::standardLine;
+		hd.outputStream = outputStream;
+		hd.buffer = new byte[BUFFER_SIZE];
 		return hd;
 	}
 	public static HexDumper alternate(LinePrinter linePrinter) {
@@ -24,42 +48,98 @@ public class HexDumper {
 		// Prevent construction
 	}
 	
-	public void dump(int address, byte[] data, String description) {
+	public void dump(long address, byte[] data, String description) {
+		dump(address, ByteBuffer.wrap(data), description);
+	}
+	/** Dump the remaining bytes of the buffer; the buffer position is not changed. */
+	public void dump(long address, ByteBuffer data, String description) {
+		int length = data.remaining();
+		int start = data.position();
 		int offset = 0;
-		while (offset < data.length) {
-			byte[] line = Arrays.copyOfRange(data, offset, Math.min(offset+lineWidth,data.length));
-			printLine.print(address+offset, line, description);
+		while (offset < length) {
+			int len = Math.min(lineWidth, length - offset);
+			line(address+offset, data, start+offset, len, description);
 			description = "";	// Only on first line!
-			offset += line.length;
+			offset += len;
 		}
-		if (data.length == 0) {
-		    printLine.print(address+offset, data, String.format("%s (empty)", description));
+		if (length == 0) {
+			line(address, data, start, 0, String.format("%s (empty)", description));
 		}
+		flush();
+	}
+	private void line(long address, ByteBuffer data, int index, int len, String description) {
+		if (printLine != null) {
+			byte[] line = new byte[len];
+			data.get(index, line);
+			printLine.print(address, line, description);
+		} else {
+			render(address, data, index, len, description);
+		}
+	}
+	
+	public void standardLine(long address, byte[] data, String description) {
+		if (buffer == null) buffer = new byte[BUFFER_SIZE];
+		render(address, ByteBuffer.wrap(data), 0, data.length, description);
+		flush();
 	}
 	
-	public void standardLine(int address, byte[] data, String description) {
-		ps.printf("%04x: ", address);
+	/** Render one line in the standard format into the buffer. */
+	private void render(long address, ByteBuffer data, int index, int len, String description) {
+		int digits = Math.max(4, (Long.SIZE - Long.numberOfLeadingZeros(address) + 3) / 4);
+		int needed = digits + 2 + lineWidth*4 + 5 + description.length() + 1;
+		ensureCapacity(needed);
+		byte[] b = buffer;
+		int p = pos;
+		for (int shift = (digits-1)*4; shift >= 0; shift -= 4) {
+			b[p++] = HEX[(int)(address >>> shift) & 0xf];
+		}
+		b[p++] = ':';
+		b[p++] = ' ';
 		for (int i=0; i<lineWidth; i++) {
-			if (i < data.length) {
-				ps.printf("%02x ", data[i]);
+			if (i < len) {
+				int value = data.get(index+i) & 0xff;
+				b[p++] = HEX[value >>> 4];
+				b[p++] = HEX[value & 0xf];
 			} else {
-				ps.printf(".. ");
+				b[p++] = '.';
+				b[p++] = '.';
 			}
+			b[p++] = ' ';
 		}
-		ps.print("| ");
+		b[p++] = '|';
+		b[p++] = ' ';
 		for (int i=0; i<lineWidth; i++) {
-			char ch = ' ';
-			if (i < data.length) {
-				byte b = data[i];
-				ch = (b >= ' ' && Byte.toUnsignedInt(b) < 0x7f) ? (char)b : '.';
-			}
-			ps.printf("%c", ch);
+			b[p++] = i < len ? PRINTABLE[data.get(index+i) & 0xff] : (byte)' ';
+		}
+		b[p++] = ' ';
+		b[p++] = '|';
+		b[p++] = ' ';
+		for (int i=0; i<description.length(); i++) {
+			b[p++] = (byte)description.charAt(i);
+		}
+		b[p++] = '\n';
+		pos = p;
+	}
+	private void ensureCapacity(int needed) {
+		if (buffer.length - pos < needed) {
+			flush();
+			if (buffer.length < needed) buffer = Arrays.copyOf(buffer, needed);
+		}
+	}
+	
+	/** Write any buffered output to the output stream. */
+	public void flush() {
+		if (pos == 0) return;
+		try {
+			outputStream.write(buffer, 0, pos);
+			pos = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		ps.printf(" | %s\n", description);
 	}
 	
 	@FunctionalInterface
 	public interface LinePrinter {
-		public void print(int address, byte[] data, String description);
+		public void print(long address, byte[] data, String description);
 	}
 }
@@ -6,6 +6,7 @@ import java.util.Optional;
 import java.util.concurrent.Callable;
 
 import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
 import io.github.applecommander.applesingle.FileDatesInfo;
 import io.github.applecommander.applesingle.ProdosFileInfo;
 import picocli.CommandLine.Command;
@@ -32,7 +33,11 @@ public class InfoCommand implements Callable<Void> {
 	
 	@Override
 	public Void call() throws IOException {
-		AppleSingle applesingle = stdinFlag ? AppleSingle.read(System.in) : AppleSingle.read(file);
+		AppleSingle applesingle;
+		try (AppleSingleReader reader = stdinFlag ? Main.stdin(AppleSingleReader.builder()) 
+				: Main.file(AppleSingleReader.builder(), file.toPath())) {
+			applesingle = AppleSingle.read(reader);
+		}
 		
 		System.out.printf("Real Name: %s\n", Optional.ofNullable(applesingle.getRealName()).orElse("-Unknown-"));
 		
@@ -57,12 +62,11 @@ public class InfoCommand implements Callable<Void> {
 			System.out.printf("  Backup: %s\n", fileDatesInfo.getBackupInstant());
 		}
 		
-		System.out.printf("Data Fork: Present, %,d bytes\n", applesingle.getDataFork().length);
+		System.out.printf("Data Fork: Present, %,d bytes\n", Math.max(0, applesingle.getDataForkLength()));
 		
-		System.out.printf("Resource Fork: %s\n", 
-				Optional.ofNullable(applesingle.getResourceFork())
-					.map(d -> String.format("Present, %,d bytes", d.length))
-					.orElse("Not present"));
+		long resourceForkLength = applesingle.getResourceForkLength();
+		System.out.printf("Resource Fork: %s\n", resourceForkLength < 0 ? "Not present" 
+				: String.format("Present, %,d bytes", resourceForkLength));
 		return null;
 	}
 }
@@ -1,8 +1,9 @@
 package io.github.applecommander.applesingle.tools.asu;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Stack;
 
 /**
  * A basic integer range used to track file usage.
@@ -12,39 +13,40 @@ import java.util.Stack;
  * @author rob
  */
 public class IntRange {
-	private int low;
-	private int high;
+	private long low;
+	private long high;
 
 	/** Create an integer range. */
-	public static IntRange of(int low, int high) {
+	public static IntRange of(long low, long high) {
 		if (low > high) throw new UnsupportedOperationException("low cannot be greater than high");
 		return new IntRange(Math.min(low,high), Math.max(low,high));
 	}
-	/** Normalize a list by combining all integer ranges that match. */
+	/**
+	 * Normalize a list by combining all integer ranges that touch or overlap.  The given ranges are
+	 * not modified.
+	 */
 	public static List<IntRange> normalize(List<IntRange> ranges) {
-		Stack<IntRange> rangeStack = new Stack<>();
-		ranges.stream()
-				  .sorted((a,b) -> Integer.compare(a.low, b.low))
-				  .forEach(r -> {
-					  if (rangeStack.isEmpty()) {
-						  rangeStack.add(r);
-					  } else {
-						  rangeStack.peek()
-						  			.merge(r)
-						  			.ifPresent(ranges::add);
-					  }
-				  });
-		return rangeStack;
+		List<IntRange> normalized = new ArrayList<>();
+		IntRange current = null;
+		for (IntRange r : ranges.stream().sorted(Comparator.comparingLong(IntRange::getLow)).toArray(IntRange[]::new)) {
+			if (current != null && r.low <= current.high) {
+				current.high = Math.max(current.high, r.high);
+			} else {
+				current = new IntRange(r.low, r.high);
+				normalized.add(current);
+			}
+		}
+		return normalized;
 	}
 	
-	private IntRange(int low, int high) {
+	private IntRange(long low, long high) {
 		this.low = low;
 		this.high = high;
 	}
-	public int getLow() {
+	public long getLow() {
 		return low;
 	}
-	public int getHigh() {
+	public long getHigh() {
 		return high;
 	}
 	/** Merge the other IntRange into this one, if it fits. */
@@ -0,0 +1,81 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A static interval tree.  Intervals are sorted by their low value and stored in arrays; the tree is the
+ * implicit balanced binary tree over that array where every node also knows the highest value in its
+ * subtree.  Building is O(n log n) and finding all intervals that overlap a range is O(log n + k).
+ * <p>
+ * Intervals are <code>long</code> based with <code>low</code> inclusive and <code>high</code> exclusive,
+ * like {@link IntRange}.  Empty intervals never overlap anything.
+ */
+public class IntervalTree<T> {
+	private final long[] lows;
+	private final long[] highs;
+	private final long[] maxHighs;
+	private final Object[] values;
+
+	/** Build the tree from the given values, using the functions to find the interval of each value. */
+	public static <T> IntervalTree<T> of(List<T> items, Bound<T> low, Bound<T> high) {
+		@SuppressWarnings("unchecked")
+		T[] sorted = (T[])items.toArray();
+		Arrays.sort(sorted, Comparator.comparingLong(low::of));
+		return new IntervalTree<>(sorted, low, high);
+	}
+	
+	private IntervalTree(T[] sorted, Bound<T> low, Bound<T> high) {
+		int n = sorted.length;
+		this.values = sorted;
+		this.lows = new long[n];
+		this.highs = new long[n];
+		this.maxHighs = new long[n];
+		for (int i=0; i<n; i++) {
+			lows[i] = low.of(sorted[i]);
+			highs[i] = high.of(sorted[i]);
+		}
+		computeMaxHigh(0, n);
+	}
+	private long computeMaxHigh(int lo, int hi) {
+		if (lo >= hi) return Long.MIN_VALUE;
+		int mid = (lo + hi) >>> 1;
+		long max = Math.max(highs[mid], Math.max(computeMaxHigh(lo, mid), computeMaxHigh(mid+1, hi)));
+		maxHighs[mid] = max;
+		return max;
+	}
+	
+	public int size() {
+		return values.length;
+	}
+	/** The value at the given position in low-value order. */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		return (T)values[index];
+	}
+	
+	/** Report every interval that overlaps <code>[low, high)</code>, in low-value order. */
+	public void query(long low, long high, Consumer<T> consumer) {
+		if (low < high) query(0, values.length, low, high, consumer);
+	}
+	@SuppressWarnings("unchecked")
+	private void query(int lo, int hi, long low, long high, Consumer<T> consumer) {
+		if (lo >= hi) return;
+		int mid = (lo + hi) >>> 1;
+		if (maxHighs[mid] <= low) return;	// Nothing in this subtree reaches the range
+		query(lo, mid, low, high, consumer);
+		if (lows[mid] < high && highs[mid] > low && lows[mid] < highs[mid]) {
+			consumer.accept((T)values[mid]);
+		}
+		if (lows[mid] < high) {
+			query(mid+1, hi, low, high, consumer);
+		}
+	}
+	
+	@FunctionalInterface
+	public interface Bound<T> {
+		public long of(T value);
+	}
+}
@@ -0,0 +1,144 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only record of the items a bulk run has finished, so that a run which dies can be resumed.
+ * Each line holds the status, a fingerprint of the input, and its path.  On resume, an input whose
+ * fingerprint still matches is skipped and its recorded status is reused.
+ * <p>
+ * Lines are collected in memory and appended in batches (every {@link #BATCH_SIZE} items or
+ * {@link #BATCH_MILLIS} milliseconds), so the journal does not cost a write per item.  A crash loses at
+ * most the last batch, and those items are simply done again.  A torn last line is ignored.
+ */
+public class Journal implements Closeable {
+	public static final int BATCH_SIZE = 256;
+	public static final long BATCH_MILLIS = 1000;
+	/** The number of bytes sampled from each end of a file for its fingerprint. */
+	public static final int SAMPLE_BYTES = 4096;
+	private static final String HEADER = "# asu journal 1\n";
+
+	private final FileChannel channel;
+	/** Path to { fingerprint, status } from a previous run; empty unless resuming. */
+	private final Map<String,String[]> previous = new ConcurrentHashMap<>();
+	private final StringBuilder batch = new StringBuilder();
+	private int batched;
+	private long lastWrite = System.nanoTime();
+
+	/** Open a journal; unless resuming, any previous content is discarded. */
+	public static Journal open(Path file, boolean resume) throws IOException {
+		return new Journal(file, resume);
+	}
+	private Journal(Path file, boolean resume) throws IOException {
+		if (resume && Files.exists(file)) {
+			String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			// Only complete lines count; a torn last line is dropped
+			String[] lines = text.substring(0, text.lastIndexOf('\n') + 1).split("\n");
+			for (String line : lines) {
+				String[] parts = line.split("\t", 3);
+				if (line.startsWith("#") || parts.length != 3) continue;
+				previous.put(parts[2], new String[] { parts[1], parts[0] });
+			}
+			this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			// The torn line must not run into the first new one
+			if (!text.isEmpty() && !text.endsWith("\n")) append("\n");
+		} else {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			append(HEADER);
+		}
+	}
+
+	/** The number of items recorded by the previous run. */
+	public int previousSize() {
+		return previous.size();
+	}
+	/** Answer the status recorded for this input by the previous run if its fingerprint is unchanged, else null. */
+	public String done(Path path, String fingerprint) {
+		String[] recorded = previous.get(key(path));
+		return recorded != null && recorded[0].equals(fingerprint) ? recorded[1] : null;
+	}
+	/** Record a finished item.  The line is written with the next batch. */
+	public synchronized void record(Path path, String fingerprint, String status) throws IOException {
+		batch.append(status).append('\t').append(fingerprint).append('\t').append(key(path)).append('\n');
+		batched += 1;
+		if (batched >= BATCH_SIZE) flush();
+		else flushIfDue();
+	}
+	/** Write the current batch if it has waited {@link #BATCH_MILLIS}; for callers where items arrive slowly. */
+	public synchronized void flushIfDue() throws IOException {
+		if (System.nanoTime() - lastWrite > TimeUnit.MILLISECONDS.toNanos(BATCH_MILLIS)) flush();
+	}
+	/** Write the current batch. */
+	public synchronized void flush() throws IOException {
+		if (batch.length() > 0) {
+			append(batch.toString());
+			batch.setLength(0);
+		}
+		batched = 0;
+		lastWrite = System.nanoTime();
+	}
+	private void append(String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static String key(Path path) {
+		return path.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * A fingerprint of the file content: its size and modification time, and a CRC-32C of the first and last
+	 * {@link #SAMPLE_BYTES} bytes.  This is cheap even for very large files, and catches a file that was
+	 * replaced while keeping its size and time stamp in all but contrived cases.
+	 */
+	public static String fingerprint(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long size = attributes.size();
+		CRC32C crc = new CRC32C();
+		try (FileChannel channel = FileChannel.open(path)) {
+			ByteBuffer sample = ByteBuffer.allocate((int)Math.min(size, 2 * SAMPLE_BYTES));
+			if (size <= 2 * SAMPLE_BYTES) {
+				read(channel, sample, 0);
+			} else {
+				sample.limit(SAMPLE_BYTES);
+				read(channel, sample, 0);
+				sample.limit(2 * SAMPLE_BYTES);
+				read(channel, sample, size - SAMPLE_BYTES);
+			}
+			crc.update(sample.flip());
+		}
+		return String.format("%d:%d:%08x", size, attributes.lastModifiedTime().toMillis(), crc.getValue());
+	}
+	/** Fill the rest of the buffer from the channel, starting at the given file offset. */
+	private static void read(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, offset);
+			if (n < 0) break;
+			offset += n;
+		}
+	}
+}
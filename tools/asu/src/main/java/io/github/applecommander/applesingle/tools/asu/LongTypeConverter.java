@@ -0,0 +1,19 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import picocli.CommandLine.ITypeConverter;
+
+/** Add support for "$801" and "0x801" instead of just decimal like 2049, for values beyond 2GB. */
+public class LongTypeConverter implements ITypeConverter<Long> {
+	@Override
+	public Long convert(String value) {
+		if (value == null) {
+			return null;
+		} else if (value.startsWith("$")) {
+			return Long.valueOf(value.substring(1), 16);
+		} else if (value.startsWith("0x") || value.startsWith("0X")) {
+			return Long.valueOf(value.substring(2), 16);
+		} else {
+			return Long.valueOf(value);
+		}
+	}
+}
@@ -1,7 +1,14 @@
 package io.github.applecommander.applesingle.tools.asu;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Optional;
 
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.ParseLimits;
+
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.HelpCommand;
@@ -21,16 +28,32 @@ import picocli.CommandLine.Option;
 			EditCommand.class,
 			ExtractCommand.class,
 			FilterCommand.class,
+			GenerateCommand.class,
 			HelpCommand.class, 
 			InfoCommand.class, 
+			PipeCommand.class,
+			VerifyCommand.class,
+			WatchCommand.class,
 			})
 public class Main implements Runnable {
 	@Option(names = "--debug", description = "Dump full stack traces if an error occurs")
 	private static boolean debugFlag;
 	
+	@Option(names = "--spill-threshold", description = "Spill stdin larger than this many bytes to a temporary file "
+			+ "(default: ${DEFAULT-VALUE})", converter = LongTypeConverter.class)
+	private static long spillThreshold = 64L * 1024 * 1024;
+	
+	@Option(names = "--max-entries", description = "Reject AppleSingle input with more entries than this (default: no limit)")
+	private static Integer maxEntries;
+	
+	@Option(names = "--max-size", description = "Reject AppleSingle input, or any entry in it, larger than this, "
+			+ "such as 128m (default: no limit)", converter = ByteSizeConverter.class)
+	private static Long maxSize;
+	
 	public static void main(String[] args) {
 		try {
-			new CommandLine(new Main()).execute(args);
+			int exitCode = new CommandLine(new Main()).execute(args);
+			if (exitCode != 0) System.exit(exitCode);
 		} catch (Throwable t) {
 			if (Main.debugFlag) {
 				t.printStackTrace(System.err);
@@ -46,6 +69,37 @@ public class Main implements Runnable {
 		}
 	}
 	
+	/** 
+	 * The limits AppleSingle input is read with: {@link ParseLimits#UNLIMITED}, which only checks the
+	 * descriptors against the source, so that multi-gigabyte files work.  {@code --max-entries} and
+	 * {@code --max-size} tighten it; whatever is not given stays unlimited.
+	 */
+	static ParseLimits limits() {
+		if (maxEntries == null && maxSize == null) return ParseLimits.UNLIMITED;
+		long size = maxSize == null ? Long.MAX_VALUE : maxSize.longValue();
+		return ParseLimits.builder()
+				.maxEntries(maxEntries == null ? 0xffff : maxEntries.intValue())
+				.maxTotalBytes(size)
+				.maxEntryLength(Math.min(size, Entry.MAX_LENGTH))
+				.maxMetadataLength(Math.min(size, Entry.MAX_LENGTH))
+				.build();
+	}
+	/** Point the reader at an AppleSingle file, checked against the {@link #limits()}. */
+	static AppleSingleReader file(AppleSingleReader.Builder builder, Path path) throws IOException {
+		return builder.limits(limits()).build().reset(path);
+	}
+	/** 
+	 * Point the reader at an AppleSingle on stdin, checked against the {@link #limits()}.  Input beyond the spill threshold goes to a temporary
+	 * file that is memory mapped, so a large pipe does not fill the heap.
+	 */
+	static AppleSingleReader stdin(AppleSingleReader.Builder builder) throws IOException {
+		return stdin(builder, System.in);
+	}
+	/** As {@link #stdin(AppleSingleReader.Builder)}, for stdin that has been wrapped or partly replayed. */
+	static AppleSingleReader stdin(AppleSingleReader.Builder builder, InputStream inputStream) throws IOException {
+		return builder.limits(limits()).spillThreshold(spillThreshold).build().reset(inputStream);
+	}
+	
 	@Override
 	public void run() {
 		CommandLine.usage(this, System.out);
@@ -0,0 +1,112 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.Layout;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Apply a sequence of steps to an AppleSingle in one process.  The file is parsed once, each step works
+ * on the entries in memory, and the AppleSingle is written once at the end (or not at all when the last
+ * step is an extract).  This replaces chains like {@code asu filter --stdout | asu edit --stdin --stdout}.
+ */
+@Command(name = "pipe", description = { "Apply a sequence of steps to an AppleSingle file",
+			"Please include a file name or indicate stdin should be read, but not both." },
+		parameterListHeading = "%nParameters:%n",
+		descriptionHeading = "%n",
+		footerHeading = "%nSteps:%n",
+		footer = { "Each step is NAME[:ARG[,ARG]...]; an ARG is KEY=VALUE or a flag.",
+				   "* filter[:prodos|mac|msdos|afp][,include=ID+ID...][,exclude=ID+ID...]",
+				   "* edit[:name=NAME][,access=N][,filetype=TYPE][,auxtype=N][,creation-date=DATE]",
+				   "      [,modification-date=DATE][,backup-date=DATE][,access-date=DATE]",
+				   "* fix-text (set the high bit and fix line endings in the data fork)",
+				   "* extract[:fork=data|resource|both][,output=BASE][,stdout][,fix-text]",
+				   "* checksum[:algorithm=ALGORITHM] (default SHA-256)",
+				   "Steps run in the order given.  Entry ids are joined with '+'; dates are ISO",
+				   "instants such as 2024-01-02T03:04:05Z.  Examples:",
+				   "    filter:prodos,include=1+3",
+				   "    edit:filetype=txt,modification-date=2024-01-02T03:04:05Z",
+				   "    extract:fork=both,output=BASE",
+				   "    extract:fork=data,stdout,fix-text",
+				   "    checksum:algorithm=SHA-256" },
+		optionListHeading = "%nOptions:%n")
+public class PipeCommand implements Callable<Void> {
+	@Option(names = { "-h", "--help" }, description = "Show help for subcommand", usageHelp = true)
+	private boolean helpFlag;
+
+	@Option(names = "--stdin", description = "Read AppleSingle from stdin.")
+	private boolean stdinFlag;
+	
+	@Option(names = "--stdout", description = "Write AppleSingle to stdout.")
+	private boolean stdoutFlag;
+	
+	@Option(names = { "-o", "--output" }, description = "Write AppleSingle to file.")
+	private Path outputFile;
+	
+	@Option(names = "--align", description = "Put metadata first and start forks on a multiple of this many bytes (e.g. 4096)", 
+			converter = IntegerTypeConverter.class)
+	private Integer alignment;
+	
+	@Option(names = { "-s", "--step" }, description = "Step to apply; repeat for each step", required = true,
+			converter = PipeStepConverter.class)
+	private List<PipeStep> steps;
+	
+	@Parameters(arity = "0..1", description = "File to process")
+	private Path inputFile;
+	
+	@Override
+	public Void call() throws IOException {
+		validateArguments();
+		boolean stdout = stdoutFlag || steps.stream().anyMatch(PipeStep::usesStdout);
+		PrintStream messages = stdout ? System.err : System.out;
+		
+		List<Entry> entries;
+		try (AppleSingleReader reader = stdinFlag ? Main.stdin(AppleSingleReader.builder()) 
+				: Main.file(AppleSingleReader.builder(), inputFile)) {
+			entries = AppleSingle.asEntries(reader);
+		}
+		for (PipeStep step : steps) {
+			entries = step.apply(entries, messages);
+		}
+		
+		Layout layout = alignment == null ? Layout.PACKED : Layout.aligned(alignment);
+		if (stdoutFlag) {
+			AppleSingle.write(System.out, entries, AppleSingle.VERSION_NUMBER2, layout);
+			System.out.flush();
+		} else if (outputFile != null) {
+			try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, 
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				AppleSingle.write(channel, entries, AppleSingle.VERSION_NUMBER2, layout);
+			}
+			messages.printf("Saved to '%s'.\n", outputFile);
+		}
+		return null;
+	}
+	
+	public void validateArguments() throws IOException {
+		if ((stdinFlag && inputFile != null) || (!stdinFlag && inputFile == null)) {
+			throw new IOException("Please choose one of stdin or input file");
+		}
+		if (stdoutFlag && outputFile != null) {
+			throw new IOException("Please choose one of stdout or output file");
+		}
+		if (steps.stream().filter(PipeStep::usesStdout).count() + (stdoutFlag ? 1 : 0) > 1) {
+			throw new IOException("Only one step (or the result) can be written to stdout");
+		}
+		boolean extractLast = steps.get(steps.size() - 1) instanceof PipeStep.Extract;
+		if (!extractLast && !stdoutFlag && outputFile == null) {
+			throw new IOException("Please include an output file or specify stdout, or end with an extract step");
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryType;
+import io.github.applecommander.applesingle.tools.asu.FilterCommand.OSFilter;
+
+/**
+ * One step of the {@code pipe} command.  Each step takes the current entries and answers the entries
+ * for the next step; entry data is shared from step to step, so a fork is only copied when a step
+ * changes it.  A step is written as {@code NAME[:ARG[,ARG]...]}, where each ARG is {@code KEY=VALUE} or a flag.
+ * Only the first colon and the first equals sign of each ARG are separators, so values such as ISO dates can
+ * contain colons; lists of entry ids are joined with a plus sign:<br/>
+ * <code>filter[:prodos|mac|msdos|afp][,include=ID+ID...][,exclude=ID+ID...]</code><br/>
+ * <code>edit[:name=NAME][,access=N][,filetype=TYPE][,auxtype=N][,creation-date=DATE]...</code><br/>
+ * <code>fix-text</code><br/>
+ * <code>extract[:fork=data|resource|both][,output=BASE][,stdout][,fix-text]</code><br/>
+ * <code>checksum[:algorithm=ALGORITHM]</code>
+ */
+public interface PipeStep {
+	/** Apply this step, answering the entries for the next step.  Messages go to the given stream. */
+	public List<Entry> apply(List<Entry> entries, PrintStream messages) throws IOException;
+
+	/** True if this step writes to stdout. */
+	public default boolean usesStdout() {
+		return false;
+	}
+
+	/**
+	 * Parse a step.  An unknown step, an unknown or repeated argument, a missing or unexpected value, or
+	 * a value that does not convert is reported as an {@code IllegalArgumentException} naming the step.
+	 */
+	public static PipeStep parse(String text) {
+		String step = text.trim();
+		int colon = step.indexOf(':');
+		String name = (colon < 0 ? step : step.substring(0, colon)).toLowerCase();
+		try {
+			Map<String,String> args = new LinkedHashMap<>();
+			if (colon >= 0) {
+				for (String arg : step.substring(colon + 1).split(",", -1)) {
+					int equals = arg.indexOf('=');
+					String key = (equals < 0 ? arg : arg.substring(0, equals)).trim().toLowerCase();
+					if (key.isEmpty()) throw new IllegalArgumentException("empty argument");
+					if (args.containsKey(key)) {
+						throw new IllegalArgumentException(String.format("'%s' is given more than once", key));
+					}
+					args.put(key, equals < 0 ? null : arg.substring(equals + 1));
+				}
+			}
+			PipeStep pipeStep = create(name, args);
+			if (!args.isEmpty()) {
+				throw new IllegalArgumentException(String.format("unknown argument(s) %s", args.keySet()));
+			}
+			return pipeStep;
+		} catch (IllegalArgumentException | DateTimeException ex) {
+			throw new IllegalArgumentException(String.format("Invalid step '%s': %s", step, ex.getMessage()), ex);
+		}
+	}
+	private static PipeStep create(String name, Map<String,String> args) {
+		switch (name) {
+		case "filter":
+			return new Filter(args);
+		case "edit":
+			return new Edit(args);
+		case "fix-text":
+			return new FixText();
+		case "extract":
+			return new Extract(args);
+		case "checksum":
+			return new Checksum(args);
+		default:
+			throw new IllegalArgumentException(String.format("unknown step '%s'; expecting filter, edit, fix-text, "
+					+ "extract, or checksum", name));
+		}
+	}
+	/** Take a {@code KEY=VALUE} argument, answering null when it is not given. */
+	static String value(Map<String,String> args, String key) {
+		if (!args.containsKey(key)) return null;
+		String value = args.remove(key);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException(String.format("'%s' needs a value", key));
+		}
+		return value;
+	}
+	/** Take a flag argument, answering true when it is given. */
+	static boolean flag(Map<String,String> args, String key) {
+		if (!args.containsKey(key)) return false;
+		if (args.remove(key) != null) {
+			throw new IllegalArgumentException(String.format("'%s' does not take a value", key));
+		}
+		return true;
+	}
+
+	/** Find the first entry of the given type, or null. */
+	static Entry find(List<Entry> entries, EntryType type) {
+		return entries.stream().filter(e -> e.getEntryId() == type.entryId).findFirst().orElse(null);
+	}
+
+	/** Keep only the selected entries; see the filter command. */
+	public static class Filter implements PipeStep {
+		private final Set<Integer> included = new HashSet<>();
+		private final Set<Integer> excluded = new HashSet<>();
+
+		Filter(Map<String,String> args) {
+			for (OSFilter filter : OSFilter.values()) {
+				String name = filter == OSFilter.MACINTOSH ? "mac" : filter.name().toLowerCase().replace("_", "");
+				if (flag(args, name)) {
+					Stream.of(filter.types).map(t -> t.entryId).forEach(included::add);
+				}
+			}
+			ids(value(args, "include"), included);
+			ids(value(args, "exclude"), excluded);
+		}
+		private static void ids(String text, Set<Integer> ids) {
+			if (text == null) return;
+			IntegerTypeConverter converter = new IntegerTypeConverter();
+			Arrays.stream(text.split("\\+")).map(converter::convert).forEach(ids::add);
+		}
+
+		@Override
+		public List<Entry> apply(List<Entry> entries, PrintStream messages) {
+			return entries.stream()
+					.filter(e -> included.isEmpty() || included.contains(e.getEntryId()))
+					.filter(e -> excluded.isEmpty() || !excluded.contains(e.getEntryId()))
+					.collect(Collectors.toList());
+		}
+	}
+
+	/** Change the metadata; see the edit command.  Forks are carried through untouched. */
+	public static class Edit implements PipeStep {
+		private final String realName;
+		private final Integer access;
+		private final Integer filetype;
+		private final Integer auxtype;
+		private final Instant creationDate;
+		private final Instant modificationDate;
+		private final Instant backupDate;
+		private final Instant accessDate;
+
+		Edit(Map<String,String> args) {
+			IntegerTypeConverter integers = new IntegerTypeConverter();
+			String filetype = value(args, "filetype");
+			this.realName = value(args, "name");
+			this.access = integers.convert(value(args, "access"));
+			this.filetype = filetype == null ? null : new ProdosFileTypeConverter().convert(filetype);
+			this.auxtype = integers.convert(value(args, "auxtype"));
+			this.creationDate = instant(value(args, "creation-date"));
+			this.modificationDate = instant(value(args, "modification-date"));
+			this.backupDate = instant(value(args, "backup-date"));
+			this.accessDate = instant(value(args, "access-date"));
+		}
+		private static Instant instant(String text) {
+			return text == null ? null : Instant.parse(text);
+		}
+
+		@Override
+		public List<Entry> apply(List<Entry> entries, PrintStream messages) {
+			AppleSingle.Builder builder = AppleSingle.builder(AppleSingle.of(entries));
+			if (realName != null) builder.realName(realName);
+			if (access != null) builder.access(access.intValue());
+			if (filetype != null) builder.fileType(filetype.intValue());
+			if (auxtype != null) builder.auxType(auxtype.intValue());
+			if (creationDate != null) builder.creationDate(creationDate);
+			if (modificationDate != null) builder.modificationDate(modificationDate);
+			if (backupDate != null) builder.backupDate(backupDate);
+			if (accessDate != null) builder.accessDate(accessDate);
+			return builder.build().getEntries();
+		}
+	}
+
+	/** Set the high bit and fix line endings in the data fork; see {@code edit --fix-text}. */
+	public static class FixText implements PipeStep {
+		@Override
+		public List<Entry> apply(List<Entry> entries, PrintStream messages) {
+			List<Entry> fixed = new ArrayList<>(entries);
+			for (int i = 0; i < fixed.size(); i++) {
+				if (fixed.get(i).getEntryId() != EntryType.DATA_FORK.entryId) continue;
+				byte[] data = fixed.get(i).getData();
+				for (int j = 0; j < data.length; j++) {
+					if (data[j] == '\n') data[j] = 0x0d;
+					data[j] = (byte)(data[j] | 0x80);
+				}
+				fixed.set(i, Entry.dataFork(data));
+			}
+			return fixed;
+		}
+	}
+
+	/**
+	 * Write fork(s) to files or stdout; see the extract command.  The entries are passed on unchanged,
+	 * so an extract need not be the last step.
+	 */
+	public static class Extract implements PipeStep {
+		private final ForkType forkType;
+		private final String baseFilename;
+		private final boolean stdoutFlag;
+		private final boolean fixTextFlag;
+
+		Extract(Map<String,String> args) {
+			this.forkType = forkType(value(args, "fork"));
+			this.baseFilename = value(args, "output");
+			this.stdoutFlag = flag(args, "stdout");
+			this.fixTextFlag = flag(args, "fix-text");
+			if (stdoutFlag && (baseFilename != null || forkType == ForkType.both)) {
+				throw new IllegalArgumentException("extract to stdout takes one fork and no output filename");
+			}
+		}
+
+		private static ForkType forkType(String text) {
+			if (text == null) return ForkType.data;
+			return Stream.of(ForkType.values()).filter(t -> t.name().equalsIgnoreCase(text)).findFirst()
+					.orElseThrow(() -> new IllegalArgumentException(String.format(
+							"unknown fork '%s'; expecting data, resource, or both", text)));
+		}
+
+		@Override
+		public boolean usesStdout() {
+			return stdoutFlag;
+		}
+
+		@Override
+		public List<Entry> apply(List<Entry> entries, PrintStream messages) throws IOException {
+			if (forkType != ForkType.resource) write(ForkType.data, find(entries, EntryType.DATA_FORK), entries, messages);
+			if (forkType != ForkType.data) write(ForkType.resource, find(entries, EntryType.RESOURCE_FORK), entries, messages);
+			return entries;
+		}
+		private void write(ForkType forkType, Entry fork, List<Entry> entries, PrintStream messages) throws IOException {
+			if (fork == null || fork.getLength() == 0) {
+				throw new IOException(String.format("There is no data in the %s fork, aborting", forkType));
+			}
+			if (fixTextFlag) {
+				byte[] data = fork.getData();
+				for (int i=0; i<data.length; i++) {
+					data[i] = (byte)(data[i] & 0x7f);
+					if (data[i] == 0x0d) data[i] = '\n';
+				}
+				fork = Entry.create(EntryType.find(fork.getEntryId()), data);
+			}
+			if (stdoutFlag) {
+				fork.writeData(System.out);
+				System.out.flush();
+				return;
+			}
+			String base = baseFilename;
+			if (base == null) {
+				base = AppleSingle.of(entries).getRealName();
+				if (base == null) {
+					throw new IOException("Please include an output base filename; this AppleSingle file does not contain a name");
+				}
+			}
+			String targetFilename = String.format("%s.%s", base, forkType.name());
+			messages.printf("Writing %s fork to file '%s'...\n", forkType.name(), targetFilename);
+			Path path = Paths.get(targetFilename);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				fork.writeData(channel);
+			}
+		}
+	}
+
+	/**
+	 * Print a digest of each fork, SHA-256 unless another {@code MessageDigest} algorithm is named.
+	 * The digest is fed straight from the fork's buffers, so nothing is copied.
+	 */
+	public static class Checksum implements PipeStep {
+		private final String algorithm;
+
+		Checksum(Map<String,String> args) {
+			String name = value(args, "algorithm");
+			this.algorithm = name == null ? "SHA-256" : name.toUpperCase();
+			digest(algorithm);
+		}
+		private static MessageDigest digest(String algorithm) {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalArgumentException(String.format("unknown checksum algorithm '%s'", algorithm));
+			}
+		}
+
+		@Override
+		public List<Entry> apply(List<Entry> entries, PrintStream messages) throws IOException {
+			for (EntryType type : new EntryType[] { EntryType.DATA_FORK, EntryType.RESOURCE_FORK }) {
+				Entry fork = find(entries, type);
+				if (fork == null) continue;
+				MessageDigest digest = digest(algorithm);
+				fork.writeData(new DigestChannel(digest));
+				StringBuilder hex = new StringBuilder();
+				for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+				messages.printf("%s %s: %s (%,d bytes)\n", type.name, algorithm, hex, fork.getLength());
+			}
+			return entries;
+		}
+
+		private static class DigestChannel implements WritableByteChannel {
+			private final MessageDigest digest;
+			DigestChannel(MessageDigest digest) {
+				this.digest = digest;
+			}
+			@Override
+			public int write(ByteBuffer src) {
+				int n = src.remaining();
+				digest.update(src);
+				return n;
+			}
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+			@Override
+			public void close() {
+				// Nothing to close
+			}
+		}
+	}
+}
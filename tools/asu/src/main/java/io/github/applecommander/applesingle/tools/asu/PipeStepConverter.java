@@ -0,0 +1,19 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.TypeConversionException;
+
+/**
+ * Add support for pipe steps like "filter:prodos", "edit:filetype=bin,name=HELLO", or "extract:fork=both".
+ * A step that does not parse is reported by picocli as a parameter error naming the step.
+ */
+public class PipeStepConverter implements ITypeConverter<PipeStep> {
+	@Override
+	public PipeStep convert(String value) {
+		try {
+			return PipeStep.parse(value);
+		} catch (IllegalArgumentException ex) {
+			throw new TypeConversionException(ex.getMessage());
+		}
+	}
+}
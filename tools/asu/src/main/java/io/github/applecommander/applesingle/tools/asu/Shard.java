@@ -0,0 +1,96 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+/**
+ * One slice of a batch, written "i/n" for shard i (1 to n) of n.  Files are assigned to shards by a hash of
+ * their path relative to the directory being processed, so every node working on the same tree agrees on
+ * the assignment (even if the tree is mounted in different places) without any coordination.
+ */
+public class Shard {
+	private final int index;
+	private final int count;
+
+	public static Shard of(int index, int count) {
+		if (count < 1 || index < 1 || index > count) {
+			throw new IllegalArgumentException(String.format("Expecting a shard from 1/%d to %d/%d", count, count, count));
+		}
+		return new Shard(index, count);
+	}
+	public static Shard parse(String text) {
+		String[] parts = text.trim().split("/");
+		try {
+			if (parts.length == 2) return of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+		} catch (NumberFormatException e) {
+			// Fall through to the error below
+		}
+		throw new IllegalArgumentException(String.format("Unable to parse shard '%s'; expecting 'i/n' like '1/4'", text));
+	}
+	private Shard(int index, int count) {
+		this.index = index;
+		this.count = count;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+	public int getCount() {
+		return count;
+	}
+	/** Answer true if the file at the given relative path belongs to this shard. */
+	public boolean contains(Path relative) {
+		return of(relative, count) == index;
+	}
+
+	/** Answer the shard (1 to count) for a relative path. */
+	public static int of(Path relative, int count) {
+		// Separators are normalized so Windows and Unix nodes agree
+		String name = relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+		// FNV-1a over the UTF-8 bytes, then a final mix so the low bits are well distributed
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+		}
+		hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+		hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return (int)Long.remainderUnsigned(hash, count) + 1;
+	}
+
+	/**
+	 * Print how many files and bytes fall in each of {@code count} shards, so the balance can be checked
+	 * before a run.  The map is from each file to its relative path.
+	 */
+	public static void printSizes(PrintStream out, Map<Path,Path> files, int count) throws IOException {
+		if (count < 1) throw new IllegalArgumentException("Expecting at least one shard");
+		long[] numbers = new long[count];
+		long[] bytes = new long[count];
+		for (Map.Entry<Path,Path> entry : files.entrySet()) {
+			int shard = of(entry.getValue(), count);
+			numbers[shard - 1] += 1;
+			bytes[shard - 1] += Files.size(entry.getKey());
+		}
+		out.printf("%-9s %12s %18s\n", "Shard", "Files", "Bytes");
+		for (int i = 0; i < count; i++) {
+			out.printf("%-9s %,12d %,18d\n", (i + 1) + "/" + count, numbers[i], bytes[i]);
+		}
+		out.printf("Largest shard is %.2fx the mean by files and %.2fx the mean by bytes.\n", 
+				skew(numbers), skew(bytes));
+	}
+	private static double skew(long[] values) {
+		long max = LongStream.of(values).max().orElse(0);
+		double mean = LongStream.of(values).average().orElse(0);
+		return mean == 0 ? 1.0 : max / mean;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d/%d", index, count);
+	}
+}
@@ -0,0 +1,11 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import picocli.CommandLine.ITypeConverter;
+
+/** Add support for shards like "1/4". */
+public class ShardConverter implements ITypeConverter<Shard> {
+	@Override
+	public Shard convert(String value) {
+		return Shard.parse(value);
+	}
+}
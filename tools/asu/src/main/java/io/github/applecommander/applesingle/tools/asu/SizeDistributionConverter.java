@@ -0,0 +1,12 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import io.github.applecommander.applesingle.SizeDistribution;
+import picocli.CommandLine.ITypeConverter;
+
+/** Add support for size distributions like "fixed:1024", "uniform:0:4096", or "lognormal:4096:1.5". */
+public class SizeDistributionConverter implements ITypeConverter<SizeDistribution> {
+	@Override
+	public SizeDistribution convert(String value) {
+		return SizeDistribution.parse(value);
+	}
+}
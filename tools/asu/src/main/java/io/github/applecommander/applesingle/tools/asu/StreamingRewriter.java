@@ -0,0 +1,236 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.AppleSingleReader;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryTable;
+
+/**
+ * Rewrites an AppleSingle from one stream to another as a pipeline, so that reading, processing and
+ * writing overlap.  A reader thread fills one {@link BufferRing} from the input and a writer thread
+ * drains another to the output, while the calling thread does the work in between.
+ * <p>
+ * Only the header, the descriptors and the entries the {@link Plan} asks for are held in memory.
+ * The new header is written as soon as the plan is known; entries that pass through unchanged are then
+ * forwarded as their bytes arrive.  The output is packed with the planned (new) entries first, followed
+ * by the forwarded entries in the order they appear in the input.
+ * <p>
+ * Input that cannot be handled this way (not an AppleSingle, overlapping entries, or needed entries too
+ * far into the stream) is replayed, in full, to the {@link Fallback}.
+ */
+final class StreamingRewriter {
+	static final int BUFFER_SIZE = 64 * 1024;
+	static final int RING_BUFFERS = 16;
+	/** The most input that is held while waiting for the entries the plan needs. */
+	static final int MAX_PREFIX = 1024 * 1024;
+	private static final int HEADER_BYTES = 26;
+
+	/** Decides what becomes of each entry. */
+	interface Plan {
+		/** Answer true if the entry's data must be in memory before the plan is made. */
+		default boolean needs(int entryId) {
+			return false;
+		}
+		/**
+		 * Answer the new entries to write, and set the indexes of the input entries to forward unchanged in
+		 * {@code forwarded}.  Only the entries that were needed may be fetched from the table.
+		 */
+		List<Entry> plan(EntryTable table, BitSet forwarded) throws IOException;
+	}
+	/** Processes the whole input the buffered way. */
+	interface Fallback {
+		void run(InputStream inputStream) throws IOException;
+	}
+
+	private final InputStream source;
+	private final OutputStream target;
+
+	StreamingRewriter(InputStream source, OutputStream target) {
+		this.source = source;
+		this.target = target;
+	}
+
+	void rewrite(Plan plan, Fallback fallback) throws IOException {
+		BufferRing inputRing = new BufferRing(RING_BUFFERS, BUFFER_SIZE);
+		Thread reader = new Thread(() -> inputRing.fill(source), "asu-reader");
+		reader.setDaemon(true);
+		reader.start();
+		BufferRing.Input input = new BufferRing.Input(inputRing);
+
+		ByteArrayOutputStream consumed = new ByteArrayOutputStream(BUFFER_SIZE);
+		EntryTable table = prefix(input, consumed, plan);
+		if (table == null) {
+			fallback.run(new SequenceInputStream(new ByteArrayInputStream(consumed.toByteArray()), input));
+			return;
+		}
+		BitSet forwarded = new BitSet(table.size());
+		List<Entry> entries = plan.plan(table, forwarded);
+		List<Integer> order = forwarded.stream().boxed()
+				.sorted(Comparator.comparingLong(table::getOffset))
+				.collect(Collectors.toList());
+		if (overlaps(table, order)) {
+			fallback.run(new SequenceInputStream(new ByteArrayInputStream(consumed.toByteArray()), input));
+			return;
+		}
+
+		BufferRing outputRing = new BufferRing(RING_BUFFERS, BUFFER_SIZE);
+		IOException[] writeError = new IOException[1];
+		Thread writer = new Thread(() -> {
+			try {
+				outputRing.drain(target);
+			} catch (IOException ex) {
+				writeError[0] = ex;
+			}
+		}, "asu-writer");
+		writer.start();
+		BufferRing.Output output = new BufferRing.Output(outputRing);
+		try {
+			writeHeader(output, table, entries, order);
+			for (Entry entry : entries) {
+				entry.writeData(output);
+			}
+			output.flush();
+			forward(input, output, consumed.toByteArray(), table, order);
+			output.close();
+		} catch (IOException | RuntimeException ex) {
+			outputRing.fail(ex);
+			join(writer);
+			throw ex;
+		}
+		join(writer);
+		if (writeError[0] != null) throw writeError[0];
+		// Consume whatever follows the last entry so the upstream process is not cut off
+		for (ByteBuffer chunk = input.chunk(); chunk != null; chunk = input.chunk()) {
+			chunk.position(chunk.limit());
+		}
+	}
+
+	/**
+	 * Read the header, the descriptors and enough of what follows to hold every needed entry, keeping all
+	 * of it in {@code consumed}.  Answer the table over those bytes, or null if the input must fall back.
+	 */
+	private static EntryTable prefix(BufferRing.Input input, ByteArrayOutputStream consumed, Plan plan) throws IOException {
+		if (!readTo(input, consumed, HEADER_BYTES)) return null;
+		byte[] header = consumed.toByteArray();
+		if (!AppleSingle.test(header)) return null;
+		int numberOfEntries = Short.toUnsignedInt(ByteBuffer.wrap(header).getShort(24));
+		if (!readTo(input, consumed, HEADER_BYTES + numberOfEntries * Entry.BYTES)) return null;
+
+		EntryTable table = table(consumed);
+		long end = consumed.size();
+		for (int i = 0; i < table.size(); i++) {
+			if (plan.needs(table.getEntryId(i))) {
+				end = Math.max(end, table.getOffset(i) + table.getLength(i));
+			}
+		}
+		if (end > MAX_PREFIX || !readTo(input, consumed, (int)end)) return null;
+		return table(consumed);
+	}
+	/** 
+	 * The table over what has been consumed.  The length of the stream is not known yet, so the descriptors
+	 * are inspected rather than checked against it; a stream that ends early fails as it is forwarded.
+	 */
+	private static EntryTable table(ByteArrayOutputStream consumed) throws IOException {
+		return EntryTable.inspect(AppleSingleReader.builder().limits(Main.limits()).build()
+				.reset(ByteBuffer.wrap(consumed.toByteArray())));
+	}
+	/** Read from the ring until {@code consumed} holds {@code length} bytes; answer false if the input ends first. */
+	private static boolean readTo(BufferRing.Input input, ByteArrayOutputStream consumed, int length) throws IOException {
+		while (consumed.size() < length) {
+			ByteBuffer chunk = input.chunk();
+			if (chunk == null) return false;
+			int n = Math.min(length - consumed.size(), chunk.remaining());
+			consumed.write(chunk.array(), chunk.arrayOffset() + chunk.position(), n);
+			chunk.position(chunk.position() + n);
+		}
+		return true;
+	}
+	/** Forwarded entries are copied in a single pass over the input, so they may not share any bytes. */
+	private static boolean overlaps(EntryTable table, List<Integer> order) {
+		long end = 0;
+		for (int index : order) {
+			if (table.getLength(index) == 0) continue;
+			if (table.getOffset(index) < end) return true;
+			end = table.getOffset(index) + table.getLength(index);
+		}
+		return false;
+	}
+
+	private static void writeHeader(OutputStream output, EntryTable table, List<Entry> entries, List<Integer> order)
+			throws IOException {
+		int count = entries.size() + order.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + count * Entry.BYTES);
+		header.putInt(AppleSingle.MAGIC_NUMBER).putInt(AppleSingle.VERSION_NUMBER2).put(new byte[16]).putShort((short)count);
+		long offset = header.capacity();
+		List<long[]> descriptors = new ArrayList<>();
+		entries.forEach(e -> descriptors.add(new long[] { e.getEntryId(), e.getLength() }));
+		order.forEach(i -> descriptors.add(new long[] { table.getEntryId(i), table.getLength(i) }));
+		for (long[] descriptor : descriptors) {
+			if (offset + descriptor[1] > Entry.MAX_LENGTH + 1) {
+				throw new IOException(String.format("AppleSingle file would be larger than %,d bytes", Entry.MAX_LENGTH + 1));
+			}
+			header.putInt((int)descriptor[0]).putInt((int)offset).putInt((int)descriptor[1]);
+			offset += descriptor[1];
+		}
+		output.write(header.array());
+	}
+
+	/**
+	 * Copy the forwarded entries, in input order.  Bytes already read into the prefix come from there;
+	 * the rest come straight from the input ring.  Output is flushed whenever the input runs dry, so what
+	 * has arrived is passed on rather than held back.
+	 */
+	private static void forward(BufferRing.Input input, BufferRing.Output output, byte[] prefix,
+			EntryTable table, List<Integer> order) throws IOException {
+		long position = prefix.length;
+		for (int index : order) {
+			long offset = table.getOffset(index);
+			long remaining = table.getLength(index);
+			if (offset < prefix.length) {
+				int n = (int)Math.min(remaining, prefix.length - offset);
+				output.write(prefix, (int)offset, n);
+				offset += n;
+				remaining -= n;
+			}
+			while (remaining > 0) {
+				ByteBuffer chunk = input.chunk();
+				if (chunk == null) {
+					throw new EOFException(String.format("Input ended at %,d bytes, within entry %d",
+							position, table.getEntryId(index)));
+				}
+				int n = (int)Math.min(chunk.remaining(), position < offset ? offset - position : remaining);
+				if (position < offset) {
+					chunk.position(chunk.position() + n);
+				} else {
+					output.write(chunk, n);
+					remaining -= n;
+				}
+				position += n;
+				if (!chunk.hasRemaining()) output.flush();
+			}
+		}
+	}
+
+	private static void join(Thread thread) throws IOException {
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing", ex);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Verify the structure of many AppleSingle files in parallel, writing one line of JSON per file.
+ */
+@Command(name = "verify", description = { "Verify the structure of AppleSingle files",
+			"Directories are searched recursively. One JSON object is written per file (NDJSON)." },
+		parameterListHeading = "%nParameters:%n",
+		descriptionHeading = "%n",
+		footerHeading = "%nNotes:%n",
+		footer = { "* Only the header and entry descriptors are read unless --deep is given.",
+				   "* Exit code is 0 when all files are valid, 1 when any file has an error",
+				   "  (or a warning with --strict).",
+				   "* Shards are numbered 1 to n; every node must be given the same directories.",
+				   "* With --resume, unchanged files keep the status recorded in the journal.",
+				   "* Files are verified largest first; small files fill what --io-budget leaves.",
+				   "* --io-budget limits file data read at once; as files are mapped,",
+				   "  it does not bound the heap." },
+		optionListHeading = "%nOptions:%n")
+public class VerifyCommand implements Callable<Integer> {
+	public static final int EXIT_VALID = 0;
+	public static final int EXIT_INVALID = 1;
+
+	@Option(names = { "-h", "--help" }, description = "Show help for subcommand", usageHelp = true)
+	private boolean helpFlag;
+
+	@Option(names = "--deep", description = "Also read and decode the entries")
+	private boolean deepFlag;
+
+	@Option(names = "--strict", description = "Treat warnings (gaps, trailing garbage, duplicates) as failures")
+	private boolean strictFlag;
+
+	@Option(names = "--problems", description = "Only write JSON for files with errors or warnings")
+	private boolean problemsFlag;
+
+	@Option(names = { "-q", "--quiet" }, description = "Do not write JSON; only the summary")
+	private boolean quietFlag;
+
+	@Option(names = "--threads", description = "Number of threads (defaults to number of processors)")
+	private Integer threads;
+
+	@Option(names = "--shard", description = "Only verify shard i of n (e.g. 1/4); files are assigned by a hash of their path",
+			converter = ShardConverter.class)
+	private Shard shard;
+
+	@Option(names = "--shard-sizes", description = "Print the files and bytes in each of this many shards, then stop")
+	private Integer shardSizes;
+
+	@Option(names = "--io-budget", description = "Most bytes of files being read at once (e.g. 512m); larger files go first",
+			converter = ByteSizeConverter.class)
+	private Long ioBudget;
+
+	@Option(names = "--journal", description = "Record verified files in this journal, so a run can be resumed")
+	private Path journalFile;
+
+	@Option(names = "--resume", description = "Skip files recorded in the journal that have not changed since")
+	private boolean resumeFlag;
+
+	@Parameters(arity = "1..*", description = "Files or directories to verify")
+	private List<Path> paths;
+
+	@Override
+	public Integer call() throws IOException, InterruptedException, ExecutionException {
+		if (resumeFlag && journalFile == null) {
+			throw new IOException("Please include the --journal to resume from");
+		}
+		// Each file maps to its path relative to the directory given, which is what is hashed for sharding
+		Map<Path,Path> found = new LinkedHashMap<>();
+		for (Path path : paths) {
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> stream = Files.walk(path)) {
+					stream.filter(Files::isRegularFile).forEach(file -> found.put(file, path.relativize(file)));
+				}
+			} else {
+				found.put(path, path.getFileName());
+			}
+		}
+		if (shardSizes != null) {
+			Shard.printSizes(System.out, found, shardSizes.intValue());
+			return EXIT_VALID;
+		}
+		Admission<Path> admission = new Admission<>(ioBudget == null ? Long.MAX_VALUE : ioBudget.longValue());
+		found.forEach((file, relative) -> {
+			if (shard == null || shard.contains(relative)) admission.add(file, size(file));
+		});
+		int count = admission.size();
+
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+		ThreadLocal<FileVerifier> verifiers = ThreadLocal.withInitial(() -> new FileVerifier(deepFlag));
+		LongAdder ok = new LongAdder();
+		LongAdder warnings = new LongAdder();
+		LongAdder errors = new LongAdder();
+		LongAdder bytes = new LongAdder();
+		LongAdder skipped = new LongAdder();
+
+		long start = System.currentTimeMillis();
+		int parallelism = threads == null ? Runtime.getRuntime().availableProcessors() : threads.intValue();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try (Journal journal = journalFile == null ? null : Journal.open(journalFile, resumeFlag)) {
+			// Each worker takes the largest file that fits in the budget until none are left
+			Callable<Void> worker = () -> {
+				for (Admission.Ticket<Path> ticket = admission.take(); ticket != null; ticket = admission.take()) {
+					try {
+						switch (verify(ticket.getItem(), verifiers.get(), journal, out, bytes, skipped)) {
+						case OK:      ok.increment(); break;
+						case WARNING: warnings.increment(); break;
+						case ERROR:   errors.increment(); break;
+						}
+					} finally {
+						admission.release(ticket);
+					}
+				}
+				return null;
+			};
+			List<Future<Void>> workers = new ArrayList<>();
+			for (int i = 0; i < parallelism; i++) {
+				workers.add(pool.submit(worker));
+			}
+			for (Future<Void> future : workers) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+			out.flush();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		System.err.printf("Verified %,d files (%,d ok, %,d with warnings, %,d with errors), %,d bytes in %,d ms.\n",
+				count, ok.sum(), warnings.sum(), errors.sum(), bytes.sum(), elapsed);
+		if (resumeFlag) {
+			System.err.printf("Skipped %,d unchanged files already in the journal.\n", skipped.sum());
+		}
+		boolean failed = errors.sum() > 0 || (strictFlag && warnings.sum() > 0);
+		return failed ? EXIT_INVALID : EXIT_VALID;
+	}
+
+	/** Verify one file, or answer its journaled status if it is unchanged since. */
+	private FileVerifier.Result.Status verify(Path path, FileVerifier verifier, Journal journal, PrintStream out,
+			LongAdder bytes, LongAdder skipped) {
+		String fingerprint = journal == null ? null : fingerprint(path);
+		String done = journal == null || fingerprint == null ? null : journal.done(path, fingerprint);
+		if (done != null) {
+			skipped.increment();
+			return FileVerifier.Result.Status.valueOf(done);
+		}
+		FileVerifier.Result result = verifier.verify(path);
+		FileVerifier.Result.Status status = result.getStatus();
+		bytes.add(result.getSize());
+		if (!quietFlag && !(problemsFlag && status == FileVerifier.Result.Status.OK)) {
+			out.println(result.toJson());
+		}
+		if (journal != null && fingerprint != null) record(journal, path, fingerprint, status.name());
+		return status;
+	}
+
+	/** The file's size, or 0 if it cannot be read (the verifier then reports why). */
+	private static long size(Path path) {
+		try {
+			return Files.size(path);
+		} catch (IOException ex) {
+			return 0;
+		}
+	}
+	/** The file's fingerprint, or null if it cannot be read (the verifier then reports why). */
+	private static String fingerprint(Path path) {
+		try {
+			return Journal.fingerprint(path);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+	private static void record(Journal journal, Path path, String fingerprint, String status) {
+		try {
+			journal.record(path, fingerprint, status);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
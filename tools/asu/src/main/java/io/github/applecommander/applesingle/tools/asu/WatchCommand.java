@@ -0,0 +1,426 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.GroupCommit;
+import io.github.applecommander.applesingle.Layout;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Visibility;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Watch a directory and process files as they arrive: AppleSingle files are verified, and any other file
+ * is converted to an AppleSingle (when an output directory is given).  One line of JSON is written per file.
+ * <p>
+ * A file is only picked up once it has settled, that is, once no events have been seen for it and its size
+ * and modification time have not changed for the settle time; this skips files still being written.
+ * Settled files go to a fixed pool of workers through a bounded queue, largest first and only while the
+ * bytes being read stay within the I/O budget (see {@link Admission}).  When the queue is full or the budget is
+ * spent, files wait (and are retried) rather than piling up in the workers.
+ * <p>
+ * When interrupted, the watch stops taking new files; the files already handed to the workers are finished,
+ * the last group is committed, and the output and journal are flushed before the process exits.  Temporary
+ * files left in the output directory by a run that died before its group commit are deleted on startup.
+ */
+@Command(name = "watch", description = { "Watch a directory, verifying or converting files as they arrive",
+			"One JSON object is written per file (NDJSON). Runs until interrupted." },
+		parameterListHeading = "%nParameters:%n",
+		descriptionHeading = "%n",
+		footerHeading = "%nNotes:%n",
+		footer = { "* AppleSingle files are verified; other files are converted when --output is given.",
+				   "* Latency is measured from the first event seen for a file until it is done.",
+				   "* Settled files are processed largest first; small files fill what --io-budget leaves.",
+				   "* With --shard, several nodes can watch the same shared directory without overlap.",
+				   "* With --existing --resume, files already done (and unchanged) are not done again.",
+				   "* With --durable, a converted file is reported once its group commit is done.",
+				   "* On interrupt, files already started are finished before exiting.",
+				   "* 'Known' ProDOS file types: TXT, BIN, INT, BAS, REL, SYS." },
+		optionListHeading = "%nOptions:%n")
+public class WatchCommand implements Callable<Void> {
+	@Option(names = { "-h", "--help" }, description = "Show help for subcommand", usageHelp = true)
+	private boolean helpFlag;
+
+	@Option(names = { "-o", "--output" }, description = "Directory to write converted AppleSingle files into")
+	private Path outputDirectory;
+
+	@Option(names = "--settle", description = "Milliseconds a file must be unchanged before it is processed",
+			showDefaultValue = Visibility.ALWAYS)
+	private long settleMillis = 1000;
+
+	@Option(names = "--threads", description = "Number of workers (defaults to number of processors)")
+	private Integer threads;
+
+	@Option(names = "--queue", description = "Most files waiting for a worker", showDefaultValue = Visibility.ALWAYS)
+	private int queueSize = 64;
+
+	@Option(names = "--io-budget", description = "Most bytes of files being read at once (e.g. 512m); larger files go first",
+			converter = ByteSizeConverter.class)
+	private Long ioBudget;
+
+	@Option(names = "--shard", description = "Only process shard i of n (e.g. 1/4); files are assigned by a hash of their name",
+			converter = ShardConverter.class)
+	private Shard shard;
+
+	@Option(names = "--existing", description = "Also process the files already in the directory")
+	private boolean existingFlag;
+
+	@Option(names = "--deep", description = "Also read and decode the entries when verifying")
+	private boolean deepFlag;
+
+	@Option(names = "--filetype", description = "ProDOS file type for converted files", converter = ProdosFileTypeConverter.class)
+	private Integer filetype;
+
+	@Option(names = "--auxtype", description = "ProDOS auxtype for converted files", converter = IntegerTypeConverter.class)
+	private Integer auxtype;
+
+	@Option(names = "--align", description = "Put metadata first and start forks on a multiple of this many bytes (e.g. 4096)",
+			converter = IntegerTypeConverter.class)
+	private Integer alignment;
+
+	@Option(names = "--durable", description = "Sync each converted file and rename it into place, committing files in groups")
+	private boolean durableFlag;
+
+	@Option(names = "--commit-batch", description = "Most files in a group commit", showDefaultValue = Visibility.ALWAYS)
+	private int commitBatch = 64;
+
+	@Option(names = "--commit-window", description = "Most milliseconds a file waits for its group commit",
+			showDefaultValue = Visibility.ALWAYS)
+	private long commitWindowMillis = 100;
+
+	@Option(names = "--journal", description = "Record processed files in this journal")
+	private Path journalFile;
+
+	@Option(names = "--resume", description = "Skip files recorded in the journal that have not changed since")
+	private boolean resumeFlag;
+
+	@Parameters(arity = "1", description = "Directory to watch")
+	private Path directory;
+
+	/** Files seen but not yet handed to a worker, in the order they were first seen. */
+	private final Map<Path,Pending> pending = new LinkedHashMap<>();
+	/** Settled files waiting for room in the queue and the byte budget. */
+	private Admission<Pending> admission;
+	/** The number of files seen but not yet queued, for reporting by the workers. */
+	private volatile int unsettled;
+	private PrintStream out;
+	private Journal journal;
+	private GroupCommit committer;
+	/** Set by the shutdown hook, so the closed watch service is not taken for a vanished directory. */
+	private volatile boolean stopping;
+
+	@Override
+	public Void call() throws IOException, InterruptedException {
+		validateArguments();
+		out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+		ThreadLocal<FileVerifier> verifiers = ThreadLocal.withInitial(() -> new FileVerifier(deepFlag));
+		int parallelism = threads == null ? Runtime.getRuntime().availableProcessors() : threads.intValue();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize));
+
+		admission = new Admission<>(ioBudget == null ? Long.MAX_VALUE : ioBudget.longValue());
+		journal = journalFile == null ? null : Journal.open(journalFile, resumeFlag);
+		if (outputDirectory != null) deleteStaleTemporaries();
+		if (durableFlag) {
+			committer = GroupCommit.builder().batchSize(commitBatch).windowMillis(commitWindowMillis).build();
+		}
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		// On interrupt, stop watching and wait for the cleanup below to finish before the JVM goes away
+		CountDownLatch stopped = new CountDownLatch(1);
+		Thread hook = new Thread(() -> {
+			stopping = true;
+			try {
+				watcher.close();
+				stopped.await();
+			} catch (IOException | InterruptedException ex) {
+				// Exiting anyway
+			}
+		}, "watch-shutdown");
+		Runtime.getRuntime().addShutdownHook(hook);
+		try {
+			WatchKey key = directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+			if (existingFlag) rescan();
+			System.err.printf("Watching '%s' with %d workers...\n", directory, parallelism);
+			while (key.isValid()) {
+				WatchKey signalled = watcher.poll(Math.max(10, settleMillis / 4), TimeUnit.MILLISECONDS);
+				if (signalled != null) {
+					for (WatchEvent<?> event : signalled.pollEvents()) {
+						if (event.kind() == OVERFLOW) {
+							rescan();
+						} else {
+							seen(directory.resolve((Path)event.context()));
+						}
+					}
+					if (!signalled.reset()) break;
+				}
+				dispatch(pool, verifiers);
+				if (journal != null) journal.flushIfDue();
+			}
+			if (!stopping) System.err.printf("Directory '%s' is no longer accessible; stopping.\n", directory);
+		} catch (ClosedWatchServiceException ex) {
+			if (!stopping) throw ex;
+		} finally {
+			try {
+				if (stopping) System.err.printf("Stopping; finishing %d file(s) already started...\n",
+						pool.getActiveCount() + pool.getQueue().size());
+				watcher.close();
+				pool.shutdown();
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+				if (committer != null) committer.close();
+				out.flush();
+				if (journal != null) journal.close();
+			} finally {
+				stopped.countDown();
+				try {
+					Runtime.getRuntime().removeShutdownHook(hook);
+				} catch (IllegalStateException ex) {
+					// Already shutting down; the hook is running
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Delete the temporary files a previous run left in the output directory when it died before committing
+	 * them.  With a shard, only the files for this shard are touched, as other nodes may be writing theirs.
+	 */
+	private void deleteStaleTemporaries() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(outputDirectory, GroupCommit::isTemporary)) {
+			for (Path path : stream) {
+				String target = GroupCommit.targetOf(path).getFileName().toString();
+				String source = target.endsWith(".as") ? target.substring(0, target.length() - 3) : target;
+				if (shard != null && !shard.contains(Paths.get(source))) continue;
+				if (Files.deleteIfExists(path)) {
+					System.err.printf("Deleted stale temporary file '%s'.\n", path);
+				}
+			}
+		}
+	}
+
+	public void validateArguments() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			throw new IOException(String.format("'%s' is not a directory", directory));
+		}
+		if (outputDirectory != null) {
+			if (!Files.isDirectory(outputDirectory)) {
+				throw new IOException(String.format("'%s' is not a directory", outputDirectory));
+			}
+			if (Files.isSameFile(directory, outputDirectory)) {
+				throw new IOException("The output directory must not be the watched directory");
+			}
+		}
+		if (resumeFlag && journalFile == null) {
+			throw new IOException("Please include the --journal to resume from");
+		}
+		if (queueSize < 1 || settleMillis < 0) {
+			throw new IOException("Please give a queue size of at least 1 and a settle time of 0 or more");
+		}
+		if (commitBatch < 1 || commitWindowMillis < 0) {
+			throw new IOException("Please give a commit batch of at least 1 and a commit window of 0 or more");
+		}
+	}
+
+	/** Note every file now in the directory, as after an overflow the events themselves are lost. */
+	private void rescan() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				seen(path);
+			}
+		}
+	}
+	/** Record an event for a file; its settle time starts over. */
+	private void seen(Path path) {
+		if (shard != null && !shard.contains(directory.relativize(path))) return;
+		long now = System.nanoTime();
+		Pending p = pending.computeIfAbsent(path, k -> new Pending(k, now));
+		p.lastChange = now;
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			p.size = attributes.size();
+			p.modified = attributes.lastModifiedTime().toMillis();
+		} catch (IOException ex) {
+			// Gone already; dispatch drops it
+		}
+	}
+
+	/** Hand settled files to the workers, largest first, until the queue is full or the byte budget is spent. */
+	private void dispatch(ThreadPoolExecutor pool, ThreadLocal<FileVerifier> verifiers) {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<Path,Pending>> iterator = pending.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Path,Pending> entry = iterator.next();
+			Path path = entry.getKey();
+			Pending p = entry.getValue();
+			if (now - p.lastChange < TimeUnit.MILLISECONDS.toNanos(settleMillis)) continue;
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (IOException ex) {
+				iterator.remove();	// Deleted or renamed before it settled
+				continue;
+			}
+			if (!attributes.isRegularFile()) {
+				iterator.remove();
+				continue;
+			}
+			long size = attributes.size();
+			long modified = attributes.lastModifiedTime().toMillis();
+			if (size != p.size || modified != p.modified) {
+				// Still changing (or not checked yet); wait another settle time
+				p.size = size;
+				p.modified = modified;
+				p.lastChange = now;
+				continue;
+			}
+			admission.add(p, size);
+			iterator.remove();
+		}
+		// Largest first, within the byte budget, for as long as the queue has room
+		while (pool.getQueue().remainingCapacity() > 0) {
+			Admission.Ticket<Pending> ticket = admission.poll();
+			if (ticket == null) break;
+			Pending p = ticket.getItem();
+			pool.execute(() -> {
+				try {
+					process(p.path, p.firstSeen, pool, verifiers.get());
+				} finally {
+					admission.release(ticket);
+				}
+			});
+		}
+		unsettled = pending.size() + admission.size();
+	}
+
+	private void process(Path path, long firstSeen, ThreadPoolExecutor pool, FileVerifier verifier) {
+		long start = System.nanoTime();
+		StringBuilder json = new StringBuilder(256);
+		try {
+			String fingerprint = journal == null ? null : Journal.fingerprint(path);
+			String done = journal == null ? null : journal.done(path, fingerprint);
+			if (done != null) {
+				json.append("\"action\":\"resume\",\"status\":").append(FileVerifier.Result.quote(done));
+			} else if (isAppleSingle(path)) {
+				FileVerifier.Result result = verifier.verify(path);
+				String action = result.getStatus().name().toLowerCase();
+				json.append("\"action\":\"verify\",\"status\":").append(FileVerifier.Result.quote(action))
+					.append(",\"result\":").append(result.toJson());
+				record(path, fingerprint, action);
+			} else if (outputDirectory != null) {
+				Path target = outputDirectory.resolve(path.getFileName() + ".as");
+				AppleSingle applesingle = convert(path);
+				Layout layout = alignment == null ? Layout.PACKED : Layout.aligned(alignment);
+				json.append("\"action\":\"create\",\"status\":\"ok\",\"output\":")
+					.append(FileVerifier.Result.quote(target.toString()));
+				if (committer != null) {
+					// Reported (and journaled) once its group has been committed
+					committer.save(applesingle, target, layout).whenComplete((p, t) -> {
+						try {
+							if (t != null) throw t;
+							record(path, fingerprint, "ok");
+						} catch (Throwable ex) {
+							error(json, ex);
+						}
+						report(path, firstSeen, start, pool, json);
+					});
+					return;
+				}
+				applesingle.save(target, layout);
+				record(path, fingerprint, "ok");
+			} else {
+				json.append("\"action\":\"skip\",\"status\":\"ok\"");
+				record(path, fingerprint, "ok");
+			}
+		} catch (IOException | RuntimeException ex) {
+			error(json, ex);
+		}
+		report(path, firstSeen, start, pool, json);
+	}
+	/** Journal a finished file.  Failures are not journaled, so they are tried again on resume. */
+	private void record(Path path, String fingerprint, String action) throws IOException {
+		if (journal != null) journal.record(path, fingerprint, action);
+	}
+	private static void error(StringBuilder json, Throwable ex) {
+		json.setLength(0);
+		json.append("\"action\":\"error\",\"status\":\"error\",\"message\":")
+			.append(FileVerifier.Result.quote(String.valueOf(ex.getMessage())));
+	}
+	private void report(Path path, long firstSeen, long start, ThreadPoolExecutor pool, StringBuilder json) {
+		long end = System.nanoTime();
+		String line = String.format("{\"path\":%s,%s,\"latencyMs\":%d,\"workMs\":%d,\"queueDepth\":%d,\"pending\":%d}",
+				FileVerifier.Result.quote(path.toString()), json,
+				TimeUnit.NANOSECONDS.toMillis(end - firstSeen), TimeUnit.NANOSECONDS.toMillis(end - start), 
+				pool.getQueue().size(), unsettled);
+		synchronized (out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	private static boolean isAppleSingle(Path path) throws IOException {
+		ByteBuffer probe = ByteBuffer.allocate(8);
+		try (FileChannel channel = FileChannel.open(path)) {
+			while (probe.hasRemaining() && channel.read(probe) >= 0) {
+				// Keep reading until the probe is full or the file ends
+			}
+		}
+		return !probe.hasRemaining() && AppleSingle.test(probe.array());
+	}
+
+	/** Convert a raw file into an AppleSingle with it as the data fork, as {@code create --data-fork} does. */
+	private AppleSingle convert(Path path) throws IOException {
+		BasicFileAttributes attribs = Files.readAttributes(path, BasicFileAttributes.class);
+		AppleSingle.Builder builder = AppleSingle.builder()
+				.realName(path.getFileName().toString())
+				.dataFork(path)
+				.creationDate(attribs.creationTime().toInstant())
+				.modificationDate(attribs.lastModifiedTime().toInstant())
+				.accessDate(attribs.lastAccessTime().toInstant());
+		if (filetype != null) builder.fileType(filetype.intValue());
+		if (auxtype != null) builder.auxType(auxtype.intValue());
+		return builder.build();
+	}
+
+	/** A file that has been seen but not yet handed to a worker. */
+	private static class Pending {
+		final Path path;
+		final long firstSeen;
+		long lastChange;
+		long size = -1;
+		long modified = -1;
+
+		Pending(Path path, long firstSeen) {
+			this.path = path;
+			this.firstSeen = firstSeen;
+		}
+	}
+}
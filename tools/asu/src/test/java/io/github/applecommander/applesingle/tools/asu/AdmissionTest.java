@@ -0,0 +1,57 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class AdmissionTest {
+	@Test
+	public void testLargestFirstWithinBudget() {
+		Admission<String> admission = new Admission<>(100);
+		admission.add("small", 10);
+		admission.add("large", 60);
+		admission.add("medium", 30);
+		admission.add("another", 30);
+
+		assertEquals("large", admission.poll().getItem());
+		Admission.Ticket<String> medium = admission.poll();
+		assertEquals("medium", medium.getItem());
+		// 90 bytes are in flight; only the small item still fits
+		assertEquals("small", admission.poll().getItem());
+		assertNull(admission.poll());
+		assertEquals(100, admission.inFlight());
+
+		admission.release(medium);
+		assertEquals("another", admission.poll().getItem());
+		assertEquals(0, admission.size());
+	}
+
+	@Test
+	public void testOversizeOnlyWhenIdle() {
+		Admission<String> admission = new Admission<>(100);
+		admission.add("first", 50);
+		Admission.Ticket<String> first = admission.poll();
+		admission.add("huge", 500);
+		assertNull(admission.poll());
+		admission.release(first);
+		assertEquals("huge", admission.poll().getItem());
+		assertEquals(500, admission.inFlight());
+	}
+
+	@Test
+	public void testLargeItemIsNotStarved() {
+		Admission<Integer> admission = new Admission<>(100);
+		admission.add(-1, 60);
+		Admission.Ticket<Integer> holder = admission.poll();
+		admission.add(0, 70);
+		for (int i = 1; i <= Admission.MAX_BYPASS + 1; i++) admission.add(i, 1);
+		for (int i = 0; i < Admission.MAX_BYPASS; i++) {
+			admission.release(admission.poll());
+		}
+		// The small items have passed the large one as often as they may
+		assertNull(admission.poll());
+		admission.release(holder);
+		assertEquals(Integer.valueOf(0), admission.poll().getItem());
+	}
+}
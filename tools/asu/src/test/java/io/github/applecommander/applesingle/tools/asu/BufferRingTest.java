@@ -0,0 +1,71 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class BufferRingTest {
+	@Test(timeout = 10_000)
+	public void testBytesPassThrough() throws Exception {
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) data[i] = (byte)i;
+		BufferRing ring = new BufferRing(2, 1000);
+		Thread producer = new Thread(() -> ring.fill(new ByteArrayInputStream(data)));
+		producer.start();
+		ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+		new BufferRing.Input(ring).transferTo(consumed);
+		producer.join();
+		assertArrayEquals(data, consumed.toByteArray());
+	}
+
+	@Test(timeout = 10_000)
+	public void testProducerFailureReachesConsumer() throws Exception {
+		BufferRing ring = new BufferRing(2, 1000);
+		InputStream failing = new InputStream() {
+			private int count;
+			@Override
+			public int read() throws IOException {
+				if (count++ == 5000) throw new IOException("disk went away");
+				return 0;
+			}
+		};
+		Thread producer = new Thread(() -> ring.fill(failing));
+		producer.start();
+		try {
+			new BufferRing.Input(ring).transferTo(OutputStream.nullOutputStream());
+			fail("Expected the producer's failure");
+		} catch (IOException ex) {
+			assertEquals("disk went away", ex.getMessage());
+		}
+		producer.join();
+	}
+
+	@Test(timeout = 10_000)
+	public void testConsumerFailureDoesNotBlockProducer() throws Exception {
+		BufferRing ring = new BufferRing(2, 1000);
+		Thread producer = new Thread(() -> ring.fill(new ByteArrayInputStream(new byte[100_000])));
+		producer.start();
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("pipe closed");
+			}
+		};
+		try {
+			ring.drain(failing);
+			fail("Expected the write failure");
+		} catch (IOException ex) {
+			assertEquals("pipe closed", ex.getMessage());
+		}
+		// The ring was drained to the end, so the producer finished rather than blocking
+		producer.join();
+	}
+}
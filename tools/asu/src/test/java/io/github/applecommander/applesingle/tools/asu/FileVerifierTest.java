@@ -0,0 +1,62 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.Layout;
+import io.github.applecommander.applesingle.tools.asu.FileVerifier.Result.Status;
+
+public class FileVerifierTest {
+	private Path path;
+
+	@Before
+	public void setUp() throws IOException {
+		path = Files.createTempFile("verify", ".as");
+		AppleSingle.builder().realName("ALIGNED").dataFork(new byte[100]).build().save(path, Layout.aligned(4096));
+	}
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Test
+	public void testAlignmentPaddingAccepted() {
+		assertEquals(Status.OK, new FileVerifier(true).verify(path).getStatus());
+	}
+
+	@Test
+	public void testNonZeroPaddingIsAGap() throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 1 }), 4000);
+		}
+		FileVerifier.Result result = new FileVerifier(false).verify(path);
+		assertEquals(Status.WARNING, result.getStatus());
+		assertEquals("gap", result.getIssues().get(0)[1]);
+	}
+
+	@Test
+	public void testGapBeforeMetadataIsAGap() throws IOException {
+		// Swap the ids so that the padding comes before the real name rather than a fork
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		int count = buffer.getShort(24);
+		for (int i = 0; i < count; i++) {
+			int descriptor = 26 + i * 12;
+			if (buffer.getInt(descriptor) == 1) buffer.putInt(descriptor, 3);
+			else if (buffer.getInt(descriptor) == 3) buffer.putInt(descriptor, 1);
+		}
+		Files.write(path, buffer.array());
+		FileVerifier.Result result = new FileVerifier(false).verify(path);
+		assertEquals(Status.WARNING, result.getStatus());
+	}
+}
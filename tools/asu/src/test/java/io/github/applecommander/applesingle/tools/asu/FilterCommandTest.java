@@ -0,0 +1,75 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.EntryTable;
+import io.github.applecommander.applesingle.EntryType;
+import picocli.CommandLine;
+
+public class FilterCommandTest {
+	private static final int UNKNOWN_ID = 99;
+	private Path input;
+	private Path output;
+
+	@Before
+	public void setUp() throws IOException {
+		input = Files.createTempFile("filter", ".as");
+		output = Files.createTempFile("filtered", ".as");
+		Files.write(input, withUnknownEntry());
+	}
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(input);
+		Files.deleteIfExists(output);
+	}
+
+	/** A real name, an entry of an unknown type, and a data fork. */
+	static byte[] withUnknownEntry() {
+		int[][] entries = { { EntryType.REAL_NAME.entryId, 5 }, { UNKNOWN_ID, 3 }, { EntryType.DATA_FORK.entryId, 4 } };
+		ByteBuffer buffer = ByteBuffer.allocate(26 + 12 * entries.length + 12);
+		buffer.putInt(AppleSingle.MAGIC_NUMBER).putInt(AppleSingle.VERSION_NUMBER2).put(new byte[16]).putShort((short)entries.length);
+		int offset = buffer.capacity() - 12;
+		for (int[] entry : entries) {
+			buffer.putInt(entry[0]).putInt(offset).putInt(entry[1]);
+			offset += entry[1];
+		}
+		buffer.put("HELLO".getBytes()).put("xyz".getBytes()).put(new byte[] { 1, 2, 3, 4 });
+		return buffer.array();
+	}
+
+	@Test
+	public void testUnknownEntryIsKept() throws IOException {
+		assertEquals(0, new CommandLine(new FilterCommand()).execute("-o", output.toString(), input.toString()));
+		EntryTable table = AppleSingle.asEntryTable(output);
+		assertEquals(3, table.size());
+		assertEquals(UNKNOWN_ID, table.getEntryId(1));
+		assertArrayEquals("xyz".getBytes(), table.getEntry(1).getData());
+	}
+
+	@Test
+	public void testUnknownEntryIsDroppedByOperatingSystemFilter() throws IOException {
+		assertEquals(0, new CommandLine(new FilterCommand()).execute("--prodos", "-o", output.toString(), input.toString()));
+		EntryTable table = AppleSingle.asEntryTable(output);
+		assertEquals(2, table.size());
+		assertEquals(EntryType.REAL_NAME.entryId, table.getEntryId(0));
+		assertEquals(EntryType.DATA_FORK.entryId, table.getEntryId(1));
+	}
+
+	@Test
+	public void testUnknownEntryIsDroppedByExclude() throws IOException {
+		assertEquals(0, new CommandLine(new FilterCommand()).execute("--exclude", String.valueOf(UNKNOWN_ID),
+				"-o", output.toString(), input.toString()));
+		assertEquals(2, AppleSingle.asEntryTable(output).size());
+	}
+}
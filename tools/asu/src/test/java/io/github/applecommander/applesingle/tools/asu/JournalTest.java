@@ -0,0 +1,88 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+	private Path directory;
+	private Path journal;
+	private Path input;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal");
+		journal = directory.resolve("run.journal");
+		input = directory.resolve("input.as");
+		Files.write(input, new byte[10_000]);
+	}
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		String fingerprint = Journal.fingerprint(input);
+		try (Journal j = Journal.open(journal, false)) {
+			j.record(input, fingerprint, "ok");
+		}
+		try (Journal j = Journal.open(journal, true)) {
+			assertEquals(1, j.previousSize());
+			assertEquals("ok", j.done(input, fingerprint));
+			assertNull(j.done(directory.resolve("other.as"), fingerprint));
+		}
+		// Without resume the previous run is discarded
+		try (Journal j = Journal.open(journal, false)) {
+			assertEquals(0, j.previousSize());
+		}
+	}
+
+	@Test
+	public void testChangedInputIsNotDone() throws IOException {
+		String before = Journal.fingerprint(input);
+		try (Journal j = Journal.open(journal, false)) {
+			j.record(input, before, "ok");
+		}
+		// Same size, different content at the end
+		byte[] changed = new byte[10_000];
+		changed[9_999] = 1;
+		Files.write(input, changed);
+		String after = Journal.fingerprint(input);
+		assertNotEquals(before, after);
+		try (Journal j = Journal.open(journal, true)) {
+			assertNull(j.done(input, after));
+		}
+	}
+
+	@Test
+	public void testTornLineIsIgnored() throws IOException {
+		String fingerprint = Journal.fingerprint(input);
+		try (Journal j = Journal.open(journal, false)) {
+			j.record(input, fingerprint, "ok");
+		}
+		Files.write(journal, "warning\t1:2:3".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (Journal j = Journal.open(journal, true)) {
+			assertEquals(1, j.previousSize());
+			j.record(directory.resolve("next.as"), fingerprint, "error");
+		}
+		try (Journal j = Journal.open(journal, true)) {
+			assertEquals(2, j.previousSize());
+			assertEquals("error", j.done(directory.resolve("next.as"), fingerprint));
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Field;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.ParseLimits;
+import picocli.CommandLine;
+
+public class MainTest {
+	@After
+	public void tearDown() throws ReflectiveOperationException {
+		// The global options are static and picocli does not clear them; put them back for the other tests
+		for (String name : new String[] { "maxEntries", "maxSize" }) {
+			Field field = Main.class.getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(null, null);
+		}
+	}
+
+	@Test
+	public void testNoLimitsByDefault() {
+		assertSame(ParseLimits.UNLIMITED, Main.limits());
+	}
+
+	@Test
+	public void testOptionsOnlyTightenWhatIsGiven() throws ReflectiveOperationException {
+		new CommandLine(new Main()).parseArgs("--max-entries", "5");
+		assertEquals(String.format("ParseLimits[maxEntries=5, maxEntryLength=%d, maxTotalBytes=%d, maxMetadataLength=%d]",
+				Entry.MAX_LENGTH, Long.MAX_VALUE, Entry.MAX_LENGTH), Main.limits().toString());
+
+		tearDown();
+		new CommandLine(new Main()).parseArgs("--max-size", "128m");
+		assertEquals(String.format("ParseLimits[maxEntries=%d, maxEntryLength=%d, maxTotalBytes=%d, maxMetadataLength=%d]",
+				0xffff, 128L << 20, 128L << 20, 128L << 20), Main.limits().toString());
+	}
+}
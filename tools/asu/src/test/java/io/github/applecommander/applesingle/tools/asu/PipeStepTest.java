@@ -0,0 +1,122 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import io.github.applecommander.applesingle.Entry;
+import io.github.applecommander.applesingle.EntryType;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ParameterException;
+
+public class PipeStepTest {
+	private static final PrintStream MESSAGES = new PrintStream(NullOutputStream.INSTANCE);
+
+	private static List<Entry> sample() {
+		return AppleSingle.builder()
+				.realName("HELLO")
+				.fileType(0x06)
+				.dataFork("hello".getBytes())
+				.resourceFork(new byte[3])
+				.build()
+				.getEntries();
+	}
+
+	@Test
+	public void testIsoDatesKeepTheirColons() throws IOException {
+		PipeStep step = PipeStep.parse("edit:name=WORLD,modification-date=2024-01-02T03:04:05Z,filetype=txt");
+		AppleSingle as = AppleSingle.of(step.apply(sample(), MESSAGES));
+		assertEquals("WORLD", as.getRealName());
+		assertEquals(0x04, as.getProdosFileInfo().getFileType());
+		assertEquals(Instant.parse("2024-01-02T03:04:05Z"), as.getFileDatesInfo().getModificationInstant());
+	}
+
+	@Test
+	public void testEditWithoutFiletype() throws IOException {
+		PipeStep step = PipeStep.parse("edit:name=WORLD");
+		AppleSingle as = AppleSingle.of(step.apply(sample(), MESSAGES));
+		assertEquals("WORLD", as.getRealName());
+		assertEquals(0x06, as.getProdosFileInfo().getFileType());
+	}
+
+	@Test
+	public void testFilterIdsAndFlags() throws IOException {
+		List<Entry> entries = PipeStep.parse("filter:include=1+3").apply(sample(), MESSAGES);
+		assertEquals(Set.of(EntryType.DATA_FORK.entryId, EntryType.REAL_NAME.entryId),
+				entries.stream().map(Entry::getEntryId).collect(Collectors.toSet()));
+
+		entries = PipeStep.parse("filter:prodos,exclude=2").apply(sample(), MESSAGES);
+		assertTrue(entries.stream().noneMatch(e -> e.getEntryId() == EntryType.RESOURCE_FORK.entryId));
+	}
+
+	@Test
+	public void testStepsWithoutArguments() {
+		assertTrue(PipeStep.parse("fix-text") instanceof PipeStep.FixText);
+		assertTrue(PipeStep.parse(" checksum ") instanceof PipeStep.Checksum);
+		assertTrue(PipeStep.parse("checksum:algorithm=md5") instanceof PipeStep.Checksum);
+		assertTrue(PipeStep.parse("extract:fork=both,fix-text") instanceof PipeStep.Extract);
+	}
+
+	@Test
+	public void testHelpExamplesParse() {
+		// The examples are the lines that follow "Examples:" in the pipe command's footer
+		String[] footer = PipeCommand.class.getAnnotation(Command.class).footer();
+		int examples = 0;
+		boolean found = false;
+		for (String line : footer) {
+			if (found) {
+				assertTrue(line, PipeStep.parse(line) != null);
+				examples += 1;
+			}
+			found |= line.endsWith("Examples:");
+		}
+		assertEquals(5, examples);
+	}
+
+	@Test
+	public void testBadSteps() {
+		assertRejected("unzip", "unknown step");
+		assertRejected("edit:color=red", "unknown argument(s) [color]");
+		assertRejected("edit:name", "'name' needs a value");
+		assertRejected("edit:name=", "'name' needs a value");
+		assertRejected("edit:name=A,name=B", "more than once");
+		assertRejected("edit:access=lots", "lots");
+		assertRejected("edit:creation-date=yesterday", "yesterday");
+		assertRejected("extract:stdout=yes", "'stdout' does not take a value");
+		assertRejected("extract:fork=neither", "unknown fork 'neither'");
+		assertRejected("extract:stdout,fork=both", "stdout");
+		assertRejected("filter:prodos,", "empty argument");
+		assertRejected("checksum:algorithm=NOPE", "unknown checksum algorithm");
+	}
+	private static void assertRejected(String text, String reason) {
+		try {
+			PipeStep.parse(text);
+			fail("Expected '" + text + "' to be rejected");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid step '" + text.trim() + "'"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains(reason));
+		}
+	}
+
+	@Test
+	public void testCommandLineNamesTheStep() {
+		try {
+			new CommandLine(new PipeCommand()).parseArgs("--step", "checksum", "--step", "edit:auxtype", "x.as");
+			fail("Expected a parameter exception");
+		} catch (ParameterException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("edit:auxtype"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains("'auxtype' needs a value"));
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class ShardTest {
+	@Test
+	public void testAssignmentIsStable() {
+		// The hash is part of the contract between nodes (and runs); these must never change
+		assertEquals(4, Shard.of(Paths.get("disks/games/zork.as"), 4));
+		assertEquals(4, Shard.of(Paths.get("disks/games/zork.as"), 7));
+		assertEquals(3, Shard.of(Paths.get("a.as"), 4));
+		// The same relative path gives the same shard wherever the tree is mounted
+		Path relative = Paths.get("/mnt/one").relativize(Paths.get("/mnt/one/disks/games/zork.as"));
+		assertEquals(Shard.of(Paths.get("disks/games/zork.as"), 4), Shard.of(relative, 4));
+	}
+
+	@Test
+	public void testEveryFileInExactlyOneShard() {
+		int count = 5;
+		int[] sizes = new int[count];
+		for (int i = 0; i < 10_000; i++) {
+			Path path = Paths.get("dir" + (i % 17), "file" + i + ".as");
+			int owners = 0;
+			for (int index = 1; index <= count; index++) {
+				if (Shard.of(index, count).contains(path)) {
+					owners += 1;
+					sizes[index - 1] += 1;
+				}
+			}
+			assertEquals(1, owners);
+		}
+		for (int size : sizes) {
+			assertTrue("Shards should be roughly even: " + size, size > 1_600 && size < 2_400);
+		}
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals("3/4", Shard.parse(" 3/4 ").toString());
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseOutOfRange() {
+		Shard.parse("5/4");
+	}
+}
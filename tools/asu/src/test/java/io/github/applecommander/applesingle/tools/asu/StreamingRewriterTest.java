@@ -0,0 +1,102 @@
+package io.github.applecommander.applesingle.tools.asu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.applecommander.applesingle.AppleSingle;
+import picocli.CommandLine;
+
+/** The streaming (stdin to stdout) paths of filter and edit must write exactly what the buffered paths do. */
+public class StreamingRewriterTest {
+	private Path input;
+	private byte[] bytes;
+
+	@Before
+	public void setUp() throws IOException {
+		// The forks are larger than the whole ring, so they pass through it many times over
+		byte[] dataFork = new byte[StreamingRewriter.BUFFER_SIZE * StreamingRewriter.RING_BUFFERS * 3 + 123];
+		for (int i = 0; i < dataFork.length; i++) dataFork[i] = (byte)(i * 31);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		AppleSingle.builder()
+				.realName("STREAMED")
+				.access(0xc3)
+				.fileType(0x06)
+				.auxType(0x2000)
+				.dataFork(dataFork)
+				.resourceFork(new byte[70_000])
+				.build()
+				.save(outputStream);
+		bytes = outputStream.toByteArray();
+		input = Files.createTempFile("stream", ".as");
+		Files.write(input, bytes);
+	}
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(input);
+	}
+
+	@Test
+	public void testFilterStreamsSameBytes() throws IOException {
+		byte[] buffered = run(null, new FilterCommand(), "--exclude", "3", "--stdout", input.toString());
+		byte[] streamed = run(bytes, new FilterCommand(), "--exclude", "3", "--stdin", "--stdout");
+		assertArrayEquals(buffered, streamed);
+	}
+
+	@Test
+	public void testEditStreamsSameEntries() throws IOException {
+		byte[] buffered = run(null, new EditCommand(), "--name", "EDITED", "--stdout", input.toString());
+		byte[] streamed = run(bytes, new EditCommand(), "--name", "EDITED", "--stdin", "--stdout");
+		assertEquals(AppleSingle.read(buffered).getRealName(), AppleSingle.read(streamed).getRealName());
+		assertArrayEquals(AppleSingle.read(buffered).getDataFork(), AppleSingle.read(streamed).getDataFork());
+		assertArrayEquals(AppleSingle.read(buffered).getResourceFork(), AppleSingle.read(streamed).getResourceFork());
+	}
+
+	@Test
+	public void testRewriteForwardsAllBytes() throws IOException {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		new StreamingRewriter(new ByteArrayInputStream(bytes), target).rewrite((table, forwarded) -> {
+			forwarded.set(0, table.size());
+			return Collections.emptyList();
+		}, in -> { throw new AssertionError("Should not fall back"); });
+		assertArrayEquals(bytes, target.toByteArray());
+	}
+
+	@Test
+	public void testFallbackReplaysEverything() throws IOException {
+		byte[] notAppleSingle = new byte[StreamingRewriter.BUFFER_SIZE * 2 + 1];
+		notAppleSingle[100] = 42;
+		ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+		new StreamingRewriter(new ByteArrayInputStream(notAppleSingle), new ByteArrayOutputStream())
+				.rewrite((table, forwarded) -> Collections.emptyList(), in -> in.transferTo(replayed));
+		assertArrayEquals(notAppleSingle, replayed.toByteArray());
+	}
+
+	/** Run a command with the given stdin (if any), answering what it wrote to stdout. */
+	private static byte[] run(byte[] stdin, Object command, String... args) {
+		InputStream in = System.in;
+		PrintStream out = System.out;
+		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		try {
+			if (stdin != null) System.setIn(new ByteArrayInputStream(stdin));
+			System.setOut(new PrintStream(stdout, true));
+			assertEquals(0, new CommandLine(command).execute(args));
+		} finally {
+			System.setIn(in);
+			System.setOut(out);
+		}
+		return stdout.toByteArray();
+	}
+}
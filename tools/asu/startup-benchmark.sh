@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+#
+# Measure the cold start of 'asu info' for the jar, AppCDS, jlink and native variants.
+# Variants that have not been built are skipped. Build them (from the project root) with:
+#
+#   ./gradlew :applesingle-tools-asu:bootJar :applesingle-tools-asu:cdsArchive \
+#             :applesingle-tools-asu:jlinkRuntime :applesingle-tools-asu:nativeCompile
+#
+# Usage: tools/asu/startup-benchmark.sh [runs]
+# Uses 'hyperfine' when it is installed; otherwise runs a simple timing loop.
+
+set -euo pipefail
+
+RUNS=${1:-20}
+HERE=$(cd "$(dirname "$0")" && pwd)
+ROOT=$(cd "${HERE}/../.." && pwd)
+BUILD="${HERE}/build"
+SAMPLE="${ROOT}/api/src/test/resources/hello.applesingle.bin"
+NAME=applesingle-tools-asu
+SCRIPT="${BUILD}/install/${NAME}/bin/${NAME}"
+
+declare -a LABELS=()
+declare -a COMMANDS=()
+variant() {
+    LABELS+=("$1")
+    COMMANDS+=("$2")
+}
+
+JAR=$(ls "${BUILD}"/libs/${NAME}-*.jar 2>/dev/null | grep -v -- '-plain.jar' | head -1 || true)
+[ -n "${JAR}" ] && variant "jar" "java -Xshare:auto -jar ${JAR} info ${SAMPLE}"
+[ -f "${BUILD}/install/${NAME}/lib/asu.jsa" ] && variant "cds" "${SCRIPT} info ${SAMPLE}"
+[ -x "${BUILD}/jlink/runtime/bin/java" ] && [ -x "${SCRIPT}" ] && \
+    variant "jlink" "env JAVA_HOME=${BUILD}/jlink/runtime ${SCRIPT} info ${SAMPLE}"
+NATIVE=$(find "${BUILD}/native/nativeCompile" -maxdepth 1 -type f -name 'asu-*' -perm -u+x 2>/dev/null | head -1 || true)
+[ -n "${NATIVE}" ] && variant "native" "${NATIVE} info ${SAMPLE}"
+
+if [ ${#COMMANDS[@]} -eq 0 ]; then
+    echo "Nothing to benchmark; see the build instructions at the top of this script." >&2
+    exit 1
+fi
+
+if command -v hyperfine > /dev/null; then
+    declare -a ARGS=()
+    for i in "${!COMMANDS[@]}"; do
+        ARGS+=(--command-name "${LABELS[$i]}" "${COMMANDS[$i]}")
+    done
+    hyperfine --warmup 3 --runs "${RUNS}" --shell=none "${ARGS[@]}"
+else
+    printf "%-8s %10s\n" "variant" "mean (ms)"
+    for i in "${!COMMANDS[@]}"; do
+        ${COMMANDS[$i]} > /dev/null    # warm the file system cache
+        start=$(date +%s%N)
+        for ((n = 0; n < RUNS; n++)); do
+            ${COMMANDS[$i]} > /dev/null
+        done
+        end=$(date +%s%N)
+        awk -v l="${LABELS[$i]}" -v t=$((end - start)) -v r="${RUNS}" 'BEGIN { printf "%-8s %10.1f\n", l, t / r / 1000000 }'
+    done
+fi